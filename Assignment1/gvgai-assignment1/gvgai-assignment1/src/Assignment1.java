@@ -2,6 +2,7 @@
 import core.ArcadeMachine;
 import java.util.Random;
 import core.competition.CompetitionParameters;
+import tools.SearchPool;
 
 /*
  * To change this license header, choose License Headers in Project Properties.
@@ -25,6 +26,7 @@ public class Assignment1 {
 
         boolean visuals = true; // set to false if you don't want to see the game
         int seed = new Random().nextInt(); // seed for random
+        SearchPool.THREADS = 1; // set to more than 1 to split the searches of depthfirst, limitdepthfirst and Astar across threads
          
         
         /****** Task 1 ******/
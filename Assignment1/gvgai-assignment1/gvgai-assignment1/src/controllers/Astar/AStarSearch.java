@@ -0,0 +1,107 @@
+package controllers.Astar;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import core.game.StateObservation;
+import ontology.Types;
+
+/**
+ * One A* search of the agent, expanded one node at a time so the caller decides when to stop.
+ * The nodes are indexed by the hash of their state, and the nodes to expand are kept in a NodeHeap.
+ * <p/>
+ * Several searches can run in parallel from the children of the same state, each in its own thread.
+ * They then share a concurrent map with the fewest steps each state has been reached with, and a
+ * search does not add a state that another one has already reached with the same steps or fewer.
+ */
+class AStarSearch {
+
+    Agent agent;                                                        //搜索所属的agent，提供评分函数和实际走过的状态
+    HashMap<Long, Node> nodes = new HashMap<Long, Node>();              //按状态的hash存储本次搜索生成的所有节点（待展开的和已展开的）
+    NodeHeap openState = new NodeHeap();                                //按局面评分排序的待展开节点
+    Map<Long, Integer> reached;                                         //并行搜索共享的每个状态到达时的最少步数，顺序搜索时为null
+    Node startNode;                                                     //初始节点
+    Node best;                                                          //离钥匙或目标最近的节点
+    Node win;                                                           //通关的节点
+
+    AStarSearch(Agent agent, Node startNode, Map<Long, Integer> reached){
+        this.agent = agent;
+        this.startNode = startNode;
+        this.reached = reached;
+        nodes.put(startNode.hash, startNode);
+        openState.add(startNode);
+        best = startNode;
+    }
+
+    boolean expand(){                                                   //展开评分最优的节点，返回是否已通关
+        Node temp = openState.poll();                       //选取评分最优的节点temp
+        StateObservation tempState = temp.stateObs;
+        temp.closed = true;                                 //temp节点已展开，不再保存它的状态
+        temp.stateObs = null;
+        for(Types.ACTIONS action : tempState.getAvailableActions()){        //尝试当前局面所有可能的动作
+            StateObservation stCopy = tempState.copy();                     //新建一个当前状态的副本，用于模拟施加动作
+            stCopy.advance(action);                                         //施加动作
+            boolean childHasKey = temp.hasKey || stCopy.getAvatarPosition().equals(agent.keypos);     //精灵位置与钥匙位置相同则有钥匙了
+            if(stCopy.getGameWinner() == Types.WINNER.PLAYER_WINS) {        //如果胜利，则记下通关的节点
+                win = new Node(stCopy, stCopy.hash(), 0, temp, action, childHasKey);
+                return true;
+            }
+            long hash = stCopy.hash();
+            if(stCopy.isGameOver() || agent.pastState.contains(hash)) {     //如果动作施加后的状态之前实际到达过或者游戏失败，则尝试其他动作
+                continue;
+            }
+            double score = agent.distance(stCopy, childHasKey, temp.depth + 1);
+            Node equalNode = nodes.get(hash);                               //与动作施加后的状态相同的节点
+            if(equalNode == null){                                          //动作施加后的是一个新的状态，加入新状态的节点
+                if(!claim(hash, temp.depth + 1)){                           //其他并行的搜索已经以更少的步数到达过该状态
+                    continue;
+                }
+                Node child = new Node(stCopy, hash, score, temp, action, childHasKey);
+                nodes.put(hash, child);
+                openState.add(child);
+                if(child.score - child.depth * agent.stepWeight < best.score - best.depth * agent.stepWeight){
+                    best = child;
+                }
+            }
+            else if(!equalNode.closed && score < equalNode.score){          //如果该状态还未展开且当前走法优于之前的走法，则更新节点
+                claim(hash, temp.depth + 1);
+                equalNode.stateObs = stCopy;
+                equalNode.score = score;
+                equalNode.parent = temp;
+                equalNode.action = action;
+                equalNode.depth = temp.depth + 1;
+                equalNode.hasKey = childHasKey;
+                openState.decreased(equalNode);
+            }
+        }
+        return false;
+    }
+
+    boolean claim(long hash, int depth){                                //记录以depth步到达该状态，返回之前是否没有以更少（或相同）的步数到达过
+        if(reached == null){
+            return true;
+        }
+        while(true){
+            Integer prev = reached.putIfAbsent(hash, depth);
+            if(prev == null){
+                return true;
+            }
+            if(prev <= depth){
+                return false;
+            }
+            if(reached.replace(hash, prev, depth)){
+                return true;
+            }
+        }
+    }
+
+    Node result(){                                                      //搜索停止时要执行的节点
+        if(win != null){
+            return win;
+        }
+        if(best == startNode && !openState.isEmpty()){                  //没有比初始状态离钥匙或目标更近的节点时，取评分最优的待展开节点
+            return openState.poll();
+        }
+        return best;
+    }
+}
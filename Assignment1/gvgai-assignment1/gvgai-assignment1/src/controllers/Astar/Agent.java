@@ -2,15 +2,20 @@ package controllers.Astar;
 
 import java.awt.Graphics2D;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.PriorityQueue;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import core.game.Observation;
 import core.game.StateObservation;
 import core.player.AbstractPlayer;
 import ontology.Types;
 import tools.ElapsedCpuTimer;
+import tools.SearchPool;
 import tools.Vector2d;
 
 /**
@@ -37,23 +42,28 @@ public class Agent extends AbstractPlayer {
      */
     protected int block_size;
 
-    ArrayList<StateObservation> pastState = new ArrayList<StateObservation>();                      //存储所有的走过的状态
-    ArrayList<StateObservation> targetPastState = new ArrayList<StateObservation>();                //存储当前节点的走过的状态
+    HashSet<Long> pastState = new HashSet<Long>();                                //存储所有实际走过的状态的hash
 
-    Comparator<Node> OrderDistance = Comparator.comparingDouble(o -> o.score);
-    PriorityQueue<Node> openState = new PriorityQueue<Node>(OrderDistance);             //定义一个按局面评分比较的优先队列，用来存储还未展开的节点
-
-    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();                           //存储走过的动作
-    int now = -1;                                                                    //act函数中输出动作的数组下标
-    Vector2d goalpos;                                                                //目标的位置
-    Vector2d keypos;                                                                 //钥匙的位置
-    double goal_keyDistance;                                                         //钥匙与目标之间的曼哈顿距离
-    boolean hasKey = false;                                                          //是否找到钥匙
-    int searchDepth = 32;                                                            //限制A*算法的搜索深度，当地图较大时也能得出结果
+    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();            //搜索得到的动作
+    ArrayList<Long> planHashes = new ArrayList<Long>();                           //执行每个动作前应处于的状态的hash
+    int now = 0;                                                                  //act函数中输出动作的数组下标
+    Vector2d goalpos;                                                             //目标的位置
+    Vector2d keypos;                                                              //钥匙的位置
+    double goal_keyDistance;                                                      //钥匙与目标之间的曼哈顿距离
+    boolean hasKey = false;                                                       //是否找到钥匙
+    double stepWeight = 50;                                                       //评分中每走一步的权重
+    static final double INIT_STEP_WEIGHT = 10;                                    //初始化时搜索用的每步权重，更偏向离钥匙或目标近的节点
+    static final int INIT_MAX_NODES = 150000;                                     //初始化时搜索的最多节点数，待展开节点都保存状态，以此限制内存
     /*
-    除第一关外，后续的其他关卡在ACTION_TIME = 100的条件下均无法完成搜索，故采用searchDepth参数来限制搜索深度。经过对不同的searchDepth进行测试，
-    当searchDepth = 28时后续关卡可以通过且用时较少，ACTION_TIME = 1500即可完成搜索，但通关所需的步数较多；当searchDepth = 32时通关所需步数较少，
-    且搜索所需的时长相对较少，ACTION_TIME = 4000即可完成搜索，所以将searchDepth设置为32。
+    搜索中的节点按状态的hash存储在HashMap中，判断重复状态和找到待展开的相同状态都不需要遍历；待展开节点存储在NodeHeap中，更新评分时
+    直接调整该节点在堆中的位置。节点只保存父节点和到达它的动作，不复制走过的动作和状态，展开后也不再保存状态。
+    不再用searchDepth限制搜索深度，而是用act的时间限制搜索：在时间内找到通关的路径则按该路径执行；否则按离钥匙或目标最近的节点的路径执行
+    （没有比当前状态更近的节点时按评分最优的待展开节点），执行完后从新的状态继续搜索。ACTION_TIME越长，每次搜索得越深。
+    第三、四关完整的A*搜索需要展开几十万个节点，内存和时间都不够，所以不能一次搜索到底。
+    构造函数中用初始化的时间（INITIALIZATION_TIME）从初始状态先搜索一次，每步权重降为INIT_STEP_WEIGHT并限制节点数：
+    第零到三关在初始化时即找到通关路径，第四关按搜索到的最优节点执行后再在act中继续搜索。ACTION_TIME = 40时五关均可通过。
+    SearchPool.THREADS大于1时，初始状态的每个子状态在SearchPool的线程中各自进行A*搜索，共享每个状态到达时的最少步数，
+    用act时间对应的截止时刻停止，然后合并各个搜索的结果。
     */
 
     /**
@@ -66,82 +76,121 @@ public class Agent extends AbstractPlayer {
         randomGenerator = new Random();
         grid = so.getObservationGrid();
         block_size = so.getBlockSize();
+
+        goalpos = so.getImmovablePositions()[1].get(0).position;
+        keypos = so.getMovablePositions()[0].get(0).position;
+        goal_keyDistance = Math.abs(goalpos.x - keypos.x) + Math.abs(goalpos.y - keypos.y);         //初始化目标位置、钥匙位置和钥匙与目标之间的曼哈顿距离
+
+        double actStepWeight = stepWeight;                              //用初始化的时间从初始状态开始搜索
+        stepWeight = INIT_STEP_WEIGHT;
+        getAStarActions(so, elapsedTimer, INIT_MAX_NODES);
+        stepWeight = actStepWeight;
     }
 
-    boolean pastEqualTest(StateObservation state){          //判断当前状态之前是否到达过
-        for(StateObservation so : pastState){
-            if(state.equalPosition(so)){
-                return true;
-            }
+    double distance(StateObservation stateObs, boolean hasKey, int depth){         //利用精灵的位置、目标的位置和钥匙的位置以及已走过的步数构造启发式函数distance
+        Vector2d playerpos = stateObs.getAvatarPosition();              //精灵的位置
+        if(hasKey){
+            return Math.abs(goalpos.x - playerpos.x) + Math.abs(goalpos.y - playerpos.y) + (depth * stepWeight);       //如果已经拿到钥匙
         }
-        return false;
+        return Math.abs(playerpos.x - keypos.x) + Math.abs(playerpos.y - keypos.y) + goal_keyDistance + (depth * stepWeight);    //如果还没拿到钥匙
     }
 
 
-    Node equalNode(StateObservation state){           //如果当前状态在待展开的节点所含的状态中，返回对应节点，否则返回null
-        for(Node node : openState){
-            if(state.equalPosition(node.stateObs)){
-                return node;
+    void getAStarActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer, int maxNodes){
+        Node startNode = new Node(stateObs, stateObs.hash(), distance(stateObs, hasKey, 0), null, null, hasKey);      //新建初始节点
+        AStarSearch search = new AStarSearch(this, startNode, null);
+
+        double avgTimeTaken = 0;
+        double acumTimeTaken = 0;
+        long remaining = elapsedTimer.remainingTimeMillis();
+        int numIters = 0;
+
+        int remainingLimit = 5;
+        while(!search.openState.isEmpty() && search.nodes.size() < maxNodes && remaining > 2*avgTimeTaken && remaining > remainingLimit) {     //只要还有待展开节点和时间就继续搜索
+            ElapsedCpuTimer elapsedTimerIteration = new ElapsedCpuTimer();
+            if(search.expand()){                                        //如果胜利，则沿父节点得到通关的动作
+                break;
             }
-        }
-        return null;
-    }
 
-    double distance(StateObservation stateObs, boolean hasKey){         //利用精灵的位置、目标的位置和钥匙的位置以及已走过的步数构造启发式函数distance
-        Vector2d playerpos = stateObs.getAvatarPosition();              //精灵的位置
-        if(hasKey){
-            return Math.abs(goalpos.x - playerpos.x) + Math.abs(goalpos.y - playerpos.y) + (Actions.size() * 50);       //如果已经拿到钥匙
+            numIters++;
+            acumTimeTaken += (elapsedTimerIteration.elapsedMillis()) ;
+            avgTimeTaken  = acumTimeTaken/numIters;
+            remaining = elapsedTimer.remainingTimeMillis();
         }
-        return Math.abs(playerpos.x - keypos.x) + Math.abs(playerpos.y - keypos.y) + goal_keyDistance + (Actions.size() * 50);    //如果还没拿到钥匙
+        setPlan(search.result());                                       //时间用完，按离钥匙或目标最近的节点的路径执行
     }
 
 
-    void getAStarActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
-        openState = new PriorityQueue<Node>(OrderDistance);                     //初始化待展开节点
-        pastState = (ArrayList<StateObservation>) targetPastState.clone();      //初始化所有已走过状态为上轮搜索后实际走过的状态
-        Actions = new ArrayList<Types.ACTIONS>();                               //初始化已走过的动作
-        Node startNode = new Node(stateObs,distance(stateObs, hasKey), Actions, targetPastState, hasKey);       //新建初始节点并加入openState中
-        openState.add(startNode);
-        while(!openState.isEmpty()) {                           //只要还有待展开节点就继续搜索
-            Node temp = openState.poll();                       //选取评分最优的节点temp
-            Actions = (ArrayList<Types.ACTIONS>) temp.actions.clone();                      //将Actions初始化为temp节点储存的已走过动作集
-            targetPastState = (ArrayList<StateObservation>) temp.pastState.clone();         //将targetPastState初始化为temp节点储存的已走过状态
-            pastState.add(temp.stateObs);                                                   //将temp节点的状态加入所有已走过的状态
-            targetPastState.add(temp.stateObs);                                             //将temp节点的状态加入当前节点的走过的状态
-            if(Actions.size() == searchDepth){                  //如果达到搜索深度，则返回，按该最优节点存储的Actions执行动作
+    void getParallelAStarActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
+        Node startNode = new Node(null, stateObs.hash(), distance(stateObs, hasKey, 0), null, null, hasKey);        //初始节点，只作为各个搜索的共同父节点
+        Map<Long, Integer> reached = new ConcurrentHashMap<Long, Integer>();   //所有搜索共享的每个状态到达时的最少步数
+        ArrayList<AStarSearch> searches = new ArrayList<AStarSearch>();
+        for(Types.ACTIONS action : stateObs.getAvailableActions()){     //初始状态的子状态在当前线程中生成，每个子状态开始一个搜索
+            StateObservation stCopy = stateObs.copy();
+            stCopy.advance(action);
+            boolean childHasKey = hasKey || stCopy.getAvatarPosition().equals(keypos);
+            long hash = stCopy.hash();
+            if(stCopy.getGameWinner() == Types.WINNER.PLAYER_WINS) {
+                setPlan(new Node(stCopy, hash, 0, startNode, action, childHasKey));
                 return;
             }
-            hasKey = temp.hasKey;                               //初始化hasKey为当前节点的hasKey
-            if(!hasKey){                                        //如果没有钥匙，则判断精灵位置是否与钥匙位置相同，如果是则有钥匙了
-                if(temp.stateObs.getAvatarPosition().equals(keypos)){
-                    hasKey = true;
-                }
+            if(stCopy.isGameOver() || pastState.contains(hash) || reached.putIfAbsent(hash, 1) != null) {
+                continue;
             }
-            for(Types.ACTIONS action : temp.stateObs.getAvailableActions()){        //尝试当前局面所有可能的动作
-                StateObservation stCopy = temp.stateObs.copy();                     //新建一个当前状态的副本，用于模拟施加动作
-                stCopy.advance(action);                                             //施加动作
-                Actions.add(action);                                                //将当前动作加入已走过的动作
-                if(stCopy.getGameWinner() == Types.WINNER.PLAYER_WINS) {            //如果胜利，则返回，按Actions执行动作
-                    return; // 最终的序列步骤在aStarAction中
-                }
-                if(stCopy.isGameOver() || pastEqualTest(stCopy)) {                  //如果如果动作施加后的状态之前已经到达过或者游戏失败，则尝试其他动作
-                    Actions.remove(Actions.size() - 1);
-                    continue;
-                }
-                Node equalNode = equalNode(stCopy);                         //搜索openState中与动作施加后的状态相同的节点
-                if(equalNode != null){                                      //如果存在状态相同的节点
-                    if(distance(stCopy,hasKey) < equalNode.score){          //如果当前走法优于之前的走法，则更新节点
-                        openState.remove(equalNode);
-                        openState.add(new Node(stCopy,distance(stCopy,hasKey),Actions,targetPastState, hasKey));
+            Node child = new Node(stCopy, hash, distance(stCopy, childHasKey, 1), startNode, action, childHasKey);
+            searches.add(new AStarSearch(this, child, reached));
+        }
+        if(searches.isEmpty()){                                         //没有可走的状态
+            setPlan(startNode);
+            return;
+        }
+
+        int remainingLimit = 5;
+        final long deadline = SearchPool.deadline(elapsedTimer, remainingLimit);
+        final AtomicBoolean stop = new AtomicBoolean();                 //一个搜索通关后，其他搜索停止
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(final AStarSearch search : searches){
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    while(!search.openState.isEmpty() && !stop.get() && System.nanoTime() < deadline){
+                        if(search.expand()){
+                            stop.set(true);
+                        }
                     }
-                    Actions.remove(Actions.size() - 1);
-                }
-                else{                                                       //动作施加后的是一个新的状态，加入新状态的节点
-                    openState.add(new Node(stCopy,distance(stCopy,hasKey),Actions,targetPastState, hasKey));
-                    Actions.remove(Actions.size() - 1);
+                    return null;
                 }
+            });
+        }
+        SearchPool.invokeAll(tasks);
+
+        Node win = null;                                                //合并结果：步数最少的通关节点，没有则取离钥匙或目标最近的节点，
+        Node best = null;                                               //再没有则取评分最优的节点；相同时取动作顺序在前的
+        Node first = null;
+        for(AStarSearch search : searches){
+            Node node = search.result();
+            if(search.win != null && (win == null || node.depth < win.depth)){
+                win = node;
+            }
+            if(node.score - node.depth * stepWeight < (best == null ? startNode.score : best.score - best.depth * stepWeight)){
+                best = node;
+            }
+            if(first == null || node.score < first.score){
+                first = node;
             }
         }
+        setPlan(win != null ? win : best != null ? best : first);
+    }
+
+    void setPlan(Node last){                    //沿父节点从最后一个节点回到初始节点，得到要执行的动作和执行每个动作前的状态
+        Actions = new ArrayList<Types.ACTIONS>();
+        planHashes = new ArrayList<Long>();
+        for(Node node = last; node.parent != null; node = node.parent){
+            Actions.add(node.action);
+            planHashes.add(node.parent.hash);
+        }
+        Collections.reverse(Actions);
+        Collections.reverse(planHashes);
+        now = 0;
     }
 
     /**
@@ -153,18 +202,24 @@ public class Agent extends AbstractPlayer {
      */
     public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) {
 
-
-        if(Actions.size() == 0){
-            goalpos = stateObs.getImmovablePositions()[1].get(0).position;
-            keypos = stateObs.getMovablePositions()[0].get(0).position;
-            goal_keyDistance = Math.abs(goalpos.x - keypos.x) + Math.abs(goalpos.y - keypos.y);
-        }                   //初始化目标位置、钥匙位置和钥匙与目标之间的曼哈顿距离
-        now++;              //更新下标
-        if(now == Actions.size()){              //如果还未搜索或搜索返回的动作集已经执行完，则基于当前状态继续搜索，并将下标置为0
-            getAStarActions(stateObs,elapsedTimer);
-            now = 0;
+        pastState.add(stateObs.hash());                             //将当前状态加入实际走过的状态
+        if(stateObs.getAvatarPosition().equals(keypos)){            //精灵到过钥匙的位置则有钥匙了
+            hasKey = true;
+        }
+        if(now < Actions.size() && stateObs.hash() == planHashes.get(now)){        //状态与搜索时预计的相同，则继续按Actions执行动作
+            return Actions.get(now++);
+        }
+        if(SearchPool.enabled()){                                   //否则从当前状态搜索
+            getParallelAStarActions(stateObs, elapsedTimer);
+        }
+        else{
+            getAStarActions(stateObs, elapsedTimer, Integer.MAX_VALUE);
+        }
+        if(Actions.isEmpty()){                                      //没有可走的状态，清空走过的状态，原地等待下一次搜索
+            pastState.clear();
+            return Types.ACTIONS.ACTION_NIL;
         }
-        return Actions.get(now);                //返回动作
+        return Actions.get(now++);
     }
 
     /**
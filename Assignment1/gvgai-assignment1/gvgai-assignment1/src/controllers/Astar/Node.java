@@ -3,22 +3,25 @@ package controllers.Astar;
 import core.game.StateObservation;
 import ontology.Types;
 
-import java.util.ArrayList;
-
 public class Node {
-    public Node(StateObservation stateObs, double score, ArrayList<Types.ACTIONS> actions, ArrayList<StateObservation> pastState, boolean hasKey) {
-        this.stateObs = stateObs.copy();
+    public Node(StateObservation stateObs, long hash, double score, Node parent, Types.ACTIONS action, boolean hasKey) {
+        this.stateObs = stateObs;
+        this.hash = hash;
         this.score = score;
-        this.actions = (ArrayList<Types.ACTIONS>) actions.clone();
-        this.pastState = (ArrayList<StateObservation>) pastState.clone();
+        this.parent = parent;
+        this.action = action;
+        this.depth = parent == null ? 0 : parent.depth + 1;
         this.hasKey = hasKey;
     }               //初始化
 
-    StateObservation stateObs;                          //当前节点的状态
+    StateObservation stateObs;                          //当前节点的状态，展开后不再需要，置为null
+    long hash;                                          //当前节点状态的hash
     double score;                                       //当前节点的评分
-    ArrayList<Types.ACTIONS> actions;                   //当前节点的已走过的路径
-    ArrayList<StateObservation> pastState;              //当前节点的已走过的状态
+    Types.ACTIONS action;                               //从父节点到达当前节点的动作
+    int depth;                                          //当前节点的已走过的步数
     boolean hasKey;                                     //当前节点是否已经拥有钥匙
+    boolean closed;                                     //当前节点是否已经展开
+    int heapIndex = -1;                                 //当前节点在openState中的下标，不在其中时为-1
 
     public Node parent;
 }
@@ -0,0 +1,93 @@
+package controllers.Astar;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of nodes ordered by score (ties broken by depth, deepest first). Each node keeps
+ * its index in the heap, so the score of a node in the heap can be decreased in O(log n)
+ * instead of removing it and adding it again, which is O(n) in a PriorityQueue.
+ */
+public class NodeHeap {
+
+    private Node[] heap = new Node[64];
+    private int size = 0;
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(Node node) {
+        if(size == heap.length)
+            heap = Arrays.copyOf(heap, size * 2);
+        heap[size] = node;
+        node.heapIndex = size;
+        size++;
+        siftUp(node.heapIndex);
+    }
+
+    public Node poll() {
+        if(size == 0)
+            return null;
+
+        Node first = heap[0];
+        size--;
+        if(size > 0) {
+            heap[0] = heap[size];
+            heap[0].heapIndex = 0;
+            siftDown(0);
+        }
+        heap[size] = null;
+        first.heapIndex = -1;
+        return first;
+    }
+
+    /**
+     * Moves a node of the heap up after its score has been decreased.
+     * @param node the node, that must be in the heap.
+     */
+    public void decreased(Node node) {
+        siftUp(node.heapIndex);
+    }
+
+    private boolean before(Node a, Node b) {
+        if(a.score != b.score)
+            return a.score < b.score;
+        return a.depth > b.depth;
+    }
+
+    private void siftUp(int i) {
+        Node node = heap[i];
+        while(i > 0) {
+            int parent = (i - 1) >> 1;
+            if(!before(node, heap[parent]))
+                break;
+            heap[i] = heap[parent];
+            heap[i].heapIndex = i;
+            i = parent;
+        }
+        heap[i] = node;
+        node.heapIndex = i;
+    }
+
+    private void siftDown(int i) {
+        Node node = heap[i];
+        while(true) {
+            int child = 2 * i + 1;
+            if(child >= size)
+                break;
+            if(child + 1 < size && before(heap[child + 1], heap[child]))
+                child++;
+            if(!before(heap[child], node))
+                break;
+            heap[i] = heap[child];
+            heap[i].heapIndex = i;
+            i = child;
+        }
+        heap[i] = node;
+        node.heapIndex = i;
+    }
+}
@@ -1,7 +1,6 @@
 package controllers.Heuristics;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import core.game.Observation;
 import core.game.StateObservation;
@@ -19,17 +18,19 @@ public class SimpleStateHeuristic extends StateHeuristic {
 
     double initialNpcCounter = 0;
 
+    //Lists of observations, reused between evaluations.
+    private ArrayList<Observation>[] npcPositions;
+    private ArrayList<Observation>[] portalPositions;
+
     public SimpleStateHeuristic(StateObservation stateObs) {
 
     }
 
     public double evaluateState(StateObservation stateObs) {
         Vector2d avatarPosition = stateObs.getAvatarPosition();
-        ArrayList<Observation>[] npcPositions = stateObs.getNPCPositions(avatarPosition);
-        ArrayList<Observation>[] portalPositions = stateObs.getPortalsPositions(avatarPosition);
-        HashMap<Integer, Integer> resources = stateObs.getAvatarResources();
-
-        ArrayList<Observation>[] npcPositionsNotSorted = stateObs.getNPCPositions();
+        //Only the closest NPC and portal of each type are needed.
+        npcPositions = stateObs.getPositions(Types.TYPE_NPC, avatarPosition, 1, npcPositions);
+        portalPositions = stateObs.getPositions(Types.TYPE_PORTAL, avatarPosition, 1, portalPositions);
 
         double won = 0;
         if (stateObs.getGameWinner() == Types.WINNER.PLAYER_WINS) {
@@ -53,9 +54,9 @@ public class SimpleStateHeuristic extends StateHeuristic {
                     minDistance = npcs.get(0).sqDist;   //This is the (square) distance to the closest NPC.
                     minNPC_ID   = npcs.get(0).obsID;    //This is the id of the closest NPC.
                     minNPCType  = npcs.get(0).itype;    //This is the type of the closest NPC.
-                    npcCounter += npcs.size();
                 }
             }
+            npcCounter = stateObs.getCategoryCount(Types.TYPE_NPC);
         }
 
         if (portalPositions == null) {
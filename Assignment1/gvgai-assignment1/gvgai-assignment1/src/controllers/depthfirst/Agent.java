@@ -2,7 +2,12 @@ package controllers.depthfirst;
 
 import java.awt.Graphics2D;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import core.game.Observation;
 import core.game.StateObservation;
@@ -10,6 +15,7 @@ import core.player.AbstractPlayer;
 import ontology.Types;
 import ontology.Types.WINNER;
 import tools.ElapsedCpuTimer;
+import tools.SearchPool;
 
 /**
  * Created with IntelliJ IDEA.
@@ -35,11 +41,22 @@ public class Agent extends AbstractPlayer {
      */
     protected int block_size;
 
-    ArrayList<StateObservation> pastState = new ArrayList<StateObservation>();      //存储走过的状态
     ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();           //存储走过的动作
     int now = 0;                                                     //act函数中输出动作的数组下标
     boolean flag = false;                                            //是否已搜索到路径
 
+    long rootHash;                                                   //搜索的初始状态的hash
+    DepthFirstSearch search;                                         //从初始状态开始的搜索
+    ArrayList<DepthFirstSearch> searches;                            //并行搜索时，从初始状态的每个子状态开始的搜索
+    ArrayList<Types.ACTIONS> rootActions;                            //并行搜索时，到达每个子状态的动作
+    /*
+    原来的搜索是递归的，不管elapsedTimer，一次act要搜索完整个路径，所以ACTION_TIME要设得很大。现在用显式的栈保存搜索的路径，
+    每次act只搜索到时间用完，没有找到路径时返回ACTION_NIL，下一次act从保存的路径继续搜索（局面改变时重新开始搜索）。
+    搜索的顺序和结果与原来的递归相同。
+    SearchPool.THREADS大于1时，初始状态的每个子状态在SearchPool的线程中并行搜索，共享一个并发的已走过状态的集合，
+    已走过的状态不再删除，所以找到的路径可能与顺序搜索不同。
+    */
+
     /**
      * Public constructor with state observation and time due.
      * @param so state observation of the current game.
@@ -53,38 +70,67 @@ public class Agent extends AbstractPlayer {
     }
 
 
-    boolean equalTest(StateObservation state){                  //判断当前状态之前是否到达过
-        for(StateObservation so : pastState){
-            if(state.equalPosition(so)){
-                return true;
-            }
+    boolean getDepthFirstActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
+        if(search == null || stateObs.hash() != rootHash){                      //还没有搜索或局面已改变，则从当前局面开始搜索
+            search = new DepthFirstSearch(stateObs, new HashSet<Long>(), false);
+            rootHash = stateObs.hash();
         }
-        return false;
+
+        int remainingLimit = 5;
+        search.run(SearchPool.deadline(elapsedTimer, remainingLimit), null);   //只搜索到时间用完
+        if(search.found){
+            Actions = search.Actions;
+        }
+        return search.found;
     }
 
 
-    boolean getDepthFirstActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
-        pastState.add(stateObs);                                                //将当前状态加入已走过的状态
-        for(Types.ACTIONS action : stateObs.getAvailableActions()){             //尝试当前局面所有可以的动作
-            StateObservation stCopy = stateObs.copy();                          //新建一个当前状态的副本，用于模拟施加动作
-            stCopy.advance(action);                                             //施加动作
-            Actions.add(action);                                                //将当前动作加入已走过的动作
-            if(stCopy.getGameWinner() == Types.WINNER.PLAYER_WINS){
-                return true;                                                    //如果获胜则返回已找到
-            }
-            if(equalTest(stCopy) || stCopy.isGameOver()){
-                Actions.remove(Actions.size() - 1);                      //如果动作施加后的状态之前已经到达过或者游戏失败，则尝试下一个动作
-            }
-            else{                                                               //动作施加后的是一个新的状态
-                if(getDepthFirstActions(stCopy,elapsedTimer)){                  //递归进行深度优先搜索
+    boolean getParallelDepthFirstActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
+        if(searches == null || stateObs.hash() != rootHash){                    //还没有搜索或局面已改变，则为每个子状态新建一个搜索
+            rootHash = stateObs.hash();
+            searches = new ArrayList<DepthFirstSearch>();
+            rootActions = new ArrayList<Types.ACTIONS>();
+            Set<Long> pastState = ConcurrentHashMap.newKeySet();               //所有搜索共享的已走过的状态
+            pastState.add(rootHash);
+            for(Types.ACTIONS action : stateObs.getAvailableActions()){
+                StateObservation stCopy = stateObs.copy();                      //子状态在当前线程中生成，每个搜索只使用自己的状态
+                stCopy.advance(action);
+                if(stCopy.getGameWinner() == Types.WINNER.PLAYER_WINS){
+                    Actions = new ArrayList<Types.ACTIONS>();
+                    Actions.add(action);
                     return true;
                 }
-                else {
-                    Actions.remove(Actions.size() - 1);                  //当前动作递归搜索失败，尝试下一个动作
+                if(!stCopy.isGameOver() && !pastState.contains(stCopy.hash())){
+                    searches.add(new DepthFirstSearch(stCopy, pastState, true));
+                    rootActions.add(action);
                 }
             }
         }
-        pastState.remove(pastState.size() - 1);                          //当前局面没有办法成功，删除当前局面
+
+        int remainingLimit = 5;
+        final long deadline = SearchPool.deadline(elapsedTimer, remainingLimit);
+        final AtomicBoolean stop = new AtomicBoolean();                         //一个搜索找到路径后，其他搜索停止
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for(final DepthFirstSearch s : searches){
+            if(!s.finished){
+                tasks.add(new Callable<Void>() {
+                    public Void call() {
+                        s.run(deadline, stop);
+                        return null;
+                    }
+                });
+            }
+        }
+        SearchPool.invokeAll(tasks);
+
+        for(int i = 0; i < searches.size(); i++){                               //按动作的顺序取第一个找到的路径
+            if(searches.get(i).found){
+                Actions = new ArrayList<Types.ACTIONS>();
+                Actions.add(rootActions.get(i));
+                Actions.addAll(searches.get(i).Actions);
+                return true;
+            }
+        }
         return false;
     }
 
@@ -112,7 +158,17 @@ public class Agent extends AbstractPlayer {
         System.out.println();               */
 
         if(!flag){
-            flag = getDepthFirstActions(stateObs, elapsedTimer);           //如果没有搜索过则进行搜索，搜索成功后将flag置为true，并且已将路径存储在Actions中
+            if(SearchPool.enabled()){                                       //如果还没有找到路径则继续搜索，搜索成功后将flag置为true，并且已将路径存储在Actions中
+                flag = getParallelDepthFirstActions(stateObs, elapsedTimer);
+            }
+            else{
+                flag = getDepthFirstActions(stateObs, elapsedTimer);
+            }
+            if(!flag){
+                return Types.ACTIONS.ACTION_NIL;                           //时间用完还没有找到路径，原地等待，下一次act继续搜索
+            }
+            search = null;
+            searches = null;
         }
 
         if(now < Actions.size()){
@@ -0,0 +1,83 @@
+package controllers.depthfirst;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import core.game.StateObservation;
+import ontology.Types;
+
+/**
+ * Depth-first search from a state with an explicit stack, so it can stop at a deadline and go on
+ * from the same point later. It walks the tree on a single copy of the state in undo mode.
+ * <p/>
+ * The states already reached are kept in a set of hashes. If keepPast is false, only the states
+ * of the current path are in it (they are removed when going back), as in the recursive search.
+ * If it is true, all the states reached stay in it, so it can be a concurrent set shared by the
+ * searches that run in parallel from the children of the same root.
+ */
+class DepthFirstSearch {
+
+    StateObservation searchState;                                    //搜索用的状态，沿当前路径前进，回溯时undo
+    ArrayList<Types.ACTIONS> actions;                                //精灵可用的动作
+    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();           //存储走过的动作
+    ArrayList<Integer> nextAction = new ArrayList<Integer>();        //路径上每一层下一个要尝试的动作的下标
+    ArrayList<Long> pathHashes = new ArrayList<Long>();              //路径上每一层状态的hash
+    Set<Long> pastState;                                             //已走过的状态的hash
+    boolean keepPast;                                                //回溯时是否保留已走过的状态
+    boolean found = false;                                           //是否已搜索到路径
+    boolean finished = false;                                        //是否已搜索完（找到路径或没有路径）
+
+    DepthFirstSearch(StateObservation stateObs, Set<Long> pastState, boolean keepPast){
+        searchState = stateObs.copy();
+        searchState.setUndoMode(true);
+        actions = stateObs.getAvailableActions();
+        this.pastState = pastState;
+        this.keepPast = keepPast;
+        pastState.add(stateObs.hash());                              //将当前状态加入已走过的状态
+        nextAction.add(0);
+        pathHashes.add(stateObs.hash());
+    }
+
+    void run(long deadline, AtomicBoolean stop){                     //搜索到deadline（System.nanoTime()）或stop被置为true为止
+        while(!finished && System.nanoTime() < deadline && (stop == null || !stop.get())){
+            int depth = Actions.size();
+            int i = nextAction.get(depth);
+            if(i == actions.size()){                                            //当前局面没有办法成功，删除当前局面，回到上一层
+                if(depth == 0){
+                    finished = true;
+                    return;
+                }
+                long hash = pathHashes.remove(depth);
+                if(!keepPast){
+                    pastState.remove(hash);
+                }
+                nextAction.remove(depth);
+                Actions.remove(depth - 1);
+                searchState.undo();
+                continue;
+            }
+
+            nextAction.set(depth, i + 1);
+            Types.ACTIONS action = actions.get(i);                              //尝试当前局面的下一个动作
+            searchState.advance(action);                                        //施加动作
+            Actions.add(action);                                                //将当前动作加入已走过的动作
+            if(searchState.getGameWinner() == Types.WINNER.PLAYER_WINS){        //如果获胜则已找到
+                found = finished = true;
+                if(stop != null){
+                    stop.set(true);
+                }
+                return;
+            }
+            long hash = searchState.hash();
+            if(searchState.isGameOver() || !pastState.add(hash)){
+                Actions.remove(Actions.size() - 1);                      //如果动作施加后的状态之前已经到达过或者游戏失败，则尝试下一个动作
+                searchState.undo();
+            }
+            else{                                                               //动作施加后的是一个新的状态，向下一层搜索
+                nextAction.add(0);
+                pathHashes.add(hash);
+            }
+        }
+    }
+}
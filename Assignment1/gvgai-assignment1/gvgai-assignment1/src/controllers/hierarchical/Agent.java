@@ -0,0 +1,207 @@
+package controllers.hierarchical;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import core.game.StateObservation;
+import core.player.AbstractPlayer;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+
+/**
+ * Hierarchical planner for Bait-like games (get the key, then reach the goal). It plans with
+ * weighted A* on the abstract grid of GridModel, that needs no calls to the forward model, and then confirms
+ * the plan one subgoal leg at a time (up to the key, then up to the goal) by simulating it with
+ * the forward model, just before the leg is played.
+ * <p/>
+ * If the simulation of a step does not end in the abstract state the model predicted, the steps
+ * before it are played, and that action from that abstract state is banned, so the next plan goes
+ * another way. The forward model is thus only advanced along the plan (once per step played),
+ * instead of for every node of the search.
+ */
+public class Agent extends AbstractPlayer {
+
+    /**
+     * Time left (in ms) when the search stops.
+     */
+    private static final int REMAINING_LIMIT = 5;
+
+    /**
+     * Weight of the heuristic in the abstract search. With more boxes and holes, A* (weight 1)
+     * cannot search all the states it needs in time or memory; with 3 the plans found in the
+     * Bait levels are at most a few steps longer than with 1.
+     */
+    private static final int WEIGHT = 3;
+
+    GridModel model;                                                            //抽象网格模型
+    ArrayList<Types.ACTIONS> actions;                                           //精灵可用的动作
+
+    PriorityQueue<GridState> openState;                                         //抽象搜索中待展开的状态，按f排序（相同时步数多的优先）
+    HashMap<GridState, Integer> bestG;                                          //抽象搜索中每个状态到达时的最少步数
+    long rootHash;                                                              //抽象搜索的初始状态的hash，没有在进行的搜索时openState为null
+    HashMap<GridState, EnumSet<Types.ACTIONS>> banned = new HashMap<GridState, EnumSet<Types.ACTIONS>>();  //模拟与模型不一致的（抽象状态，动作）
+
+    ArrayList<GridState> pending = new ArrayList<GridState>();                  //还没有确认的计划中的抽象状态
+    long pendingHash;                                                           //执行完已确认的动作后应处于的状态的hash
+    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();          //已确认的动作
+    ArrayList<Long> planHashes = new ArrayList<Long>();                         //执行每个动作前应处于的状态的hash
+    int now = 0;                                                                //act函数中输出动作的数组下标
+
+    /**
+     * Public constructor with state observation and time due.
+     * @param so state observation of the current game.
+     * @param elapsedTimer Timer for the controller creation.
+     */
+    public Agent(StateObservation so, ElapsedCpuTimer elapsedTimer)
+    {
+        model = new GridModel(so);
+        actions = so.getAvailableActions();
+        plan(so, elapsedTimer);                                                 //构造函数的时间也用于搜索
+    }
+
+    void startSearch(StateObservation stateObs){                               //从当前状态开始新的抽象搜索
+        GridState root = model.state(stateObs);
+        root.f = model.heuristic(root);
+        openState = new PriorityQueue<GridState>(64, new Comparator<GridState>() {
+            public int compare(GridState a, GridState b) {
+                if(a.f != b.f)
+                    return a.f < b.f ? -1 : 1;
+                return b.g - a.g;
+            }
+        });
+        bestG = new HashMap<GridState, Integer>();
+        openState.add(root);
+        bestG.put(root, 0);
+        rootHash = stateObs.hash();
+    }
+
+    GridState search(ElapsedCpuTimer elapsedTimer){                            //继续抽象搜索，返回通关的状态，时间用完或搜索完时返回null
+        while(!openState.isEmpty() && elapsedTimer.remainingTimeMillis() > REMAINING_LIMIT){
+            GridState state = openState.poll();
+            if(bestG.get(state) < state.g){                                     //之后又以更少的步数到达过该状态
+                continue;
+            }
+            if(state.won){
+                return state;
+            }
+            for(Types.ACTIONS action : actions){
+                if(isBanned(state, action)){
+                    continue;
+                }
+                GridState child = model.next(state, action);                    //在抽象网格上施加动作，不调用advance()
+                if(child == null){                                              //状态不变或游戏失败
+                    continue;
+                }
+                int h = model.heuristic(child);
+                Integer g = bestG.get(child);
+                if(h >= GridModel.UNREACHABLE || (g != null && g <= state.g + 1)){
+                    continue;
+                }
+                child.g = state.g + 1;
+                child.f = child.g + WEIGHT * h;
+                child.parent = state;
+                child.action = action;
+                bestG.put(child, child.g);
+                openState.add(child);
+            }
+        }
+        return null;
+    }
+
+    boolean isBanned(GridState state, Types.ACTIONS action){                   //按GridState.equals()比较状态，不会因hash冲突误禁其他状态的动作
+        EnumSet<Types.ACTIONS> actions = banned.get(state);
+        return actions != null && actions.contains(action);
+    }
+
+    void ban(GridState state, Types.ACTIONS action){
+        EnumSet<Types.ACTIONS> actions = banned.get(state);
+        if(actions == null){
+            actions = EnumSet.noneOf(Types.ACTIONS.class);
+            banned.put(state, actions);
+        }
+        actions.add(action);
+    }
+
+    void confirmLeg(StateObservation stateObs){                                //用前向模型模拟计划的下一段（到钥匙或到目标），确认与模型一致的动作
+        Actions = new ArrayList<Types.ACTIONS>();
+        planHashes = new ArrayList<Long>();
+        now = 0;
+        StateObservation simState = stateObs.copy();
+        while(!pending.isEmpty()){
+            GridState step = pending.remove(0);
+            long hash = simState.hash();
+            simState.advance(step.action);
+            boolean agrees = step.won ? simState.getGameWinner() == Types.WINNER.PLAYER_WINS
+                    : !simState.isGameOver() && model.state(simState).equals(step);
+            if(!agrees){                                                        //与模型不一致，禁止该动作，执行完之前的动作后重新规划
+                ban(step.parent, step.action);
+                pending.clear();
+                return;
+            }
+            Actions.add(step.action);
+            planHashes.add(hash);
+            if(step.won || step.hasKey != step.parent.hasKey){                  //到达子目标，这一段结束
+                break;
+            }
+        }
+        pendingHash = simState.hash();
+    }
+
+    void plan(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){       //规划到时间用完，或得到至少一个确认的动作为止
+        Actions = new ArrayList<Types.ACTIONS>();
+        now = 0;
+        while(elapsedTimer.remainingTimeMillis() > REMAINING_LIMIT){
+            if(openState == null || stateObs.hash() != rootHash){              //还没有搜索或状态已改变，则从当前状态重新搜索
+                startSearch(stateObs);
+            }
+            GridState goal = search(elapsedTimer);
+            if(goal == null){
+                if(openState.isEmpty()){                                        //模型中没有通关的路径，忘掉禁止的动作，下一次重新搜索
+                    banned.clear();
+                    openState = null;
+                }
+                return;
+            }
+            openState = null;
+            pending.clear();
+            for(GridState state = goal; state.parent != null; state = state.parent){
+                pending.add(state);
+            }
+            Collections.reverse(pending);
+            confirmLeg(stateObs);
+            if(!Actions.isEmpty()){
+                return;
+            }
+        }
+    }
+
+    /**
+     * Picks an action. This function is called every game step to request an
+     * action from the player.
+     * @param stateObs Observation of the current state.
+     * @param elapsedTimer Timer when the action returned is due.
+     * @return An action for the current state
+     */
+    public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) {
+
+        long hash = stateObs.hash();
+        if(now < Actions.size() && hash == planHashes.get(now)){               //状态与模拟时相同，则按已确认的动作执行
+            return Actions.get(now++);
+        }
+        if(!pending.isEmpty() && now == Actions.size() && hash == pendingHash){ //上一段已执行完，确认计划的下一段
+            confirmLeg(stateObs);
+        }
+        else{
+            pending.clear();
+            plan(stateObs, elapsedTimer);
+        }
+        if(now < Actions.size()){
+            return Actions.get(now++);
+        }
+        return Types.ACTIONS.ACTION_NIL;                                        //还没有确认的动作，原地等待，下一次act继续规划
+    }
+}
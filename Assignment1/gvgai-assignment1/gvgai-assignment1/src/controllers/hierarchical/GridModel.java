@@ -0,0 +1,191 @@
+package controllers.hierarchical;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import core.game.Observation;
+import core.game.StateObservation;
+import ontology.Types;
+import tools.Vector2d;
+import tools.pathfinder.PathFinder;
+
+/**
+ * Abstract model of Bait (examples/gridphysics/bait.txt) on the observation grid. It applies the
+ * interactions of the game to a GridState without the forward model: the avatar is stopped by
+ * walls and dies in holes, pushes boxes (unless the next cell has a wall, box or mushroom), a box
+ * pushed into a hole fills it, and the goal needs the key.
+ * <p/>
+ * The distances from each cell to the key and to the goal are taken from a PathFinder that only
+ * treats walls as obstacles, as boxes can be pushed and holes filled. They never overestimate the
+ * steps left, so they are the heuristic of the abstract search.
+ */
+class GridModel {
+
+    /**
+     * Distance of a cell that cannot reach the key or the goal.
+     */
+    static final int UNREACHABLE = Integer.MAX_VALUE / 4;
+
+    int wall, hole, mushroom, key, goal, box;   //各种精灵的类型（itype），按名字从游戏的注册表中得到
+    int width, height;                          //网格的宽和高（格子数）
+    int block_size;                             //一格的像素数
+    boolean[] walls;                            //每个格子是否是墙
+    int keyCell = -1;                           //钥匙所在的格子
+    int goalCell = -1;                          //目标所在的格子
+    int[] keyDistance;                          //每个格子到钥匙的距离（只考虑墙）
+    int[] goalDistance;                         //每个格子到目标的距离（只考虑墙）
+
+    GridModel(StateObservation stateObs) {
+        wall = stateObs.getSpriteType("wall");
+        hole = stateObs.getSpriteType("hole");
+        mushroom = stateObs.getSpriteType("mushroom");
+        key = stateObs.getSpriteType("key");
+        goal = stateObs.getSpriteType("goal");
+        box = stateObs.getSpriteType("box");
+
+        ArrayList<Observation>[][] grid = stateObs.getObservationGrid();
+        width = grid.length;
+        height = grid[0].length;
+        block_size = stateObs.getBlockSize();
+        walls = new boolean[width * height];
+        for(int x = 0; x < width; x++) {
+            for(int y = 0; y < height; y++) {
+                for(Observation obs : grid[x][y]) {
+                    if(obs.itype == wall)
+                        walls[cell(x, y)] = true;
+                    else if(obs.itype == key)
+                        keyCell = cell(x, y);
+                    else if(obs.itype == goal)
+                        goalCell = cell(x, y);
+                }
+            }
+        }
+
+        ArrayList<Integer> obstacles = new ArrayList<Integer>();
+        obstacles.add(wall);
+        PathFinder pathFinder = new PathFinder(obstacles);
+        pathFinder.run(stateObs);
+        keyDistance = distances(pathFinder, keyCell);
+        goalDistance = distances(pathFinder, goalCell);
+    }
+
+    int cell(int x, int y) {
+        return y * width + x;
+    }
+
+    int cell(Vector2d position) {
+        return cell((int) (position.x / block_size), (int) (position.y / block_size));
+    }
+
+    private int[] distances(PathFinder pathFinder, int target) {       //每个格子到target的路径长度
+        int[] distance = new int[width * height];
+        Arrays.fill(distance, UNREACHABLE);
+        if(target < 0)
+            return distance;
+        Vector2d end = new Vector2d(target % width, target / width);
+        for(int c = 0; c < distance.length; c++) {
+            if(c == target) {
+                distance[c] = 0;
+            }
+            else if(!walls[c]) {
+                ArrayList<tools.pathfinder.Node> path = pathFinder.getPath(new Vector2d(c % width, c / width), end);
+                if(path != null)
+                    distance[c] = path.size();
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Builds the abstract state of a state of the game.
+     * @param stateObs the state.
+     * @return its abstract state.
+     */
+    GridState state(StateObservation stateObs) {
+        int words = (width * height + 63) >> 6;
+        long[] boxes = new long[words], holes = new long[words], mushrooms = new long[words];
+        boolean hasKey = true;
+        ArrayList<Observation>[][] grid = stateObs.getObservationGrid();
+        for(int x = 0; x < width; x++) {
+            for(int y = 0; y < height; y++) {
+                int c = cell(x, y);
+                for(Observation obs : grid[x][y]) {
+                    if(obs.itype == box)
+                        boxes[c >> 6] |= 1L << c;
+                    else if(obs.itype == hole)
+                        holes[c >> 6] |= 1L << c;
+                    else if(obs.itype == mushroom)
+                        mushrooms[c >> 6] |= 1L << c;
+                    else if(obs.itype == key)
+                        hasKey = false;                 //钥匙还在，就还没有拿到
+                }
+            }
+        }
+        GridState state = new GridState(cell(stateObs.getAvatarPosition()), hasKey, boxes, holes, mushrooms);
+        state.won = stateObs.getGameWinner() == Types.WINNER.PLAYER_WINS;
+        return state;
+    }
+
+    /**
+     * Steps left to win from a state, at least.
+     * @param state the state.
+     * @return the steps, UNREACHABLE or more if the key or the goal cannot be reached.
+     */
+    int heuristic(GridState state) {
+        if(state.won)
+            return 0;
+        if(state.hasKey)
+            return goalDistance[state.avatar];
+        return keyDistance[state.avatar] + (keyCell < 0 ? UNREACHABLE : goalDistance[keyCell]);
+    }
+
+    /**
+     * Applies an action to an abstract state.
+     * @param state the state.
+     * @param action the action, a move in one of the four directions.
+     * @return the next state, or null if the action does not change the state or the avatar dies.
+     */
+    GridState next(GridState state, Types.ACTIONS action) {
+        int dx = 0, dy = 0;
+        switch(action) {
+            case ACTION_LEFT: dx = -1; break;
+            case ACTION_RIGHT: dx = 1; break;
+            case ACTION_UP: dy = -1; break;
+            case ACTION_DOWN: dy = 1; break;
+            default: return null;
+        }
+        int x = state.avatar % width + dx, y = state.avatar / width + dy;
+        if(blocked(x, y))                                               //撞墙，原地不动
+            return null;
+        int n = cell(x, y);
+        if(GridState.get(state.holes, n))                               //掉进洞里，游戏失败
+            return null;
+
+        long[] boxes = state.boxes, holes = state.holes, mushrooms = state.mushrooms;
+        if(GridState.get(boxes, n)) {                                   //推箱子
+            int bx = x + dx, by = y + dy;
+            if(blocked(bx, by))
+                return null;
+            int b = cell(bx, by);
+            if(GridState.get(boxes, b) || GridState.get(mushrooms, b))  //箱子推不动，精灵也不动
+                return null;
+            boxes = GridState.with(boxes, n, false);
+            if(GridState.get(holes, b))                                 //箱子掉进洞里，箱子和洞都消失
+                holes = GridState.with(holes, b, false);
+            else
+                boxes = GridState.with(boxes, b, true);
+        }
+        if(n == goalCell && !state.hasKey)                              //没有钥匙不能进入目标
+            return null;
+        if(GridState.get(mushrooms, n))                                 //吃掉蘑菇
+            mushrooms = GridState.with(mushrooms, n, false);
+
+        GridState next = new GridState(n, state.hasKey || n == keyCell, boxes, holes, mushrooms);
+        next.won = n == goalCell;
+        return next;
+    }
+
+    private boolean blocked(int x, int y) {
+        return x < 0 || y < 0 || x >= width || y >= height || walls[cell(x, y)];
+    }
+}
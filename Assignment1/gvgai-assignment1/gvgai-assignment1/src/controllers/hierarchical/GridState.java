@@ -0,0 +1,63 @@
+package controllers.hierarchical;
+
+import java.util.Arrays;
+
+import ontology.Types;
+
+/**
+ * State of the abstract grid of GridModel: the cell of the avatar, whether it has the key, and the
+ * cells of the sprites that can change (boxes, holes and mushrooms), as bit sets indexed by cell.
+ * States are compared by these fields only; the rest are the bookkeeping of the search.
+ */
+class GridState {
+
+    int avatar;                                 //精灵所在的格子
+    boolean hasKey;                             //是否已经拿到钥匙
+    boolean won;                                //是否已经通关
+    long[] boxes;                               //箱子所在的格子
+    long[] holes;                               //洞所在的格子
+    long[] mushrooms;                           //蘑菇所在的格子
+    int hash;
+
+    int g;                                      //从搜索的初始状态走过的步数
+    int f;                                      //步数加上到通关至少还要走的步数
+    GridState parent;                           //搜索中的父状态
+    Types.ACTIONS action;                       //从父状态到达该状态的动作
+
+    GridState(int avatar, boolean hasKey, long[] boxes, long[] holes, long[] mushrooms) {
+        this.avatar = avatar;
+        this.hasKey = hasKey;
+        this.boxes = boxes;
+        this.holes = holes;
+        this.mushrooms = mushrooms;
+        hash = ((avatar * 31 + (hasKey ? 1 : 0)) * 31 + Arrays.hashCode(boxes)) * 31
+                + Arrays.hashCode(holes) * 17 + Arrays.hashCode(mushrooms);
+    }
+
+    static boolean get(long[] bits, int cell) {
+        return (bits[cell >> 6] & (1L << cell)) != 0;
+    }
+
+    static long[] with(long[] bits, int cell, boolean value) {     //复制并修改一个格子
+        long[] copy = bits.clone();
+        if(value)
+            copy[cell >> 6] |= 1L << cell;
+        else
+            copy[cell >> 6] &= ~(1L << cell);
+        return copy;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(!(o instanceof GridState))
+            return false;
+        GridState s = (GridState) o;
+        return avatar == s.avatar && hasKey == s.hasKey && won == s.won && Arrays.equals(boxes, s.boxes)
+                && Arrays.equals(holes, s.holes) && Arrays.equals(mushrooms, s.mushrooms);
+    }
+}
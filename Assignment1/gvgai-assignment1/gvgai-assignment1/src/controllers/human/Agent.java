@@ -1,6 +1,5 @@
 package controllers.human;
 
-import core.game.Game;
 import core.game.StateObservation;
 import core.player.AbstractPlayer;
 import ontology.Types;
@@ -33,8 +32,8 @@ public class Agent extends AbstractPlayer
      */
     public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer)
     {
-        Vector2d move = Utils.processMovementActionKeys(Game.ki.getMask());
-        boolean useOn = Utils.processUseKey(Game.ki.getMask());
+        Vector2d move = Utils.processMovementActionKeys(stateObs.getKeyHandler().getMask());
+        boolean useOn = Utils.processUseKey(stateObs.getKeyHandler().getMask());
 
         //In the keycontroller, move has preference.
         Types.ACTIONS action = Types.ACTIONS.fromVector(move);
@@ -0,0 +1,230 @@
+package controllers.idastar;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import core.game.StateObservation;
+import core.player.AbstractPlayer;
+import ontology.Types;
+import tools.ElapsedCpuTimer;
+import tools.Vector2d;
+
+/**
+ * Iterative deepening A* (IDA*) for Bait-like games (get the key, then reach the goal).
+ * The search walks the game tree on a single copy of the state in undo mode, with an explicit
+ * stack, so its memory is linear in the depth of the path plus a fixed-size transposition
+ * table. It stops when the time of the current call runs out, and goes on from the same
+ * point in the next call to act().
+ * <p/>
+ * Each iteration raises the bound so that about twice as many nodes as in the last one are
+ * within it (controlled re-expansion), instead of to the smallest value over the bound, as in
+ * these games the bound would grow one step at a time. The path found may then be a few steps
+ * longer than the shortest one.
+ * <p/>
+ * In Bait it solves levels 0 to 2. Levels 3 and 4 need many boxes to be pushed into holes, which
+ * the Manhattan distance to the key and the goal does not account for, and the search does not
+ * finish within the game. It is also slower than controllers.Astar, which keeps the states it has
+ * reached; its advantage is that its memory does not grow with the number of states searched.
+ */
+public class Agent extends AbstractPlayer {
+
+    /**
+     * Log2 of the number of entries of the transposition table.
+     */
+    private static final int TABLE_BITS = 20;
+
+    /**
+     * Time left (in ms) when the search stops.
+     */
+    private static final int REMAINING_LIMIT = 5;
+
+    int block_size;                                                             //每一步的代价（一格的像素数）
+    Vector2d goalpos;                                                           //目标的位置
+    Vector2d keypos;                                                            //钥匙的位置
+    double goal_keyDistance;                                                    //钥匙与目标之间的曼哈顿距离
+    boolean hasKey = false;                                                     //是否已经拿到钥匙
+
+    StateObservation searchState;                                               //搜索用的状态，沿当前路径前进，回溯时undo
+    long rootHash;                                                              //搜索的初始状态的hash
+    ArrayList<Types.ACTIONS> actions;                                           //精灵可用的动作
+    ArrayList<Types.ACTIONS> path = new ArrayList<Types.ACTIONS>();             //当前路径的动作
+    ArrayList<Integer> nextAction = new ArrayList<Integer>();                   //路径上每一层下一个要尝试的动作的下标
+    ArrayList<Long> pathHashes = new ArrayList<Long>();                         //路径上每一层状态的hash
+    ArrayList<Boolean> pathHasKey = new ArrayList<Boolean>();                   //路径上每一层是否已经拿到钥匙
+    ArrayList<Double> pathMin = new ArrayList<Double>();                        //路径上每一层之下超过上限的评分中最小的
+    ArrayList<Boolean> pathPruned = new ArrayList<Boolean>();                   //路径上每一层之下是否有状态因本轮已经到达过而被剪枝
+    double bound;                                                               //本轮迭代的评分上限
+    int expanded;                                                               //本轮迭代展开的节点数
+    TreeMap<Double, Integer> exceeded = new TreeMap<Double, Integer>();         //本轮超过上限的评分及其节点数，用来确定下一轮的上限
+    boolean exhausted = false;                                                  //搜索完所有状态也没有通关的路径
+    TranspositionTable table = new TranspositionTable(TABLE_BITS);              //本轮迭代到达过的状态
+
+    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();          //搜索到的通关动作
+    ArrayList<Long> planHashes = new ArrayList<Long>();                         //执行每个动作前应处于的状态的hash
+    int now = 0;                                                                //act函数中输出动作的数组下标
+
+    /**
+     * Public constructor with state observation and time due.
+     * @param so state observation of the current game.
+     * @param elapsedTimer Timer for the controller creation.
+     */
+    public Agent(StateObservation so, ElapsedCpuTimer elapsedTimer)
+    {
+        block_size = so.getBlockSize();
+        goalpos = so.getImmovablePositions()[1].get(0).position;
+        keypos = so.getMovablePositions()[0].get(0).position;
+        goal_keyDistance = Math.abs(goalpos.x - keypos.x) + Math.abs(goalpos.y - keypos.y);
+
+        startSearch(so);
+        search(elapsedTimer);                                                   //构造函数的时间也用于搜索
+    }
+
+    double heuristic(StateObservation stateObs, boolean hasKey){               //到通关还需要走的曼哈顿距离，不会高估实际的代价
+        Vector2d playerpos = stateObs.getAvatarPosition();
+        if(hasKey){
+            return Math.abs(goalpos.x - playerpos.x) + Math.abs(goalpos.y - playerpos.y);
+        }
+        return Math.abs(playerpos.x - keypos.x) + Math.abs(playerpos.y - keypos.y) + goal_keyDistance;
+    }
+
+    void startSearch(StateObservation stateObs){                               //从当前状态开始新的搜索
+        searchState = stateObs.copy();
+        searchState.setUndoMode(true);
+        rootHash = stateObs.hash();
+        actions = stateObs.getAvailableActions();
+        path.clear();
+        nextAction.clear();
+        pathHashes.clear();
+        pathHasKey.clear();
+        pathMin.clear();
+        pathPruned.clear();
+        nextAction.add(0);
+        pathHashes.add(rootHash);
+        pathHasKey.add(hasKey);
+        pathMin.add(Double.POSITIVE_INFINITY);
+        pathPruned.add(false);
+        bound = heuristic(stateObs, hasKey);
+        expanded = 0;
+        exceeded.clear();
+        exhausted = false;
+        table.nextIteration();
+        table.visit(rootHash, 0);
+    }
+
+    boolean search(ElapsedCpuTimer elapsedTimer){                              //继续搜索直到找到通关的路径或时间用完
+        while(!exhausted && elapsedTimer.remainingTimeMillis() > REMAINING_LIMIT){
+            int depth = path.size();
+            int i = nextAction.get(depth);
+            if(i == actions.size()){                                            //当前状态的动作都已尝试，回溯
+                double min = pathMin.get(depth);
+                if(depth == 0){                                                 //本轮迭代结束，开始下一轮
+                    if(exceeded.isEmpty()){
+                        exhausted = true;
+                        return false;
+                    }
+                    bound = nextBound();
+                    expanded = 0;
+                    exceeded.clear();
+                    table.nextIteration();
+                    table.visit(rootHash, 0);
+                    nextAction.set(0, 0);
+                    pathMin.set(0, Double.POSITIVE_INFINITY);
+                    pathPruned.set(0, false);
+                    continue;
+                }
+                boolean pruned = pathPruned.get(depth);
+                if(min < Double.POSITIVE_INFINITY && !pruned){                  //记住该状态到通关至少还要走的距离，下一轮可以更早剪枝；
+                    table.learn(pathHashes.get(depth), min - depth * block_size);   //之下有被剪枝的状态时，min没有包括经过它们的路径，不能记住
+                }
+                pathMin.set(depth - 1, Math.min(pathMin.get(depth - 1), min));
+                pathPruned.set(depth - 1, pathPruned.get(depth - 1) || pruned);
+                searchState.undo();
+                path.remove(depth - 1);
+                nextAction.remove(depth);
+                pathHashes.remove(depth);
+                pathHasKey.remove(depth);
+                pathMin.remove(depth);
+                pathPruned.remove(depth);
+                continue;
+            }
+
+            nextAction.set(depth, i + 1);
+            Types.ACTIONS action = actions.get(i);
+            searchState.advance(action);
+            if(searchState.getGameWinner() == Types.WINNER.PLAYER_WINS){       //胜利，当前路径加上该动作即为通关的动作
+                path.add(action);
+                Actions = new ArrayList<Types.ACTIONS>(path);
+                planHashes = new ArrayList<Long>(pathHashes);
+                now = 0;
+                searchState = null;
+                return true;
+            }
+            if(searchState.isGameOver()){                                       //游戏失败，尝试其他动作
+                searchState.undo();
+                continue;
+            }
+
+            boolean childHasKey = pathHasKey.get(depth) || searchState.getAvatarPosition().equals(keypos);
+            long hash = searchState.hash();
+            double f = (depth + 1) * block_size + table.distance(hash, heuristic(searchState, childHasKey));
+            if(f > bound){                                                      //超过上限，记录最小的超出的评分
+                pathMin.set(depth, Math.min(pathMin.get(depth), f));
+                Integer count = exceeded.get(f);
+                exceeded.put(f, count == null ? 1 : count + 1);
+                searchState.undo();
+                continue;
+            }
+            if(!table.visit(hash, depth + 1)){                                  //本轮已经以更少的步数到达过该状态
+                pathPruned.set(depth, true);
+                searchState.undo();
+                continue;
+            }
+            expanded++;
+            path.add(action);                                                   //向下一层搜索
+            nextAction.add(0);
+            pathHashes.add(hash);
+            pathHasKey.add(childHasKey);
+            pathMin.add(Double.POSITIVE_INFINITY);
+            pathPruned.add(false);
+        }
+        return false;
+    }
+
+    double nextBound(){                         //下一轮的上限：使超过本轮上限而在下一轮上限之内的节点数不少于本轮展开的节点数
+        int count = 0;
+        double next = bound;
+        for(Map.Entry<Double, Integer> entry : exceeded.entrySet()){
+            next = entry.getKey();
+            count += entry.getValue();
+            if(count >= 2 * expanded){
+                break;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Picks an action. This function is called every game step to request an
+     * action from the player.
+     * @param stateObs Observation of the current state.
+     * @param elapsedTimer Timer when the action returned is due.
+     * @return An action for the current state
+     */
+    public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer) {
+
+        if(stateObs.getAvatarPosition().equals(keypos)){                       //精灵到过钥匙的位置则有钥匙了
+            hasKey = true;
+        }
+        if(now < Actions.size() && stateObs.hash() == planHashes.get(now)){    //状态与搜索时预计的相同，则按Actions执行动作
+            return Actions.get(now++);
+        }
+        if(searchState == null || stateObs.hash() != rootHash){                //还没有搜索或状态已改变，则从当前状态重新搜索
+            startSearch(stateObs);
+        }
+        if(search(elapsedTimer)){
+            return Actions.get(now++);
+        }
+        return Types.ACTIONS.ACTION_NIL;                                        //还没有找到路径，原地等待，下一次act继续搜索
+    }
+}
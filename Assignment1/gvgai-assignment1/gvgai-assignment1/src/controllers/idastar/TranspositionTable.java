@@ -0,0 +1,91 @@
+package controllers.idastar;
+
+/**
+ * Fixed-size table of the states reached by IDA*, keyed by StateObservation.hash(). Each state
+ * keeps the smallest number of steps it was reached with in the current iteration, so the search
+ * does not expand it again from a path that is not shorter, and the lower bound of its distance
+ * to a win learned in earlier iterations, that is usually higher than the heuristic.
+ * <p/>
+ * The table is direct-mapped: a new state overwrites the one in its entry, so its size
+ * does not grow with the search. Losing an entry only means that state may be expanded again.
+ */
+public class TranspositionTable {
+
+    private final long[] keys;
+    private final int[] depths;
+    private final int[] iterations;
+    private final double[] learned;
+    private final int mask;
+
+    /**
+     * Iteration of the search the stored entries belong to. Entries of older iterations are ignored.
+     */
+    private int iteration = 1;
+
+    /**
+     * Creates an empty table.
+     * @param bits log2 of the number of entries.
+     */
+    public TranspositionTable(int bits) {
+        keys = new long[1 << bits];
+        depths = new int[1 << bits];
+        iterations = new int[1 << bits];
+        learned = new double[1 << bits];
+        mask = (1 << bits) - 1;
+    }
+
+    /**
+     * Forgets the states reached, in constant time. The learned distances are kept.
+     */
+    public void nextIteration() {
+        iteration++;
+    }
+
+    /**
+     * Records that a state has been reached with a number of steps, unless it was already
+     * reached in this iteration with the same number of steps or fewer.
+     * @param hash hash of the state.
+     * @param depth number of steps from the root.
+     * @return false if the state was already reached with at most depth steps.
+     */
+    public boolean visit(long hash, int depth) {
+        int i = index(hash);
+        if(keys[i] != hash) {
+            keys[i] = hash;
+            learned[i] = 0;
+        }
+        else if(iterations[i] == iteration && depths[i] <= depth)
+            return false;
+
+        depths[i] = depth;
+        iterations[i] = iteration;
+        return true;
+    }
+
+    /**
+     * Returns the distance to a win of a state, as the higher of the heuristic and the
+     * distance learned for it.
+     * @param hash hash of the state.
+     * @param h heuristic of the state.
+     * @return the distance.
+     */
+    public double distance(long hash, double h) {
+        int i = index(hash);
+        return keys[i] == hash ? Math.max(h, learned[i]) : h;
+    }
+
+    /**
+     * Stores the distance to a win learned for a state after searching below it.
+     * @param hash hash of the state.
+     * @param distance the distance.
+     */
+    public void learn(long hash, double distance) {
+        int i = index(hash);
+        if(keys[i] == hash)
+            learned[i] = Math.max(learned[i], distance);
+    }
+
+    private int index(long hash) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+}
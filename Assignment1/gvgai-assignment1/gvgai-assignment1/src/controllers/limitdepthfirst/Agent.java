@@ -2,7 +2,9 @@ package controllers.limitdepthfirst;
 
 import java.awt.Graphics2D;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.Callable;
 
 import core.game.Observation;
 import core.game.StateObservation;
@@ -10,6 +12,7 @@ import core.player.AbstractPlayer;
 import ontology.Types;
 import ontology.Types.WINNER;
 import tools.ElapsedCpuTimer;
+import tools.SearchPool;
 import tools.Vector2d;
 
 /**
@@ -36,17 +39,23 @@ public class Agent extends AbstractPlayer {
      */
     protected int block_size;
 
-    ArrayList<StateObservation> pastState = new ArrayList<StateObservation>();          //存储走过的状态
-    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();               //存储走过的动作
+    HashSet<Long> pastState = new HashSet<Long>();                      //存储实际走过的状态的hash
     ArrayList<Types.ACTIONS> bestAction = new ArrayList<Types.ACTIONS>();            //存储搜索过的路径中最优的动作
-    double bestScore = 10000;                                            //已走过的路径的最优评分（值越小越好）
     boolean hasKey = false;                                              //是否已经拿到钥匙
-    int singleSearchDepth = 0;                                           //当前搜索的深度
     int searchDepth = 5;                                                 //规定的受限搜索深度（综合搜索时间和准确性确定）
     Vector2d goalpos;                                                    //目标的位置
     Vector2d keypos;                                                     //钥匙的位置
     double goal_keyDistance;                                             //钥匙与目标之间的曼哈顿距离
 
+    LimitDepthFirstSearch search;                                        //当前的搜索，搜索完成或局面改变后为null
+    /*
+    原来的搜索是递归的，不管elapsedTimer，每次act都要搜索完。现在用显式的栈保存搜索的路径（见LimitDepthFirstSearch），每次act只搜索到时间用完，
+    返回目前最优的动作。如果执行的动作正是栈中路径的第一个动作，下一次act以栈中的第二层为根继续搜索，否则从新的局面重新搜索。
+    搜索完成时的结果与原来的递归相同。
+    SearchPool.THREADS大于1时，初始状态的每个动作在SearchPool的线程中各自进行一个受限深度的搜索，每次act都从当前局面重新搜索，
+    用act时间对应的截止时刻停止。合并时取评分最小的结果，相同时取动作顺序在前的，所以都搜索完时与顺序搜索的结果相同。
+    */
+
     /**
      * Public constructor with state observation and time due.
      * @param so state observation of the current game.
@@ -59,69 +68,44 @@ public class Agent extends AbstractPlayer {
         block_size = so.getBlockSize();
     }
 
-    boolean equalTest(StateObservation state){                  //判断当前状态之前是否到达过
-        for(StateObservation so : pastState){
-            if(state.equalPosition(so)){
-                return true;
-            }
-        }
-        return false;
-    }
-
 
-    double distance(StateObservation stateObs){                 //利用精灵的位置、目标的位置和钥匙的位置构造启发式函数distance
+    double distance(StateObservation stateObs, boolean pathHasKey){    //利用精灵的位置、目标的位置和钥匙的位置构造启发式函数distance
         Vector2d playerpos = stateObs.getAvatarPosition();          //精灵的位置
-        if(hasKey){
-            return Math.abs(goalpos.x - playerpos.x) + Math.abs(goalpos.y - playerpos.y);       //如果已经拿到钥匙，则返回精灵与目标的曼哈顿距离
+        if(hasKey || pathHasKey){                                   //如果已经拿到钥匙，或者在当前搜索的路径中精灵已经到过钥匙所在的位置，则返回精灵与目标的曼哈顿距离
+            return Math.abs(goalpos.x - playerpos.x) + Math.abs(goalpos.y - playerpos.y);
         }
         else{
-            for(StateObservation so : pastState){                     //如果在当前搜索的走过的状态中，精灵已经到过钥匙所在的位置，则返回精灵与目标的曼哈顿距离
-                if(so.getAvatarPosition().equals(keypos)){
-                    return Math.abs(goalpos.x - playerpos.x) + Math.abs(goalpos.y - playerpos.y);
-                }
-            }
             return Math.abs(playerpos.x - keypos.x) + Math.abs(playerpos.y - keypos.y) + goal_keyDistance;
             //否则精灵无钥匙，返回精灵与目标的曼哈顿距离和钥匙与目标的曼哈顿距离的和
         }
     }
 
 
-    void getLimitDepthFirstActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
-        pastState.add(stateObs);                                        //将当前状态加入已走过的状态中
-        singleSearchDepth++;                                            //搜索深度加一
-        for(Types.ACTIONS action : stateObs.getAvailableActions()){         //尝试当前局面所有可能的动作
-            StateObservation stCopy = stateObs.copy();                      //新建一个当前状态的副本，用于模拟施加动作
-            stCopy.advance(action);                                         //施加动作
-            Actions.add(action);                                            //将当前动作加入已走过的动作
-            if(singleSearchDepth == searchDepth){                           //如果当前搜索的深度等于受限的深度
-                double score = distance(stateObs);                          //根据启发式函数计算当前局面的评分
-                if(score < bestScore){                                      //如果评分小于之前的最优评分，则更新最优解
-                    bestAction = (ArrayList<Types.ACTIONS>) Actions.clone();
-                    bestScore = score;
-                }
-            }
-            else if(stCopy.getGameWinner() == Types.WINNER.PLAYER_WINS) {        //如果还没到受限的搜索深度就已经胜利，则根据受限深度与当前搜索深度的差确定评分
-                double score = -50 * (searchDepth - singleSearchDepth);
-                if(score < bestScore) {                                     //如果评分小于之前的最优评分，则更新最优解
-                    bestAction = (ArrayList<Types.ACTIONS>) Actions.clone();
-                    bestScore = score;
+    void getParallelLimitDepthFirstActions(StateObservation stateObs, ElapsedCpuTimer elapsedTimer){
+        int remainingLimit = 5;
+        final long deadline = SearchPool.deadline(elapsedTimer, remainingLimit);
+        ArrayList<LimitDepthFirstSearch> searches = new ArrayList<LimitDepthFirstSearch>();
+        ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        int numActions = stateObs.getAvailableActions().size();
+        for(int i = 0; i < numActions; i++){                            //状态的副本在当前线程中生成，每个动作一个搜索
+            final LimitDepthFirstSearch s = new LimitDepthFirstSearch(this, stateObs, i, i + 1);
+            searches.add(s);
+            tasks.add(new Callable<Void>() {
+                public Void call() {
+                    s.run(deadline);
+                    return null;
                 }
-                Actions.remove(Actions.size() - 1);             //因为执行该动作后已胜利，故当前局面的其他动作已无搜索的必要，可以直接返回
-                singleSearchDepth--;
-                pastState.remove(pastState.size() - 1);
-                return;
-            }
-            else if(equalTest(stCopy) || stCopy.isGameOver()){         //如果如果动作施加后的状态之前已经到达过或者游戏失败，不进行操作
+            });
+        }
+        SearchPool.invokeAll(tasks);
 
+        LimitDepthFirstSearch best = null;                              //合并结果：评分最小的，相同时取动作顺序在前的
+        for(LimitDepthFirstSearch s : searches){
+            if(!s.bestAction.isEmpty() && (best == null || s.bestScore < best.bestScore)){
+                best = s;
             }
-            else{                                                      //动作施加后的是一个新的状态
-                getLimitDepthFirstActions(stCopy,elapsedTimer);        //递归进行深度优先搜索
-            }
-            Actions.remove(Actions.size() - 1);                 //移除当前施加的动作，尝试另外的动作
         }
-        singleSearchDepth--;                                           //当前状态的搜索结束，返回上一层
-        pastState.remove(pastState.size() - 1);
-        return;
+        bestAction = best == null ? new ArrayList<Types.ACTIONS>() : best.bestAction;
     }
 
     /**
@@ -150,17 +134,38 @@ public class Agent extends AbstractPlayer {
         if(stateObs.getAvatarPosition().equals(keypos)){                //如果当前状态下精灵在钥匙的位置，则精灵拥有了钥匙
             hasKey = true;
         }
-        if(singleSearchDepth == 0 && !hasKey){                          //初始化目标位置、钥匙位置和钥匙与目标之间的曼哈顿距离
+        if(goalpos == null){                                            //初始化目标位置、钥匙位置和钥匙与目标之间的曼哈顿距离
             goalpos = stateObs.getImmovablePositions()[1].get(0).position;
             keypos = stateObs.getMovablePositions()[0].get(0).position;
             goal_keyDistance = Math.abs(goalpos.x - keypos.x) + Math.abs(goalpos.y - keypos.y);
         }
-        singleSearchDepth = 0;                                          //初始化当前搜索深度，最佳评分，动作集以及最佳动作集
-        bestScore = 10000;
-        Actions = new ArrayList<Types.ACTIONS>();
-        bestAction = new ArrayList<Types.ACTIONS>();
-        pastState.add(stateObs);                                        //将当前状态加入已走过的状态中
-        getLimitDepthFirstActions(stateObs, elapsedTimer);              //每一步都进行一次深度受限的深度优先搜索，并将最佳动作集存储在bestAction中
+        long hash = stateObs.hash();
+        if(search != null && hash != search.rootHash){
+            if(search.pathHashes.size() > 1 && search.pathHashes.get(1) == hash){      //执行的是路径的第一个动作，在原来的搜索中继续
+                search.moveRoot();
+            }
+            else{                                                       //否则放弃原来的搜索
+                search = null;
+            }
+        }
+        pastState.add(hash);                                            //将当前状态加入已走过的状态中
+        if(SearchPool.enabled()){                                       //每一步都进行一次深度受限的深度优先搜索，并将最佳动作集存储在bestAction中
+            getParallelLimitDepthFirstActions(stateObs, elapsedTimer);
+        }
+        else{
+            if(search == null){
+                search = new LimitDepthFirstSearch(this, stateObs, 0, stateObs.getAvailableActions().size());
+            }
+            int remainingLimit = 5;
+            boolean finished = search.run(SearchPool.deadline(elapsedTimer, remainingLimit));     //只搜索到时间用完
+            bestAction = search.bestAction;
+            if(finished){
+                search = null;                                          //搜索完成，下一步从新的局面重新搜索
+            }
+        }
+        if(bestAction.isEmpty()){                                       //还没有找到可走的路径
+            return Types.ACTIONS.ACTION_NIL;
+        }
         return bestAction.get(0);                                       //执行最佳动作集的第一步
     }
 
@@ -0,0 +1,121 @@
+package controllers.limitdepthfirst;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import core.game.StateObservation;
+import ontology.Types;
+
+/**
+ * Depth-limited search from a state with an explicit stack, so it can stop at a deadline and go on
+ * from the same point later. It walks the tree on a single copy of the state in undo mode.
+ * <p/>
+ * It only tries the actions of the root in [rootBegin, rootEnd), so several searches can run in
+ * parallel, one for each action of the same root. The states the agent has actually visited are
+ * only read, and the states of the current path are kept by each search, so the searches do not
+ * share anything they modify.
+ */
+class LimitDepthFirstSearch {
+
+    Agent agent;                                                         //搜索所属的agent，提供评分函数、受限深度和实际走过的状态
+    StateObservation searchState;                                        //搜索用的状态，沿当前路径前进，回溯时undo
+    long rootHash;                                                       //搜索的初始状态的hash
+    ArrayList<Types.ACTIONS> actions;                                    //精灵可用的动作
+    int rootEnd;                                                         //初始状态尝试的动作的下标上限（不含）
+    ArrayList<Types.ACTIONS> Actions = new ArrayList<Types.ACTIONS>();               //存储当前路径的动作
+    ArrayList<Types.ACTIONS> bestAction = new ArrayList<Types.ACTIONS>();            //存储搜索过的路径中最优的动作
+    double bestScore = 10000;                                            //已走过的路径的最优评分（值越小越好）
+    ArrayList<Integer> nextAction = new ArrayList<Integer>();            //路径上每一层下一个要尝试的动作的下标
+    ArrayList<Long> pathHashes = new ArrayList<Long>();                  //路径上每一层状态的hash
+    ArrayList<Boolean> pathHasKey = new ArrayList<Boolean>();            //路径上每一层精灵是否到过钥匙的位置
+    HashSet<Long> pathState = new HashSet<Long>();                       //当前路径上的状态的hash（不含初始状态）
+
+    LimitDepthFirstSearch(Agent agent, StateObservation stateObs, int rootBegin, int rootEnd){
+        this.agent = agent;
+        searchState = stateObs.copy();
+        searchState.setUndoMode(true);
+        rootHash = stateObs.hash();
+        actions = stateObs.getAvailableActions();
+        this.rootEnd = rootEnd;
+        nextAction.add(rootBegin);
+        pathHashes.add(rootHash);
+        pathHasKey.add(stateObs.getAvatarPosition().equals(agent.keypos));
+    }
+
+    int limit(int depth){                                                //某一层尝试的动作的下标上限
+        return depth == 0 ? rootEnd : actions.size();
+    }
+
+    void moveRoot(){                                                     //已执行路径的第一个动作，以路径的第二层为根继续搜索
+        Types.ACTIONS action = Actions.remove(0);
+        nextAction.remove(0);
+        pathState.remove(pathHashes.get(1));
+        rootHash = pathHashes.get(1);
+        pathHashes.remove(0);
+        pathHasKey.remove(0);
+        if(!bestAction.isEmpty() && bestAction.get(0) == action){
+            bestAction.remove(0);
+        }
+        else{
+            bestScore = 10000;
+            bestAction = new ArrayList<Types.ACTIONS>();
+        }
+    }
+
+    boolean run(long deadline){                                          //搜索到deadline（System.nanoTime()）为止，返回是否已搜索完
+        while(System.nanoTime() < deadline){
+            int depth = Actions.size();
+            int i = nextAction.get(depth);
+            if(i >= limit(depth)){                                       //当前状态的搜索结束，返回上一层
+                if(depth == 0){
+                    return true;
+                }
+                pathState.remove(pathHashes.remove(depth));
+                pathHasKey.remove(depth);
+                nextAction.remove(depth);
+                Actions.remove(depth - 1);
+                searchState.undo();
+                continue;
+            }
+
+            if(depth + 1 == agent.searchDepth){                          //如果当前搜索的深度等于受限的深度，则根据启发式函数计算当前局面的评分
+                double score = agent.distance(searchState, pathHasKey.get(depth));
+                if(score < bestScore){                                   //评分与动作无关，所以只有第一个动作可能更新最优解
+                    bestAction = new ArrayList<Types.ACTIONS>(Actions);
+                    bestAction.add(actions.get(0));
+                    bestScore = score;
+                }
+                nextAction.set(depth, limit(depth));
+                continue;
+            }
+
+            nextAction.set(depth, i + 1);
+            Types.ACTIONS action = actions.get(i);
+            searchState.advance(action);                                 //施加动作
+            Actions.add(action);                                         //将当前动作加入当前路径
+            if(searchState.getGameWinner() == Types.WINNER.PLAYER_WINS) {         //如果还没到受限的搜索深度就已经胜利，则根据受限深度与当前搜索深度的差确定评分
+                double score = -50 * (agent.searchDepth - (depth + 1));
+                if(score < bestScore) {                                  //如果评分小于之前的最优评分，则更新最优解
+                    bestAction = new ArrayList<Types.ACTIONS>(Actions);
+                    bestScore = score;
+                }
+                Actions.remove(Actions.size() - 1);                      //因为执行该动作后已胜利，故当前局面的其他动作已无搜索的必要
+                searchState.undo();
+                nextAction.set(depth, limit(depth));
+                continue;
+            }
+            long hash = searchState.hash();
+            if(agent.pastState.contains(hash) || pathState.contains(hash) || searchState.isGameOver()){   //如果动作施加后的状态之前已经到达过或者游戏失败，不进行操作
+                Actions.remove(Actions.size() - 1);                      //移除当前施加的动作，尝试另外的动作
+                searchState.undo();
+            }
+            else{                                                        //动作施加后的是一个新的状态，向下一层搜索
+                pathState.add(hash);
+                pathHashes.add(hash);
+                pathHasKey.add(pathHasKey.get(depth) || searchState.getAvatarPosition().equals(agent.keypos));
+                nextAction.add(0);
+            }
+        }
+        return false;
+    }
+}
@@ -2,6 +2,7 @@ package controllers.sampleMCTS;
 
 import java.util.Random;
 
+import core.game.CompactState;
 import core.game.StateObservation;
 import ontology.Types;
 import tools.ElapsedCpuTimer;
@@ -176,17 +177,34 @@ public class SingleTreeNode
 
     public double rollOut()
     {
-        StateObservation rollerState = state.copy();
         int thisDepth = this.m_depth;
+        double delta;
 
-        while (!finishRollout(rollerState,thisDepth)) {
+        //The compact state advances much faster, when the game is supported.
+        CompactState compactState = state.compact();
+        if(compactState != null)
+        {
+            while (!finishRollout(compactState,thisDepth)) {
 
-            int action = m_rnd.nextInt(Agent.NUM_ACTIONS);
-            rollerState.advance(Agent.actions[action]);
-            thisDepth++;
-        }
+                int action = m_rnd.nextInt(Agent.NUM_ACTIONS);
+                compactState.advance(Agent.actions[action]);
+                thisDepth++;
+            }
+
+            delta = value(compactState);
+        }else
+        {
+            StateObservation rollerState = state.copy();
 
-        double delta = value(rollerState);
+            while (!finishRollout(rollerState,thisDepth)) {
+
+                int action = m_rnd.nextInt(Agent.NUM_ACTIONS);
+                rollerState.advance(Agent.actions[action]);
+                thisDepth++;
+            }
+
+            delta = value(rollerState);
+        }
 
         if(delta < bounds[0])
             bounds[0] = delta;
@@ -198,10 +216,15 @@ public class SingleTreeNode
     }
 
     public double value(StateObservation a_gameState) {
+        return value(a_gameState.isGameOver(), a_gameState.getGameWinner(), a_gameState.getGameScore());
+    }
+
+    public double value(CompactState a_gameState) {
+        return value(a_gameState.isGameOver(), a_gameState.getGameWinner(), a_gameState.getGameScore());
+    }
 
-        boolean gameOver = a_gameState.isGameOver();
-        Types.WINNER win = a_gameState.getGameWinner();
-        double rawScore = a_gameState.getGameScore();
+    //Shared by both kinds of state, so their rollouts are valued in the same way.
+    private double value(boolean gameOver, Types.WINNER win, double rawScore) {
 
         if(gameOver && win == Types.WINNER.PLAYER_LOSES)
             rawScore += HUGE_NEGATIVE;
@@ -213,11 +236,21 @@ public class SingleTreeNode
     }
 
     public boolean finishRollout(StateObservation rollerState, int depth)
+    {
+        return finishRollout(rollerState.isGameOver(), depth);
+    }
+
+    public boolean finishRollout(CompactState rollerState, int depth)
+    {
+        return finishRollout(rollerState.isGameOver(), depth);
+    }
+
+    private boolean finishRollout(boolean gameOver, int depth)
     {
         if(depth >= Agent.ROLLOUT_DEPTH)      //rollout end condition.
             return true;
 
-        if(rollerState.isGameOver())               //end of game
+        if(gameOver)               //end of game
             return true;
 
         return false;
@@ -12,10 +12,17 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import core.competition.CompetitionParameters;
 import core.game.Game;
 import core.game.GameDescription;
+import core.game.GameTemplate;
 import core.game.GameDescription.SpriteData;
 import core.game.StateObservation;
 import core.generator.AbstractLevelGenerator;
@@ -75,9 +82,6 @@ public class ArcadeMachine
     public static double runOneGame(String game_file, String level_file, boolean visuals,
                                     String agentName, String actionFile, int randomSeed, boolean isHuman)
     {
-        VGDLFactory.GetInstance().init(); //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         System.out.println(" ** Playing game " + game_file + ", level " + level_file + " **");
 
         // First, we create the game to be played..
@@ -121,9 +125,6 @@ public class ArcadeMachine
      * @param levelFile			file to save the generated level in it
      */
     public static boolean generateOneLevel(String gameFile, String levelGenerator, String levelFile){
-    	VGDLFactory.GetInstance().init(); //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         System.out.println(" ** Generating a level for " + gameFile + ", using level generator " + levelGenerator + " **");
 
         // First, we create the game to be played..
@@ -178,9 +179,6 @@ public class ArcadeMachine
      */
     public static double runOneGeneratedLevel(String gameFile, boolean visuals,
             String agentName, String actionFile, String levelFile, int randomSeed, boolean isHuman){
-    	VGDLFactory.GetInstance().init(); //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         System.out.println(" ** Playing game " + gameFile + ", using generate level file " + levelFile + " **");
 
         // First, we create the game to be played..
@@ -230,9 +228,6 @@ public class ArcadeMachine
     public static double replayGame(String game_file, String level_file, boolean visuals, String actionFile)
     {
         String agentName = "controllers.replayer.Agent";
-        VGDLFactory.GetInstance().init();  //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         // First, we create the game to be played..
         Game toPlay = new VGDLParser().parseGame(game_file);
         toPlay.buildLevel(level_file);
@@ -308,9 +303,6 @@ public class ArcadeMachine
     public static void runGames(String game_file, String[] level_files, int level_times,
                                 String agentName, String[] actionFiles)
     {
-        VGDLFactory.GetInstance().init(); //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         boolean recordActions = false;
         if(actionFiles != null)
         {
@@ -322,7 +314,7 @@ public class ArcadeMachine
 
         StatSummary scores = new StatSummary();
 
-        Game toPlay = new VGDLParser().parseGame(game_file);
+        GameTemplate template = GameTemplate.load(game_file);
         int levelIdx = 0;
         for(String level_file : level_files)
         {
@@ -331,8 +323,8 @@ public class ArcadeMachine
             {
                 System.out.println(" ** Playing game " + game_file + ", level " + level_file + " ("+(i+1)+"/"+level_times+") **");
 
-                //build the level in the game.
-                toPlay.buildLevel(level_file);
+                //create the game, with the level built.
+                Game toPlay = template.newGame(level_file);
 
                 String filename = recordActions ? actionFiles[levelIdx*level_times + i] : null;
 
@@ -364,9 +356,6 @@ public class ArcadeMachine
 
                 //Finally, when the game is over, we need to tear the player down.
                 if(player != null) ArcadeMachine.tearPlayerDown(toPlay, player);
-
-                //reset the game.
-                toPlay.reset();
             }
 
             levelIdx++;
@@ -377,6 +366,107 @@ public class ArcadeMachine
         System.out.println(" *********");
     }
 
+    /**
+     * Plays a tournament: each controller plays each level with each random seed, with graphics off.
+     * Games are spread across a fixed pool of threads, and created from the GameTemplate of the game.
+     * Each thread plays its games one after another, so the tournament takes about
+     * (games / threads) times a game. Controllers must not keep the state of their game in static
+     * fields, as several instances of them play at the same time.
+     * @param game_file game description file.
+     * @param level_files array of level file names to play.
+     * @param seeds random seeds to play each level with.
+     * @param agentNames names (inc. package) of the controllers that play.
+     * @param numThreads number of threads to play the games.
+     * @return for each controller, in the order of agentNames, the summary of its scores ([0]) and
+     * victories ([1], 1 for a win and 0 otherwise).
+     */
+    public static StatSummary[][] runTournament(final String game_file, final String[] level_files, final int[] seeds,
+                                                final String[] agentNames, int numThreads)
+    {
+        final int numGames = agentNames.length * level_files.length * seeds.length;
+        final double[] scores = new double[numGames];
+        final boolean[] victories = new boolean[numGames];
+        final AtomicInteger nextGame = new AtomicInteger();
+        final GameTemplate template = GameTemplate.load(game_file);
+
+        //Each worker takes the next game to play until all of them have been played.
+        Callable<Void> worker = new Callable<Void>()
+        {
+            public Void call()
+            {
+                boolean loadImages = VGDLSprite.setLoadImagesInThread(false);
+
+                for(int g = nextGame.getAndIncrement(); g < numGames; g = nextGame.getAndIncrement())
+                {
+                    int agentIdx = g / (level_files.length * seeds.length);
+                    int levelIdx = (g / seeds.length) % level_files.length;
+                    int randomSeed = seeds[g % seeds.length];
+
+                    Game toPlay = template.newGame(level_files[levelIdx]);
+                    AbstractPlayer player = ArcadeMachine.createPlayer(agentNames[agentIdx], null,
+                            toPlay.getObservation(), randomSeed);
+
+                    if(player == null)
+                    {
+                        //Something went wrong in the constructor, controller disqualified
+                        toPlay.disqualify();
+                        scores[g] = toPlay.handleResult();
+                    }else{
+                        scores[g] = toPlay.runGame(player, randomSeed);
+                        ArcadeMachine.tearPlayerDown(toPlay, player);
+                    }
+                    victories[g] = toPlay.getWinner() == Types.WINNER.PLAYER_WINS;
+                }
+
+                VGDLSprite.setLoadImagesInThread(loadImages);
+                return null;
+            }
+        };
+
+        ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+        try{
+            ArrayList<Future<Void>> workers = new ArrayList<Future<Void>>();
+            for(int i = 0; i < numThreads; ++i)
+                workers.add(pool.submit(worker));
+            for(Future<Void> w : workers)
+                w.get();
+
+        }catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Tournament interrupted.", e);
+        }catch (ExecutionException e)
+        {
+            throw new RuntimeException("Error playing the tournament.", e.getCause());
+        }finally {
+            pool.shutdownNow();
+        }
+
+        //Aggregate the results in order, so they don't depend on which thread played each game.
+        StatSummary[][] results = new StatSummary[agentNames.length][];
+        int gamesPerAgent = level_files.length * seeds.length;
+        for(int i = 0; i < agentNames.length; ++i)
+        {
+            results[i] = new StatSummary[]{new StatSummary(agentNames[i] + " scores"),
+                                           new StatSummary(agentNames[i] + " victories")};
+            for(int g = i * gamesPerAgent; g < (i + 1) * gamesPerAgent; ++g)
+            {
+                results[i][0].add(scores[g]);
+                results[i][1].add(victories[g] ? 1 : 0);
+            }
+        }
+
+        System.out.println(" *** Results in game " + game_file + " *** ");
+        for(StatSummary[] result : results)
+        {
+            System.out.println(result[0]);
+            System.out.println(result[1]);
+        }
+        System.out.println(" *********");
+
+        return results;
+    }
+
     /**
      * Generate multiple levels for a certain game
      * @param gameFile			The game description file path
@@ -384,9 +474,6 @@ public class ArcadeMachine
      * @param levelFile			array of level files to save the generated levels
      */
     public static void generateLevels(String gameFile, String levelGenerator, String[] levelFile){
-    	VGDLFactory.GetInstance().init(); //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         // First, we create the game to be played..
         Game toPlay = new VGDLParser().parseGame(gameFile);
         GameDescription description = new GameDescription(toPlay);
@@ -437,9 +524,6 @@ public class ArcadeMachine
     public static void playGeneratedLevels(String gameFile, String[] actionFile, String[] levelFile, boolean isHuman){
     	String agentName = "controllers.human.Agent";
     	
-    	VGDLFactory.GetInstance().init(); //This always first thing to do.
-        VGDLRegistry.GetInstance().init();
-
         boolean recordActions = false;
         if(actionFile != null)
         {
@@ -855,10 +939,6 @@ public class ArcadeMachine
             //System.out.println(ss1);
             //System.out.println(ss2);
         }
-
-
-        //Reset input to delete warm-up effects.
-        Game.ki.reset();
     }
 
 
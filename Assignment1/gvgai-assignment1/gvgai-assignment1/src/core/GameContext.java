@@ -0,0 +1,82 @@
+package core;
+
+/**
+ * Everything a game needs from its definition besides its own content: the registry that maps
+ * sprite names to types, and the factory that creates sprites, effects and terminations.
+ * <p/>
+ * Each parsed game has its own context (see VGDLParser), kept by the game and its forward models.
+ * Several games, of the same or different descriptions, can then be played and simulated at the same
+ * time, in one or many threads, without re-initializing any global state.
+ * <p/>
+ * The constructors of sprites, effects and terminations take their types from
+ * VGDLRegistry.GetInstance(). The factory binds its context to the thread while it creates them,
+ * so GetInstance() gives the registry of the game being built.
+ */
+public class GameContext
+{
+    /**
+     * Context bound to each thread.
+     */
+    private static final ThreadLocal<GameContext> current = new ThreadLocal<GameContext>();
+
+    /**
+     * Registry of sprite types.
+     */
+    public final VGDLRegistry registry;
+
+    /**
+     * Factory of games, sprites, effects and terminations.
+     */
+    public final VGDLFactory factory;
+
+    /**
+     * Creates a new context, with an empty registry.
+     */
+    public GameContext()
+    {
+        registry = new VGDLRegistry();
+        registry.init();
+        factory = new VGDLFactory(this);
+        factory.init();
+    }
+
+    /**
+     * Returns the context bound to the current thread. If there is none, a new one is created and
+     * bound, so code that does not know about contexts keeps working within one thread.
+     * @return the context of the current thread.
+     */
+    public static GameContext current()
+    {
+        GameContext context = current.get();
+        if(context == null)
+        {
+            context = new GameContext();
+            current.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Binds this context to the current thread. It must be followed by a call to restore().
+     * @return the context previously bound to the current thread, maybe null.
+     */
+    public GameContext bind()
+    {
+        GameContext previous = current.get();
+        if(previous != this)
+            current.set(this);
+        return previous;
+    }
+
+    /**
+     * Restores the context bound to the current thread before a call to bind().
+     * @param previous the context returned by bind().
+     */
+    public static void restore(GameContext previous)
+    {
+        if(previous == null)
+            current.remove();
+        else
+            current.set(previous);
+    }
+}
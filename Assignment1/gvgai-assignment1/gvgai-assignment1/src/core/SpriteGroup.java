@@ -1,27 +1,57 @@
 package core;
 
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.List;
 
 /**
  * Created by Diego on 18/03/14.
  * This class encapsulates a SpriteGroup: a collection of VGDLSprite objects
  * identified with an unique id. All sprites in the SpriteGroup are of the same
- * type.
+ * type. Sprites are kept in a dense array, in insertion order (removing a sprite
+ * keeps the order of the rest, as sprites are updated in this order and stochastic
+ * games consume their random numbers in it), so iterating them is deterministic and
+ * allocation free. This class is not thread safe.
  */
 public class SpriteGroup
 {
+    /**
+     * Value of an empty slot in the table of sprite ids.
+     */
+    private static final int NO_ID = -1;
+
     /**
      * Type of sprite this class holds a collection of.
      */
     private int itype;
 
     /**
-     * Collection of sprites. They are maintained in a ConcurrentHashMap, where the key is the
-     * unique identifier for the given sprite (in the whole game).
+     * Collection of sprites, in positions [0, numSprites).
+     */
+    private VGDLSprite[] sprites;
+
+    /**
+     * Number of sprites in the collection.
+     */
+    private int numSprites;
+
+    /**
+     * Open addressing hash table (linear probing) from the unique identifier of each sprite
+     * (in the whole game) to its index in 'sprites'. Its length is a power of two.
      */
-    private ConcurrentHashMap<Integer, VGDLSprite> sprites;
+    private int[] ids;
+
+    /**
+     * Index in 'sprites' of the sprite whose id is in the same position of 'ids'.
+     */
+    private int[] indices;
+
+    /**
+     * List view of the sprites, created on demand.
+     */
+    private List<VGDLSprite> spriteList;
 
     /**
      * Creates a new SpriteGroup, specifying the type of sprites this will hold.
@@ -30,17 +60,36 @@ public class SpriteGroup
     public SpriteGroup(int itype)
     {
         this.itype = itype;
-        sprites = new ConcurrentHashMap<Integer, VGDLSprite>(100);
+        sprites = new VGDLSprite[16];
+        ids = new int[32];
+        indices = new int[32];
+        Arrays.fill(ids, NO_ID);
     }
 
     /**
-     * Adds an sprite to the collection.
+     * Adds an sprite to the collection. If there is already a sprite with the
+     * same ID, it is replaced (keeping its position in the collection).
      * @param spriteId Unique ID of the sprite to add
      * @param sprite Sprite to add.
      */
     public void addSprite(int spriteId, VGDLSprite sprite)
     {
-        sprites.put(spriteId, sprite);
+        int slot = findSlot(spriteId);
+        if(ids[slot] == spriteId)
+        {
+            sprites[indices[slot]] = sprite;
+            return;
+        }
+
+        if(numSprites == sprites.length)
+            sprites = Arrays.copyOf(sprites, numSprites * 2);
+        sprites[numSprites] = sprite;
+        ids[slot] = spriteId;
+        indices[slot] = numSprites;
+        numSprites++;
+
+        if(numSprites * 2 > ids.length)
+            rehash(ids.length * 2);
     }
 
 
@@ -51,7 +100,7 @@ public class SpriteGroup
     public void addAllSprites(Collection<VGDLSprite> spritesToAdd)
     {
         for(VGDLSprite sp : spritesToAdd)
-            sprites.put(sp.spriteID, sp);
+            addSprite(sp.spriteID, sp);
     }
 
 
@@ -63,30 +112,46 @@ public class SpriteGroup
     public void copyAllSprites(Collection<VGDLSprite> spritesToCopy)
     {
         for(VGDLSprite sp : spritesToCopy)
-            sprites.put(sp.spriteID, sp.copy());
+            addSprite(sp.spriteID, sp.copy());
     }
 
-     /**
-     * Gets the collection of sprites, as a ConcurrentHashMap [KEY => VALUE].
-     * @return the TreeMap with the Sprites.
+    /**
+     * Creates a new SpriteGroup of the same type that holds the same sprite
+     * objects as this one, in the same order. Sprites are NOT copied.
+     * @return the new sprite group.
      */
-    public ConcurrentHashMap<Integer, VGDLSprite> getSprites()
+    public SpriteGroup shallowCopy()
     {
-        return sprites;
+        SpriteGroup copy = new SpriteGroup(itype);
+        copy.sprites = sprites.clone();
+        copy.numSprites = numSprites;
+        copy.ids = ids.clone();
+        copy.indices = indices.clone();
+        return copy;
     }
 
-    /**
-     * Gets the set of KEYs in an array.  It will return null if
-     * the collection of sprites is empty.
-     * @return the list of the sprite keys in this collection in an array.
+     /**
+     * Gets the collection of sprites, as a read-only list in iteration order. The list
+     * reflects later changes in this collection.
+     * @return the list with the Sprites.
      */
-    public Integer[] getKeys()
+    public List<VGDLSprite> getSprites()
     {
-        int nSprites = sprites.size();
-        if(nSprites == 0)
-            return null;
-        Integer[] keys = new Integer[nSprites];
-        return sprites.keySet().toArray(keys);
+        if(spriteList == null)
+        {
+            spriteList = new AbstractList<VGDLSprite>() {
+                public VGDLSprite get(int index) {
+                    if(index >= numSprites)
+                        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + numSprites);
+                    return sprites[index];
+                }
+
+                public int size() {
+                    return numSprites;
+                }
+            };
+        }
+        return spriteList;
     }
 
     /**
@@ -98,16 +163,28 @@ public class SpriteGroup
     {
         if(numSprites() == 0)
             return null;
-        return sprites.values().iterator();
+        return getSprites().iterator();
     }
 
     /**
-     * Removes an sprite indicated with its ID.
+     * Removes an sprite indicated with its ID. The sprites after it move one
+     * position back, so the order of the rest does not change.
      * @param spriteId the id of the sprite to remove.
      */
     public void removeSprite(int spriteId)
     {
-        sprites.remove(spriteId);
+        int slot = findSlot(spriteId);
+        if(ids[slot] != spriteId)
+            return;
+
+        int index = indices[slot];
+        removeSlot(slot);
+
+        int last = --numSprites;
+        System.arraycopy(sprites, index + 1, sprites, index, last - index);
+        sprites[last] = null;
+        for(int i = index; i < last; ++i)
+            indices[findSlot(sprites[i].spriteID)] = i;
     }
 
     /**
@@ -127,7 +204,20 @@ public class SpriteGroup
      */
     public VGDLSprite getSprite(int spriteId)
     {
-        return sprites.get(spriteId);
+        int slot = findSlot(spriteId);
+        if(ids[slot] != spriteId)
+            return null;
+        return sprites[indices[slot]];
+    }
+
+    /**
+     * Retrieves the sprite at a given position of the collection.
+     * @param index position of the sprite, between 0 and numSprites()-1.
+     * @return the sprite in that position.
+     */
+    public VGDLSprite getSpriteAt(int index)
+    {
+        return sprites[index];
     }
 
     /**
@@ -135,7 +225,9 @@ public class SpriteGroup
      */
     public void clear()
     {
-        sprites.clear();
+        Arrays.fill(sprites, 0, numSprites, null);
+        Arrays.fill(ids, NO_ID);
+        numSprites = 0;
     }
 
     /**
@@ -144,7 +236,7 @@ public class SpriteGroup
      */
     public int numSprites()
     {
-        return sprites.size();
+        return numSprites;
     }
 
     /**
@@ -153,8 +245,76 @@ public class SpriteGroup
      */
     public VGDLSprite getFirstSprite()
     {
-        if(numSprites() == 0)
+        if(numSprites == 0)
             return null;
-        return (VGDLSprite) sprites.values().toArray()[0]; //  firstEntry().getValue();
+        return sprites[0];
+    }
+
+    /**
+     * Finds the slot of a sprite id in the hash table: the one that holds it,
+     * or the empty slot where it would be inserted.
+     * @param spriteId id to look for.
+     * @return the slot for the id.
+     */
+    private int findSlot(int spriteId)
+    {
+        int mask = ids.length - 1;
+        int slot = home(spriteId, mask);
+        while(ids[slot] != NO_ID && ids[slot] != spriteId)
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    /**
+     * Gets the preferred slot of a sprite id in the hash table.
+     * @param spriteId id of the sprite.
+     * @param mask length of the table minus one.
+     * @return the slot where the search for this id starts.
+     */
+    private static int home(int spriteId, int mask)
+    {
+        int h = spriteId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /**
+     * Empties a slot of the hash table, moving back the entries of its probing
+     * sequence so no tombstones are needed.
+     * @param slot slot to empty.
+     */
+    private void removeSlot(int slot)
+    {
+        int mask = ids.length - 1;
+        int next = (slot + 1) & mask;
+        while(ids[next] != NO_ID)
+        {
+            int home = home(ids[next], mask);
+            //Move the entry if its home is not cyclically in (slot, next].
+            if(((next - home) & mask) >= ((next - slot) & mask))
+            {
+                ids[slot] = ids[next];
+                indices[slot] = indices[next];
+                slot = next;
+            }
+            next = (next + 1) & mask;
+        }
+        ids[slot] = NO_ID;
+    }
+
+    /**
+     * Rebuilds the hash table with a new capacity.
+     * @param capacity new capacity, a power of two.
+     */
+    private void rehash(int capacity)
+    {
+        ids = new int[capacity];
+        indices = new int[capacity];
+        Arrays.fill(ids, NO_ID);
+        for(int i = 0; i < numSprites; ++i)
+        {
+            int slot = findSlot(sprites[i].spriteID);
+            ids[slot] = sprites[i].spriteID;
+            indices[slot] = i;
+        }
     }
 }
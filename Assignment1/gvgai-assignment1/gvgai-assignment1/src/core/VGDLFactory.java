@@ -1,9 +1,14 @@
 package core;
 
 import java.awt.Dimension;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import core.content.Content;
 import core.content.GameContent;
@@ -130,34 +135,59 @@ public class VGDLFactory
 
 
     /**
-     * Singleton reference to game/sprite factory
+     * Context this factory belongs to. It is bound to the thread while objects are created.
      */
-    private static VGDLFactory factory;
+    private final GameContext context;
+
+    /**
+     * Constructors already resolved, by class. A context can be shared by several threads.
+     */
+    private final ConcurrentHashMap<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<Class<?>, Constructor<?>>();
+
+    /**
+     * Public fields of the classes whose parameters have been parsed, by class and name.
+     */
+    private final ConcurrentHashMap<Class<?>, HashMap<String, Field>> fieldMaps = new ConcurrentHashMap<Class<?>, HashMap<String, Field>>();
+
+    /**
+     * Parameters of contents bound to the fields of a class, by class and content.
+     */
+    private final ConcurrentHashMap<Class<?>, ConcurrentHashMap<Content, ParameterBinding>> bindings =
+            new ConcurrentHashMap<Class<?>, ConcurrentHashMap<Content, ParameterBinding>>();
+
+    /**
+     * Type of the setters of a binding: (object, value) -> void.
+     */
+    private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
 
     /**
      * Cache for registered games.
      */
-    public static HashMap<String, Class> registeredGames;
+    public HashMap<String, Class> registeredGames;
 
     /**
      * Cache for registered sprites.
      */
-    public static HashMap<String, Class> registeredSprites;
+    public HashMap<String, Class> registeredSprites;
 
     /**
      * Cache for registered effects.
      */
-    public static HashMap<String, Class> registeredEffects;
+    public HashMap<String, Class> registeredEffects;
 
     /**
      * Cache for registered effects.
      */
-    public static HashMap<String, Class> registeredTerminations;
+    public HashMap<String, Class> registeredTerminations;
 
     /**
-     * Default private constructor of this singleton.
+     * Constructor, for GameContext.
+     * @param context context this factory belongs to.
      */
-    private VGDLFactory(){}
+    VGDLFactory(GameContext context)
+    {
+        this.context = context;
+    }
 
     /**
      * Initializes the maps for caching classes.
@@ -188,14 +218,13 @@ public class VGDLFactory
     }
 
     /**
-     * Returns the unique instance of this class.
+     * Returns the factory of the context bound to the current thread. Games keep their own
+     * context, so code that has the game should use game.getContext().factory instead.
      * @return the factory that creates the game and the sprite objects.
      */
     public static VGDLFactory GetInstance()
     {
-        if(factory == null)
-            factory = new VGDLFactory();
-        return factory;
+        return GameContext.current().factory;
     }
 
     /**
@@ -205,9 +234,10 @@ public class VGDLFactory
      */
     public Game createGame(GameContent content)
     {
+        GameContext previous = context.bind();
         try{
             Class gameClass = registeredGames.get(content.referenceClass);
-            Constructor gameConstructor = gameClass.getConstructor(new Class[] {GameContent.class});
+            Constructor<?> gameConstructor = getConstructor(gameClass, GameContent.class);
             return (Game) gameConstructor.newInstance(new Object[]{content});
 
         }catch (NoSuchMethodException e)
@@ -218,6 +248,8 @@ public class VGDLFactory
         {
             e.printStackTrace();
             System.out.println("Error creating game of class " + content.referenceClass);
+        }finally {
+            GameContext.restore(previous);
         }
 
         return null;
@@ -232,10 +264,10 @@ public class VGDLFactory
      */
     public VGDLSprite createSprite(SpriteContent content, Vector2d position, Dimension dim)
     {
+        GameContext previous = context.bind();
         try{
             Class spriteClass = registeredSprites.get(content.referenceClass);
-            Constructor spriteConstructor = spriteClass.getConstructor
-                    (new Class[] {Vector2d.class, Dimension.class, SpriteContent.class});
+            Constructor<?> spriteConstructor = getConstructor(spriteClass, Vector2d.class, Dimension.class, SpriteContent.class);
             return (VGDLSprite) spriteConstructor.newInstance(new Object[]{position, dim, content});
 
         }catch (NoSuchMethodException e)
@@ -246,6 +278,8 @@ public class VGDLFactory
         {
             e.printStackTrace();
             System.out.println("Error creating sprite " + content.identifier + " of class " + content.referenceClass);
+        }finally {
+            GameContext.restore(previous);
         }
 
         return null;
@@ -259,10 +293,10 @@ public class VGDLFactory
      */
     public Effect createEffect(InteractionContent content)
     {
+        GameContext previous = context.bind();
         try{
             Class effectClass = registeredEffects.get(content.function);
-            Constructor effectConstructor = effectClass.getConstructor
-                    (new Class[] {InteractionContent.class});
+            Constructor<?> effectConstructor = getConstructor(effectClass, InteractionContent.class);
             Effect ef = (Effect) effectConstructor.newInstance(new Object[]{content});
 
             if( content.object1.equalsIgnoreCase("TIME") ||
@@ -281,6 +315,8 @@ public class VGDLFactory
             e.printStackTrace();
             System.out.println("Error creating effect " + content.function + " between "
                     + content.object1 + " and " + content.object2);
+        }finally {
+            GameContext.restore(previous);
         }
 
         return null;
@@ -294,10 +330,10 @@ public class VGDLFactory
      */
     public Termination createTermination(TerminationContent content)
     {
+        GameContext previous = context.bind();
         try{
             Class terminationClass = registeredTerminations.get(content.identifier);
-            Constructor terminationConstructor = terminationClass.getConstructor
-                    (new Class[] {TerminationContent.class});
+            Constructor<?> terminationConstructor = getConstructor(terminationClass, TerminationContent.class);
             Termination ter = (Termination) terminationConstructor.newInstance(new Object[]{content});
             return ter;
 
@@ -309,6 +345,8 @@ public class VGDLFactory
         {
             e.printStackTrace();
             System.out.println("Error creating termination condition " + content.identifier);
+        }finally {
+            GameContext.restore(previous);
         }
 
         return null;
@@ -316,22 +354,56 @@ public class VGDLFactory
 
     /**
      * Parses the parameters from content, assigns them to variables in obj.
+     * The parameters of a content are converted and bound to the fields of the class of obj only the
+     * first time. Objects created later from the same content (i.e. sprites spawned during the game)
+     * just get the values already converted.
      * @param content contains the parameters to read.
      * @param obj object with the variables to assign.
      */
     public void parseParameters(Content content, Object obj)
     {
-        //Get all fields from the class and store it as key->field
-        Field[] fields = obj.getClass().getFields();
-        HashMap<String, Field> fieldMap = new HashMap<String, Field>();
-        for (Field field : fields)
+        getBinding(content, obj.getClass()).apply(obj);
+    }
+
+    /**
+     * Gets the binding of the parameters of a content to the fields of a class, creating it the first
+     * time. The binding is created again if the parameters of the content have been replaced since.
+     * @param content contains the parameters to read.
+     * @param objClass class of the objects to assign the parameters to.
+     * @return the binding.
+     */
+    private ParameterBinding getBinding(Content content, Class<?> objClass)
+    {
+        ConcurrentHashMap<Content, ParameterBinding> classBindings = bindings.get(objClass);
+        if(classBindings == null)
         {
-            String strField = field.toString();
-            int lastDot = strField.lastIndexOf(".");
-            String fieldName = strField.substring(lastDot + 1).trim();
+            classBindings = new ConcurrentHashMap<Content, ParameterBinding>();
+            ConcurrentHashMap<Content, ParameterBinding> other = bindings.putIfAbsent(objClass, classBindings);
+            if(other != null)
+                classBindings = other;
+        }
 
-            fieldMap.put(fieldName, field);
+        ParameterBinding binding = classBindings.get(content);
+        if(binding == null || !binding.isFor(content.parameters))
+        {
+            binding = bind(content, objClass);
+            classBindings.put(content, binding);
         }
+        return binding;
+    }
+
+    /**
+     * Binds the parameters of a content to the fields of a class: each value is converted to the
+     * type of its field, and a setter is created for the field.
+     * @param content contains the parameters to read.
+     * @param objClass class of the objects to assign the parameters to.
+     * @return the binding.
+     */
+    private ParameterBinding bind(Content content, Class<?> objClass)
+    {
+        HashMap<String, Field> fieldMap = getFieldMap(objClass);
+        ArrayList<MethodHandle> setters = new ArrayList<MethodHandle>();
+        ArrayList<Object> values = new ArrayList<Object>();
         Object objVal = null;
         Field cfield = null;
         //Check all parameters from content
@@ -364,10 +436,15 @@ public class VGDLFactory
                         }
                     }
                 }
+
+                Field field = fieldMap.get(parameter);
                 try {
-                    fieldMap.get(parameter).set(obj, objVal);
+                    objVal = convert(objVal, field.getType());
+                    MethodHandle setter = MethodHandles.publicLookup().unreflectSetter(field);
+                    setters.add(setter.asType(SETTER_TYPE));
+                    values.add(objVal);
                 } catch (IllegalAccessException e) {
-                    e.printStackTrace();  //To change body of catch statement use File | Settings | File Templates.
+                    e.printStackTrace();
                 } catch (Exception e)
                 {
                     e.printStackTrace();
@@ -392,6 +469,85 @@ public class VGDLFactory
             }
         }
 
+        return new ParameterBinding(content.parameters, content.parameters.size(),
+                setters.toArray(new MethodHandle[setters.size()]), values.toArray());
+    }
+
+    /**
+     * Converts a parameter value to the type of the field it is assigned to, as Field.set() would do.
+     * @param value value of the parameter.
+     * @param type type of the field.
+     * @return the value, converted if needed.
+     * @throws IllegalArgumentException if the value can't be assigned to the field.
+     */
+    private static Object convert(Object value, Class<?> type)
+    {
+        if(!type.isPrimitive())
+        {
+            if(value != null && !type.isInstance(value))
+                throw new IllegalArgumentException("Can not set " + type.getName() + " field to " + value);
+            return value;
+        }
+
+        //Widening conversions of numbers.
+        if(value instanceof Integer)
+        {
+            int v = (Integer) value;
+            if(type == int.class)    return value;
+            if(type == long.class)   return (long) v;
+            if(type == float.class)  return (float) v;
+            if(type == double.class) return (double) v;
+        }
+        else if(value instanceof Double && type == double.class)
+            return value;
+        else if(value instanceof Boolean && type == boolean.class)
+            return value;
+        throw new IllegalArgumentException("Can not set " + type.getName() + " field to " + value);
+    }
+
+    /**
+     * Gets the constructor of a class with the given parameters, resolving it the first time.
+     * @param objClass class to create objects of.
+     * @param parameterTypes types of the parameters of the constructor.
+     * @return the constructor.
+     * @throws NoSuchMethodException if the class has no such constructor.
+     */
+    private Constructor<?> getConstructor(Class<?> objClass, Class<?>... parameterTypes) throws NoSuchMethodException
+    {
+        //All factory classes have a single constructor for the factory, so the class is the key.
+        Constructor<?> constructor = constructors.get(objClass);
+        if(constructor == null)
+        {
+            constructor = objClass.getConstructor(parameterTypes);
+            constructors.put(objClass, constructor);
+        }
+        return constructor;
+    }
+
+    /**
+     * Gets all public fields of a class, by name, building the map the first time.
+     * @param objClass class of the objects whose parameters are parsed.
+     * @return the map of fields. It must not be modified.
+     */
+    private HashMap<String, Field> getFieldMap(Class<?> objClass)
+    {
+        HashMap<String, Field> fieldMap = fieldMaps.get(objClass);
+        if(fieldMap == null)
+        {
+            //Get all fields from the class and store it as key->field
+            Field[] fields = objClass.getFields();
+            fieldMap = new HashMap<String, Field>();
+            for (Field field : fields)
+            {
+                String strField = field.toString();
+                int lastDot = strField.lastIndexOf(".");
+                String fieldName = strField.substring(lastDot + 1).trim();
+
+                fieldMap.put(fieldName, field);
+            }
+            fieldMaps.put(objClass, fieldMap);
+        }
+        return fieldMap;
     }
 
     /**
@@ -422,4 +578,59 @@ public class VGDLFactory
         return -1;
     }
 
+
+    /**
+     * Parameters of a content, already converted and bound to the fields of a class.
+     */
+    private static final class ParameterBinding
+    {
+        /**
+         * Parameters this binding was created from, and their number when it was.
+         */
+        private final HashMap<String, String> parameters;
+        private final int numParameters;
+
+        /**
+         * Setters of the fields, and the values to assign with them.
+         */
+        private final MethodHandle[] setters;
+        private final Object[] values;
+
+        private ParameterBinding(HashMap<String, String> parameters, int numParameters,
+                                 MethodHandle[] setters, Object[] values)
+        {
+            this.parameters = parameters;
+            this.numParameters = numParameters;
+            this.setters = setters;
+            this.values = values;
+        }
+
+        /**
+         * Checks if this binding was created from some parameters, as they are now.
+         * @param parameters parameters of a content.
+         * @return true if the binding can be applied for them.
+         */
+        private boolean isFor(HashMap<String, String> parameters)
+        {
+            return this.parameters == parameters && numParameters == parameters.size();
+        }
+
+        /**
+         * Assigns the parameters to the fields of an object.
+         * @param obj object with the variables to assign.
+         */
+        private void apply(Object obj)
+        {
+            for(int i = 0; i < setters.length; ++i)
+            {
+                try {
+                    setters[i].invokeExact(obj, values[i]);
+                } catch (Throwable e)
+                {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
 }
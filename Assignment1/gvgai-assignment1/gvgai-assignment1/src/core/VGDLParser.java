@@ -65,10 +65,25 @@ public class VGDLParser
     private static boolean VERBOSE_PARSER = false;
 
     /**
-     * Default constructor.
+     * Context of the game being parsed, with its registry and factory.
+     */
+    public GameContext context;
+
+    /**
+     * Default constructor. Each game parsed gets a new context.
      */
     public VGDLParser()
     {
+        this(new GameContext());
+    }
+
+    /**
+     * Constructor that parses the game in the context given.
+     * @param context context of the game to parse.
+     */
+    public VGDLParser(GameContext context)
+    {
+        this.context = context;
         currentSet = Types.VGDL_GAME_DEF;
         spriteOrderTmp = new ArrayList<Integer>();
         singletonTmp = new ArrayList<Integer>();
@@ -85,31 +100,44 @@ public class VGDLParser
         String[] desc_lines = new IO().readFile(gamedesc_file);
         if(desc_lines != null)
         {
-            Node rootNode = indentTreeParser(desc_lines);
+            //Contents assign their types from the registry while they are parsed.
+            GameContext previous = context.bind();
+            try{
+                parseGame(indentTreeParser(desc_lines));
+            }finally {
+                GameContext.restore(previous);
+            }
+        }
 
-            //Parse here game and arguments of the first line
-            game = VGDLFactory.GetInstance().createGame((GameContent) rootNode.content);
+        return game;
+    }
 
-            //Parse here blocks of VGDL.
-            for(Node n : rootNode.children)
+    /**
+     * Parses the game from the tree of its description.
+     * @param rootNode root of the game tree.
+     */
+    private void parseGame(Node rootNode)
+    {
+        //Parse here game and arguments of the first line
+        game = context.factory.createGame((GameContent) rootNode.content);
+
+        //Parse here blocks of VGDL.
+        for(Node n : rootNode.children)
+        {
+            if(n.content.identifier.equals("SpriteSet"))
             {
-                if(n.content.identifier.equals("SpriteSet"))
-                {
-                    parseSpriteSet(n.children);
-                }else if(n.content.identifier.equals("InteractionSet"))
-                {
-                    parseInteractionSet(n.children);
-                }else if(n.content.identifier.equals("LevelMapping"))
-                {
-                    parseLevelMapping(n.children);
-                }else if(n.content.identifier.equals("TerminationSet"))
-                {
-                    parseTerminationSet(n.children);
-                }
+                parseSpriteSet(n.children);
+            }else if(n.content.identifier.equals("InteractionSet"))
+            {
+                parseInteractionSet(n.children);
+            }else if(n.content.identifier.equals("LevelMapping"))
+            {
+                parseLevelMapping(n.children);
+            }else if(n.content.identifier.equals("TerminationSet"))
+            {
+                parseTerminationSet(n.children);
             }
         }
-
-        return game;
     }
     
     /**
@@ -173,8 +201,8 @@ public class VGDLParser
     private void parseSpriteSet(ArrayList<Node> elements)
     {
         //We need these 2 here:
-        spriteOrderTmp.add(VGDLRegistry.GetInstance().getRegisteredSpriteValue("wall"));
-        spriteOrderTmp.add(VGDLRegistry.GetInstance().getRegisteredSpriteValue("avatar"));
+        spriteOrderTmp.add(context.registry.getRegisteredSpriteValue("wall"));
+        spriteOrderTmp.add(context.registry.getRegisteredSpriteValue("avatar"));
 
         _parseSprites(elements, null, new HashMap<String, String>(), new ArrayList<String>());
 
@@ -206,7 +234,7 @@ public class VGDLParser
             types.add(identifier);
 
             //Register this entry.
-            Integer intId = VGDLRegistry.GetInstance().registerSprite(identifier);
+            Integer intId = context.registry.registerSprite(identifier);
             constructors.put(intId, sc); //Ad the constructor for these objects.
 
             //Assign types and subtypes.
@@ -292,15 +320,15 @@ public class VGDLParser
             InteractionContent ic = (InteractionContent)n.content;
             if(ic.is_definition) // === contains ">"
             {
-                Effect ef = VGDLFactory.GetInstance().createEffect(ic);
+                Effect ef = context.factory.createEffect(ic);
 
                 //Get the identifiers of the first sprite taking part in the effect.
-                int obj1 = VGDLRegistry.GetInstance().getRegisteredSpriteValue(ic.object1);
+                int obj1 = context.registry.getRegisteredSpriteValue(ic.object1);
 
                 //The second identifier comes from a list of sprites. We go one by one.
                 for(String obj2Str : ic.object2)
                 {
-                    int obj2 = VGDLRegistry.GetInstance().getRegisteredSpriteValue(obj2Str);
+                    int obj2 = context.registry.getRegisteredSpriteValue(obj2Str);
 
                     if(obj1 != -1 && obj2 != -1)
                     {
@@ -377,7 +405,7 @@ public class VGDLParser
         for(Node n : elements)
         {
             TerminationContent tc = (TerminationContent)n.content;
-            Termination ter = VGDLFactory.GetInstance().createTermination(tc);
+            Termination ter = context.factory.createTermination(tc);
             game.getTerminations().add(ter);
         }
 
@@ -13,11 +13,6 @@ import java.util.TreeMap;
  */
 public class VGDLRegistry
 {
-    /**
-     * Singleton instance of this class.
-     */
-    private static VGDLRegistry registry;
-
     /**
      * Maps strings to int. Strings are VGDL identifiers for SPRITE TYPES,
      * while integers are their unique int identifier counterparts.
@@ -25,9 +20,9 @@ public class VGDLRegistry
     private TreeMap<String, Integer> sprite_mapping;
 
     /**
-     * Private constructor.
+     * Constructor, for GameContext.
      */
-    private VGDLRegistry(){}
+    VGDLRegistry(){}
 
     /**
      * Initializes the registry of sprites for games.
@@ -38,17 +33,13 @@ public class VGDLRegistry
     }
 
     /**
-     * Returns the unique instance of this class.
-     * @return the unique instance of this class.
+     * Returns the registry of the context bound to the current thread. Games keep their own
+     * context, so code that has the game should use game.getContext().registry instead.
+     * @return the registry of the current context.
      */
     public static VGDLRegistry GetInstance()
     {
-        if(registry == null)
-        {
-            registry = new VGDLRegistry();
-            registry.init();
-        }
-        return registry;
+        return GameContext.current().registry;
     }
 
     /**
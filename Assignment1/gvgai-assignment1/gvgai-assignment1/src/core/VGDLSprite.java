@@ -199,16 +199,6 @@ public abstract class VGDLSprite {
      */
     public boolean is_from_avatar;
 
-    /**
-     * Bucket
-     */
-    public int bucket;
-
-    /**
-     * Bucket remainder.
-     */
-    public boolean bucketSharp;
-
     /**
      * Indicates if the sprite is able to rotate in place.
      */
@@ -241,6 +231,25 @@ public abstract class VGDLSprite {
      * If not set specifically in VGDL, the default value is set to a very high value (1000)
      */
     public int limitHealthPoints;
+
+    /**
+     * Generation of the forward model that owns this sprite, and is therefore allowed to
+     * modify it in place. Copies of a forward model share the sprites they did not modify,
+     * so any other model must clone the sprite before writing it. Not copied by copyTo().
+     */
+    public long generation;
+
+    /**
+     * Contribution of this sprite to the hash of the game state it belongs to, as
+     * computed by hashKey() the last time the game checked this sprite.
+     */
+    public long hashKey;
+
+    /**
+     * Indicates if this sprite has been killed in the current step. Killed sprites are
+     * removed from the game at the end of the step, in Game.clearAll(). Not copied by copyTo().
+     */
+    public boolean is_killed;
     
     /**
      * If true, images are loaded (for instance for visualizing a game)
@@ -248,6 +257,37 @@ public abstract class VGDLSprite {
      */
     public static boolean loadImages = true;
 
+    /**
+     * Threads in which images are not loaded, no matter the value of loadImages. Threads
+     * that simulate states or run games without graphics turn image loading off only for
+     * themselves, not for other games that may be played at the same time.
+     */
+    private static final ThreadLocal<Boolean> noImagesInThread = new ThreadLocal<Boolean>();
+
+    /**
+     * Turns the loading of images on or off for the current thread.
+     * @param load false to not load images in this thread, true to follow loadImages.
+     * @return the previous setting for this thread, to restore it afterwards.
+     */
+    public static boolean setLoadImagesInThread(boolean load)
+    {
+        boolean previous = noImagesInThread.get() == null;
+        if(load)
+            noImagesInThread.remove();
+        else
+            noImagesInThread.set(Boolean.TRUE);
+        return previous;
+    }
+
+    /**
+     * Checks if images are loaded in the current thread.
+     * @return true if loadImages is set and the current thread has not turned images off.
+     */
+    public static boolean loadsImages()
+    {
+        return loadImages && noImagesInThread.get() == null;
+    }
+
     /**
      * Initializes the sprite, giving its position and dimensions.
      * @param position position of the sprite
@@ -287,16 +327,20 @@ public abstract class VGDLSprite {
 
     public void setRect(Vector2d position, Dimension size)
     {
-        Rectangle r = new Rectangle((int) position.x, (int) position.y, size.width, size.height);
-        setRect(r);
+        if(rect == null)
+            rect = new Rectangle((int) position.x, (int) position.y, size.width, size.height);
+        else
+            rect.setBounds((int) position.x, (int) position.y, size.width, size.height);
     }
 
 
     public void setRect(Rectangle rectangle)
     {
-        rect = new Rectangle(rectangle);
-        bucket = rect.y / rect.height;
-        bucketSharp = (rect.y % rect.height) == 0;
+        //Rectangles are never shared between sprites, so they can be modified in place.
+        if(rect == null)
+            rect = new Rectangle(rectangle);
+        else
+            rect.setBounds(rectangle);
     }
 
     /**
@@ -370,10 +414,44 @@ public abstract class VGDLSprite {
      */
     public void preMovement()
     {
-        lastrect = new Rectangle(rect);
+        lastrect.setBounds(rect);
         lastmove += 1;
     }
 
+    /**
+     * Indicates if the next update of this sprite (preMovement() plus update()) would leave it
+     * unchanged, apart from the lastmove counter, which has no effect when cooldown is 0.
+     * Sprites that define their own update() logic must override this to return false.
+     * @return true if updating this sprite can be skipped.
+     */
+    public boolean isInert()
+    {
+        return is_static && cooldown == 0 && rect.equals(lastrect);
+    }
+
+    /**
+     * Computes the contribution of this sprite to the hash of the game state. It depends on
+     * the type, rectangle, orientation, speed and resources of the sprite (but not on its ID),
+     * so sprites that are equivalent in position give the same key.
+     * @return the hash key of this sprite.
+     */
+    public long hashKey()
+    {
+        long h = Utils.mix64(getType() + 1);
+        h = Utils.mix64(h ^ (((long)rect.x << 32) | (rect.y & 0xFFFFFFFFL)));
+        h = Utils.mix64(h ^ (((long)rect.width << 32) | (rect.height & 0xFFFFFFFFL)));
+        //Adding 0.0 turns -0.0 into 0.0, as both are equal for Vector2d.equals().
+        h = Utils.mix64(h ^ Double.doubleToLongBits(orientation.x + 0.0));
+        h = Utils.mix64(h ^ Double.doubleToLongBits(orientation.y + 0.0));
+        h = Utils.mix64(h ^ Double.doubleToLongBits(speed + 0.0));
+        if(resources.size() > 0)
+        {
+            for(Map.Entry<Integer, Integer> entry : resources.entrySet())
+                h = Utils.mix64(h ^ (((long)entry.getKey() << 32) | (entry.getValue() & 0xFFFFFFFFL)));
+        }
+        return h;
+    }
+
     /**
      * Updates this sprite applying the passive movement.
      */
@@ -414,8 +492,6 @@ public abstract class VGDLSprite {
 
         if (cooldown <= lastmove && (Math.abs(orientation.x) + Math.abs(orientation.y) != 0)) {
             rect.translate((int) orientation.x * speed, (int) orientation.y * speed);
-            bucket = rect.y / rect.height;
-            bucketSharp = (rect.y % rect.height) == 0;
             lastmove = 0;
             return true;
         }
@@ -578,11 +654,6 @@ public abstract class VGDLSprite {
 
         gphx.drawImage(image, r.x, r.y, (int) (w*scale), (int) (h*scale), null);
 
-        //uncomment this to see lots of numbers around
-        //gphx.setColor(Color.BLACK);
-        //if(bucketSharp)   gphx.drawString("["+bucket+"]",r.x, r.y);
-        //else              gphx.drawString("{"+bucket+"}",r.x, r.y);
-
 
     }
 
@@ -668,7 +739,7 @@ public abstract class VGDLSprite {
      */
     public void postProcess()
     {
-    	if(loadImages)
+    	if(loadsImages())
     	{
     		loadImage(img);
     	}
@@ -757,8 +828,12 @@ public abstract class VGDLSprite {
         toSprite.shrinkfactor = this.shrinkfactor;
         toSprite.is_oriented = this.is_oriented;
         toSprite.orientation = this.orientation.copy();
-        toSprite.rect = new Rectangle(this.rect.x, this.rect.y, this.rect.width, this.rect.height);
-        toSprite.lastrect =  new Rectangle(this.lastrect.x, this.lastrect.y, this.lastrect.width, this.lastrect.height);
+        //A sprite reused from a pool keeps its own rectangles and resources.
+        toSprite.setRect(this.rect);
+        if(toSprite.lastrect == null)
+            toSprite.lastrect = new Rectangle(this.lastrect);
+        else
+            toSprite.lastrect.setBounds(this.lastrect);
         toSprite.lastmove = this.lastmove;
         toSprite.strength = this.strength;
         toSprite.singleton = this.singleton;
@@ -770,9 +845,8 @@ public abstract class VGDLSprite {
         toSprite.is_npc = this.is_npc;
         toSprite.image = this.image;
         toSprite.spriteID = this.spriteID;
+        toSprite.hashKey = this.hashKey;
         toSprite.is_from_avatar = this.is_from_avatar;
-        toSprite.bucket = this.bucket;
-        toSprite.bucketSharp = this.bucketSharp;
         toSprite.invisible = this.invisible;
         toSprite.rotateInPlace = this.rotateInPlace;
         toSprite.isFirstTick = this.isFirstTick;
@@ -781,11 +855,13 @@ public abstract class VGDLSprite {
         toSprite.maxHealthPoints = this.maxHealthPoints;
         toSprite.limitHealthPoints = this.limitHealthPoints;
 
-        toSprite.itypes = new ArrayList<Integer>();
-        for(Integer it : this.itypes)
-            toSprite.itypes.add(it);
+        //The types of a sprite never change, so the list can be shared.
+        toSprite.itypes = this.itypes;
 
-        toSprite.resources = new TreeMap<Integer, Integer>();
+        if(toSprite.resources == null)
+            toSprite.resources = new TreeMap<Integer, Integer>();
+        else
+            toSprite.resources.clear();
         Set<Map.Entry<Integer, Integer>> entries = this.resources.entrySet();
         for(Map.Entry<Integer, Integer> entry : entries)
         {
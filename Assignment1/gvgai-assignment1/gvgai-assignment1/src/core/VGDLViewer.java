@@ -4,8 +4,6 @@ import java.awt.Dimension;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.RenderingHints;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JComponent;
 
@@ -33,9 +31,11 @@ public class VGDLViewer extends JComponent
     private Dimension size;
 
     /**
-     * Sprites to draw
+     * Sprites to draw. They are copies of the sprites of the game, that are not modified
+     * once they are assigned here (SpriteGroup is not thread safe), and the array is only
+     * assigned when it is complete, so the painting thread always sees a consistent frame.
      */
-    public SpriteGroup[] spriteGroups;
+    public volatile SpriteGroup[] spriteGroups;
 
     /**
      * Player of the game
@@ -76,15 +76,14 @@ public class VGDLViewer extends JComponent
         */
 
         int[] gameSpriteOrder = game.getSpriteOrder();
-        if(this.spriteGroups != null) for(Integer spriteTypeInt : gameSpriteOrder)
+        SpriteGroup[] spriteGroups = this.spriteGroups;
+        if(spriteGroups != null) for(Integer spriteTypeInt : gameSpriteOrder)
         {
             if(spriteGroups[spriteTypeInt] != null) {
-                ConcurrentHashMap<Integer, VGDLSprite> cMap =spriteGroups[spriteTypeInt].getSprites();
-                Set<Integer> s = cMap.keySet();
-                for (Integer key : s) {
-                    VGDLSprite sp = cMap.get(key);
-                    if (sp != null)
-                        sp.draw(g, game);
+                SpriteGroup group = spriteGroups[spriteTypeInt];
+                int numSprites = group.numSprites();
+                for (int i = 0; i < numSprites; ++i) {
+                    group.getSpriteAt(i).draw(g, game);
                 }
             }
         }
@@ -102,12 +101,13 @@ public class VGDLViewer extends JComponent
     public void paint(SpriteGroup[] spriteGroupsGame)
     {
         //this.spriteGroups = spriteGroupsGame;
-        this.spriteGroups = new SpriteGroup[spriteGroupsGame.length];
-        for(int i = 0; i < this.spriteGroups.length; ++i)
+        SpriteGroup[] spriteGroups = new SpriteGroup[spriteGroupsGame.length];
+        for(int i = 0; i < spriteGroups.length; ++i)
         {
-            this.spriteGroups[i] = new SpriteGroup(spriteGroupsGame[i].getItype());
-            this.spriteGroups[i].copyAllSprites(spriteGroupsGame[i].getSprites().values());
+            spriteGroups[i] = new SpriteGroup(spriteGroupsGame[i].getItype());
+            spriteGroups[i].copyAllSprites(spriteGroupsGame[i].getSprites());
         }
+        this.spriteGroups = spriteGroups; //Published only when complete.
 
         this.repaint();
     }
@@ -4,7 +4,6 @@ import java.awt.Dimension;
 import java.util.ArrayList;
 
 import core.VGDLFactory;
-import core.VGDLRegistry;
 import core.VGDLSprite;
 import core.competition.CompetitionParameters;
 import core.content.GameContent;
@@ -74,7 +73,7 @@ public class BasicGame extends Game {
         obstacles.add(0); //Walls always in.
         if(obs != null)
         {
-            int obsArray[] = VGDLRegistry.GetInstance().explode(obs);
+            int obsArray[] = context.registry.explode(obs);
             for(Integer it : obsArray)
                 obstacles.add(it);
         }
@@ -150,8 +149,8 @@ public class BasicGame extends Game {
     {
         super.parseParameters(content);
 
-        VGDLFactory factory = VGDLFactory.GetInstance();
-        Class refClass = VGDLFactory.registeredGames.get(content.referenceClass);
+        VGDLFactory factory = context.factory;
+        Class refClass = factory.registeredGames.get(content.referenceClass);
         //System.out.println("refClass" + refClass.toString());
         if (!this.getClass().equals(refClass)) {
             System.out.println("Error: Game subclass instance not the same as content.referenceClass" +
@@ -173,7 +172,7 @@ public class BasicGame extends Game {
         //We might have more than one sprite in the same position.
         for(String objectType : keys)
         {
-            int itype = VGDLRegistry.GetInstance().getRegisteredSpriteValue(objectType);
+            int itype = context.registry.getRegisteredSpriteValue(objectType);
             addSprite(itype, position);
         }
     }
@@ -0,0 +1,277 @@
+package core.game;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import core.SpriteGroup;
+import core.VGDLSprite;
+
+/**
+ * Uniform grid used as broad phase for collision detection. The level is divided in
+ * cells of the size of a block, and each sprite is kept in the cell that contains the
+ * top-left corner of its rectangle (clamped to the level). The grid persists between
+ * game steps, and only the sprites that move change cell.
+ * Sprites that could intersect a given one are found looking only at the cells around it.
+ */
+public class CollisionGrid
+{
+    /**
+     * Value of 'location' for sprites that are not in the grid.
+     */
+    private static final int NOWHERE = -1;
+
+    /**
+     * Number of columns and rows of the grid.
+     */
+    private int cols, rows;
+
+    /**
+     * Size, in pixels, of each cell.
+     */
+    private int cellSize;
+
+    /**
+     * Sprites in each cell (index: row * cols + column), in positions [0, cellCount[cell]).
+     */
+    private VGDLSprite[][] cells;
+
+    /**
+     * Number of sprites in each cell.
+     */
+    private int[] cellCount;
+
+    /**
+     * Cell where each sprite is located, indexed by sprite ID.
+     */
+    private int[] location;
+
+    /**
+     * Largest width and height of the sprites in the grid.
+     */
+    private int maxWidth, maxHeight;
+
+    /**
+     * subType[t][u] is true if sprites of type 'u' belong to the type 't'.
+     */
+    private boolean[][] subType;
+
+    /**
+     * Sprites added since the last call to addPending().
+     */
+    private ArrayList<VGDLSprite> pending;
+
+    /**
+     * Creates an empty collision grid.
+     * @param screenSize dimensions of the level, in pixels.
+     * @param cellSize size of each cell, in pixels.
+     * @param iSubTypes for each sprite type, the list of types that belong to it.
+     */
+    public CollisionGrid(Dimension screenSize, int cellSize, ArrayList<Integer>[] iSubTypes)
+    {
+        this.cellSize = cellSize;
+        this.cols = Math.max(1, (screenSize.width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (screenSize.height + cellSize - 1) / cellSize);
+        this.cells = new VGDLSprite[cols * rows][];
+        this.cellCount = new int[cols * rows];
+        this.location = new int[64];
+        Arrays.fill(location, NOWHERE);
+        this.pending = new ArrayList<VGDLSprite>();
+
+        int numTypes = iSubTypes.length;
+        subType = new boolean[numTypes][numTypes];
+        for(int t = 0; t < numTypes; ++t)
+            for(Integer u : iSubTypes[t])
+                subType[t][u] = true;
+    }
+
+    /**
+     * Places all sprites of the game in the grid, moving those that changed cell.
+     * @param spriteGroups all sprites of the game.
+     */
+    public void updateAll(SpriteGroup[] spriteGroups)
+    {
+        for(int i = 0; i < spriteGroups.length; ++i)
+        {
+            SpriteGroup group = spriteGroups[i];
+            int numSprites = group.numSprites();
+            for(int j = 0; j < numSprites; ++j)
+                update(group.getSpriteAt(j));
+        }
+        pending.clear();
+    }
+
+    /**
+     * Places a sprite in the grid: adds it if it is new, or moves it if it changed cell.
+     * @param sprite sprite to place.
+     */
+    public void update(VGDLSprite sprite)
+    {
+        int id = sprite.spriteID;
+        if(id >= location.length)
+        {
+            int oldLength = location.length;
+            location = Arrays.copyOf(location, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(location, oldLength, location.length, NOWHERE);
+        }
+
+        if(sprite.rect.width > maxWidth) maxWidth = sprite.rect.width;
+        if(sprite.rect.height > maxHeight) maxHeight = sprite.rect.height;
+
+        int cell = cellOf(sprite.rect.x, sprite.rect.y);
+        int current = location[id];
+        if(current == cell)
+            return;
+
+        if(current != NOWHERE)
+            removeFromCell(current, id);
+        addToCell(cell, sprite);
+        location[id] = cell;
+    }
+
+    /**
+     * Replaces the sprite kept in the grid with the same ID as the one received.
+     * @param sprite new version of the sprite.
+     */
+    public void replace(VGDLSprite sprite)
+    {
+        int id = sprite.spriteID;
+        if(id >= location.length || location[id] == NOWHERE)
+            return;
+
+        VGDLSprite[] inCell = cells[location[id]];
+        int n = cellCount[location[id]];
+        for(int i = 0; i < n; ++i)
+        {
+            if(inCell[i].spriteID == id)
+            {
+                inCell[i] = sprite;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes a sprite from the grid.
+     * @param sprite sprite to remove.
+     */
+    public void remove(VGDLSprite sprite)
+    {
+        int id = sprite.spriteID;
+        if(id >= location.length || location[id] == NOWHERE)
+            return;
+        removeFromCell(location[id], id);
+        location[id] = NOWHERE;
+    }
+
+    /**
+     * Keeps a sprite created while handling events, to be placed in the grid
+     * in the next call to addPending().
+     * @param sprite new sprite.
+     */
+    public void addLater(VGDLSprite sprite)
+    {
+        pending.add(sprite);
+    }
+
+    /**
+     * Places in the grid the sprites created since the last call, in their current version.
+     * @param spriteGroups all sprites of the game.
+     */
+    public void addPending(SpriteGroup[] spriteGroups)
+    {
+        int numPending = pending.size();
+        for(int i = 0; i < numPending; ++i)
+        {
+            VGDLSprite sp = pending.get(i);
+            VGDLSprite current = spriteGroups[sp.getType()].getSprite(sp.spriteID);
+            if(current != null)
+                update(current);
+        }
+        pending.clear();
+    }
+
+    /**
+     * Finds the sprites of a given type (or its subtypes) that could intersect a rectangle.
+     * All sprites that do intersect it are included, and maybe some more.
+     * @param rect rectangle to check.
+     * @param itype type of the sprites to look for.
+     * @param candidates list where the sprites are returned. It is cleared first.
+     */
+    public void getCandidates(Rectangle rect, int itype, ArrayList<VGDLSprite> candidates)
+    {
+        candidates.clear();
+        boolean[] isCandidate = subType[itype];
+
+        int cx0 = clampCol(Math.floorDiv(rect.x - maxWidth + 1, cellSize));
+        int cx1 = clampCol(Math.floorDiv(rect.x + rect.width - 1, cellSize));
+        int cy0 = clampRow(Math.floorDiv(rect.y - maxHeight + 1, cellSize));
+        int cy1 = clampRow(Math.floorDiv(rect.y + rect.height - 1, cellSize));
+
+        for(int cy = cy0; cy <= cy1; ++cy)
+        {
+            for(int cx = cx0; cx <= cx1; ++cx)
+            {
+                int cell = cy * cols + cx;
+                VGDLSprite[] inCell = cells[cell];
+                int n = cellCount[cell];
+                for(int i = 0; i < n; ++i)
+                {
+                    if(isCandidate[inCell[i].getType()])
+                        candidates.add(inCell[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the cell that contains a given point, clamped to the grid.
+     * @param x x coordinate, in pixels.
+     * @param y y coordinate, in pixels.
+     * @return the index of the cell.
+     */
+    private int cellOf(int x, int y)
+    {
+        return clampRow(Math.floorDiv(y, cellSize)) * cols + clampCol(Math.floorDiv(x, cellSize));
+    }
+
+    private int clampCol(int cx)
+    {
+        return cx < 0 ? 0 : (cx >= cols ? cols - 1 : cx);
+    }
+
+    private int clampRow(int cy)
+    {
+        return cy < 0 ? 0 : (cy >= rows ? rows - 1 : cy);
+    }
+
+    private void addToCell(int cell, VGDLSprite sprite)
+    {
+        VGDLSprite[] inCell = cells[cell];
+        int n = cellCount[cell];
+        if(inCell == null)
+            inCell = cells[cell] = new VGDLSprite[4];
+        else if(n == inCell.length)
+            inCell = cells[cell] = Arrays.copyOf(inCell, n * 2);
+        inCell[n] = sprite;
+        cellCount[cell] = n + 1;
+    }
+
+    private void removeFromCell(int cell, int spriteId)
+    {
+        VGDLSprite[] inCell = cells[cell];
+        int n = cellCount[cell];
+        for(int i = 0; i < n; ++i)
+        {
+            if(inCell[i].spriteID == spriteId)
+            {
+                //Keep the order of the remaining sprites.
+                System.arraycopy(inCell, i + 1, inCell, i, n - i - 1);
+                inCell[n - 1] = null;
+                cellCount[cell] = n - 1;
+                return;
+            }
+        }
+    }
+}
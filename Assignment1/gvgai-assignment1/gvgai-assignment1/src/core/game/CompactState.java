@@ -0,0 +1,1030 @@
+package core.game;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import core.SpriteGroup;
+import core.VGDLRegistry;
+import core.VGDLSprite;
+import core.competition.CompetitionParameters;
+import core.content.SpriteContent;
+import core.termination.MultiSpriteCounter;
+import core.termination.SpriteCounter;
+import core.termination.Termination;
+import core.termination.Timeout;
+import ontology.Types;
+import ontology.avatar.MovingAvatar;
+import ontology.effects.Effect;
+import ontology.effects.binary.BounceForward;
+import ontology.effects.binary.KillBoth;
+import ontology.effects.unary.KillSprite;
+import ontology.effects.unary.StepBack;
+import ontology.effects.unary.TransformTo;
+import ontology.effects.unary.UndoAll;
+import ontology.physics.GridPhysics;
+import ontology.sprites.Immovable;
+import ontology.sprites.Passive;
+import tools.Pair;
+import tools.Vector2d;
+
+/**
+ * Compact version of the state of a game, meant for headless rollouts. Sprites are kept in
+ * parallel arrays of primitives (type, position, orientation, health and resources, plus a
+ * bitset of the sprites alive), so a copy is just a few array copies.
+ * <p/>
+ * It supports the subset of VGDL used by the grid physics games whose rules are deterministic:
+ * sprites of classes Immovable, Passive and MovingAvatar; effects stepBack, killSprite, killBoth,
+ * bounceForward, undoAll and transformTo; and terminations SpriteCounter, MultiSpriteCounter and
+ * Timeout. Within this subset, advance() reproduces ForwardModel.advance(), except for the
+ * history of events, which is not kept.
+ */
+public class CompactState
+{
+    /**
+     * Orientations a sprite can have, indexed by the values of the orientation array.
+     */
+    private static final Vector2d[] ORIENTATIONS = new Vector2d[]{Types.NONE, Types.UP, Types.DOWN,
+                                                                  Types.LEFT, Types.RIGHT};
+
+    /**
+     * Rules of the game, shared by all compact states of the same game.
+     */
+    private final Rules rules;
+
+    /**
+     * Number of sprite slots used. Slots are not reused after their sprite is removed.
+     */
+    private int numSlots;
+
+    /**
+     * Type, position, position at the beginning of the step, orientation (index in ORIENTATIONS)
+     * and health points of the sprite in each slot.
+     */
+    private int[] type, posX, posY, lastX, lastY, orientation, health;
+
+    /**
+     * Amount of each resource (in resourceTypes) owned by the sprite in each slot, at
+     * slot * resourceTypes.length + index. -1 if the sprite does not have that resource.
+     */
+    private int[] resources;
+
+    /**
+     * Resource types owned by the sprites of this state. Shared by all copies.
+     */
+    private final int[] resourceTypes;
+
+    /**
+     * Bit 'slot' is set if the sprite in that slot is alive (not killed).
+     */
+    private long[] alive;
+
+    /**
+     * Slots of the sprites of each type, in the same order as in SpriteGroup. The sprites of
+     * type 't' are at groupSlots[groupStart[t] .. groupStart[t] + groupCount[t]), with room
+     * for groupCap[t] sprites.
+     */
+    private int[] groupSlots, groupStart, groupCap, groupCount;
+
+    /**
+     * Sprites killed in this step, to be removed at the end of it.
+     */
+    private int[] killList;
+    private int numKilled;
+
+    /**
+     * Number of sprites of each type when the current effect started to be applied.
+     */
+    private int[] typeCount;
+
+    /**
+     * Slot of the avatar, -1 if there is no avatar.
+     */
+    private int avatar;
+
+    /**
+     * Number of sprites in the game, as Game.num_sprites.
+     */
+    private int numSprites;
+
+    /**
+     * Game state variables.
+     */
+    private int gameTick;
+    private double score;
+    private boolean isEnded;
+    private Types.WINNER winner;
+
+    /**
+     * Creates a compact state from a forward model.
+     * @param rules rules of the game of the model.
+     * @param model model to take the state from.
+     * @param resourceTypes resource types owned by the sprites of the model.
+     */
+    private CompactState(Rules rules, ForwardModel model, int[] resourceTypes)
+    {
+        this.rules = rules;
+        this.resourceTypes = resourceTypes;
+        int numTypes = rules.numTypes;
+
+        allocate(model.num_sprites + 8);
+        Arrays.fill(resources, -1);
+        killList = new int[8];
+        typeCount = new int[numTypes];
+
+        groupStart = new int[numTypes];
+        groupCap = new int[numTypes];
+        groupCount = new int[numTypes];
+        int totalCap = 0;
+        for(int t = 0; t < numTypes; ++t)
+        {
+            groupStart[t] = totalCap;
+            groupCap[t] = model.spriteGroups[t].numSprites() + 4;
+            totalCap += groupCap[t];
+        }
+        groupSlots = new int[totalCap];
+
+        avatar = -1;
+        for(int t = 0; t < numTypes; ++t)
+        {
+            SpriteGroup group = model.spriteGroups[t];
+            int n = group.numSprites();
+            for(int j = 0; j < n; ++j)
+            {
+                VGDLSprite sp = group.getSpriteAt(j);
+                int slot = numSlots++;
+                type[slot] = t;
+                posX[slot] = sp.rect.x;
+                posY[slot] = sp.rect.y;
+                lastX[slot] = sp.lastrect.x;
+                lastY[slot] = sp.lastrect.y;
+                orientation[slot] = orientationIndex(sp.orientation);
+                health[slot] = sp.healthPoints;
+                for(Map.Entry<Integer, Integer> entry : sp.resources.entrySet())
+                    resources[slot * resourceTypes.length + resourceIndex(entry.getKey())] = entry.getValue();
+                alive[slot >> 6] |= 1L << slot;
+                groupSlots[groupStart[t] + groupCount[t]++] = slot;
+                if(sp == model.avatar)
+                    avatar = slot;
+            }
+        }
+
+        numSprites = model.num_sprites;
+        gameTick = model.gameTick;
+        score = model.score;
+        isEnded = model.isEnded;
+        winner = model.winner;
+    }
+
+    /**
+     * Creates a copy of another compact state.
+     * @param other state to copy.
+     */
+    private CompactState(CompactState other)
+    {
+        rules = other.rules;
+        resourceTypes = other.resourceTypes;
+        numSlots = other.numSlots;
+
+        allocate(numSlots + 4);
+        System.arraycopy(other.type, 0, type, 0, numSlots);
+        System.arraycopy(other.posX, 0, posX, 0, numSlots);
+        System.arraycopy(other.posY, 0, posY, 0, numSlots);
+        System.arraycopy(other.lastX, 0, lastX, 0, numSlots);
+        System.arraycopy(other.lastY, 0, lastY, 0, numSlots);
+        System.arraycopy(other.orientation, 0, orientation, 0, numSlots);
+        System.arraycopy(other.health, 0, health, 0, numSlots);
+        System.arraycopy(other.resources, 0, resources, 0, numSlots * resourceTypes.length);
+        System.arraycopy(other.alive, 0, alive, 0, (numSlots + 63) >> 6);
+
+        int numTypes = rules.numTypes;
+        groupSlots = new int[other.groupSlots.length];
+        groupStart = new int[numTypes];
+        groupCap = new int[numTypes];
+        groupCount = new int[numTypes];
+        System.arraycopy(other.groupSlots, 0, groupSlots, 0, groupSlots.length);
+        System.arraycopy(other.groupStart, 0, groupStart, 0, numTypes);
+        System.arraycopy(other.groupCap, 0, groupCap, 0, numTypes);
+        System.arraycopy(other.groupCount, 0, groupCount, 0, numTypes);
+
+        killList = new int[8];
+        typeCount = new int[numTypes];
+
+        avatar = other.avatar;
+        numSprites = other.numSprites;
+        gameTick = other.gameTick;
+        score = other.score;
+        isEnded = other.isEnded;
+        winner = other.winner;
+    }
+
+    /**
+     * Creates the compact state of a forward model.
+     * @param rules rules of the game of the model, as returned by Rules.compile().
+     * @param model model to take the state from.
+     * @return the compact state, or null if the current state of the model can't be represented
+     * (it has time effects or shields active, or sprites that changed their definition).
+     */
+    static CompactState create(Rules rules, ForwardModel model)
+    {
+        if(model.timeEffects.size() > 0 || model.kill_list.size() > 0 || model.shielded)
+            return null;
+
+        ArrayList<Integer> owned = new ArrayList<Integer>();
+        for(int t = 0; t < rules.numTypes; ++t)
+        {
+            SpriteGroup group = model.spriteGroups[t];
+            int n = group.numSprites();
+            for(int j = 0; j < n; ++j)
+            {
+                VGDLSprite sp = group.getSpriteAt(j);
+                if(!rules.known[t] || sp.rect.width != rules.blockSize || sp.rect.height != rules.blockSize
+                        || sp.speed != rules.speed[t] || sp.is_oriented != rules.oriented[t]
+                        || sp.cooldown != 0 || orientationIndex(sp.orientation) == -1)
+                    return null;
+
+                for(Integer resType : sp.resources.keySet())
+                    if(!owned.contains(resType))
+                        owned.add(resType);
+            }
+        }
+
+        int[] resourceTypes = new int[owned.size()];
+        for(int i = 0; i < resourceTypes.length; ++i)
+            resourceTypes[i] = owned.get(i);
+
+        return new CompactState(rules, model, resourceTypes);
+    }
+
+    /**
+     * Returns an exact copy of this state.
+     * @return a copy of this state.
+     */
+    public CompactState copy()
+    {
+        return new CompactState(this);
+    }
+
+    /**
+     * Advances the state using the action passed as the move of the agent, as
+     * ForwardModel.advance() does.
+     * @param action agent action to execute in the next cycle.
+     */
+    public void advance(Types.ACTIONS action)
+    {
+        if(isEnded)
+            return;
+
+        tick(action);
+        eventHandling();
+        clearAll();
+        terminationHandling();
+
+        if(gameTick >= CompetitionParameters.MAX_TIMESTEPS)
+        {
+            isEnded = true;
+            if(winner != Types.WINNER.PLAYER_WINS)
+                winner = Types.WINNER.PLAYER_LOSES;
+        }
+        gameTick++;
+    }
+
+    /**
+     * Moves the avatar. No other sprite moves by itself in the games supported, so
+     * the rest of the sprites just keep their position as the last one.
+     * @param action action of the avatar.
+     */
+    private void tick(Types.ACTIONS action)
+    {
+        System.arraycopy(posX, 0, lastX, 0, numSlots);
+        System.arraycopy(posY, 0, lastY, 0, numSlots);
+
+        if(avatar == -1)
+            return;
+
+        //Same as Utils.processMovementActionKeys(): only directions move the avatar.
+        switch(action)
+        {
+            case ACTION_UP: activeMovement(avatar, 0, -1, rules.speed[type[avatar]]); break;
+            case ACTION_DOWN: activeMovement(avatar, 0, 1, rules.speed[type[avatar]]); break;
+            case ACTION_LEFT: activeMovement(avatar, -1, 0, rules.speed[type[avatar]]); break;
+            case ACTION_RIGHT: activeMovement(avatar, 1, 0, rules.speed[type[avatar]]); break;
+            default: break;
+        }
+    }
+
+    /**
+     * Moves a sprite in a direction, as GridPhysics.activeMovement() does.
+     * @param slot sprite to move.
+     * @param dx x component of the direction.
+     * @param dy y component of the direction.
+     * @param speed speed of the movement, 0 to use the speed of the sprite.
+     */
+    private void activeMovement(int slot, double dx, double dy, double speed)
+    {
+        int itype = type[slot];
+        if(speed == 0)
+            speed = rules.speed[itype] == 0 ? 1 : rules.speed[itype];
+
+        int step = (int) (speed * rules.gridWidth[itype]);
+        if(step == 0)
+        {
+            step = (int) rules.speed[itype];
+            if(step == 0) return;
+        }
+
+        if(Math.abs(dx) + Math.abs(dy) != 0)
+        {
+            posX[slot] += (int) dx * step;
+            posY[slot] += (int) dy * step;
+        }
+    }
+
+    /**
+     * Applies the effects of the collisions between sprites, in the same order as Game.eventHandling().
+     */
+    private void eventHandling()
+    {
+        int numPairs = rules.pairFirst.length;
+        for(int p = 0; p < numPairs; ++p)
+        {
+            int[] types1 = rules.subTypes[rules.pairFirst[p]];
+            int[] types2 = rules.subTypes[rules.pairSecond[p]];
+            EffectRule[] effects = rules.pairEffects[p];
+
+            for(int e = 0; e < effects.length; ++e)
+            {
+                //Sprites created while applying this effect do not take part in it.
+                if(countSprites(types1) == 0 || countSprites(types2) == 0)
+                    break;
+
+                EffectRule ef = effects[e];
+                for(int t = 0; t < types1.length; ++t)
+                {
+                    int itype = types1[t];
+                    for(int j = 0; j < typeCount[itype]; ++j)
+                    {
+                        int s1 = groupSlots[groupStart[itype] + j];
+                        if(!isAlive(s1))
+                            continue;
+
+                        candidates:
+                        for(int u = 0; u < types2.length; ++u)
+                        {
+                            int itype2 = types2[u];
+                            for(int k = 0; k < typeCount[itype2]; ++k)
+                            {
+                                int s2 = groupSlots[groupStart[itype2] + k];
+                                if(s1 != s2 && Math.abs(posX[s1] - posX[s2]) < rules.blockSize
+                                        && Math.abs(posY[s1] - posY[s2]) < rules.blockSize)
+                                {
+                                    executeEffect(ef, s1, s2);
+                                    if(!isAlive(s1))
+                                        break candidates; //Stop checking sprite 1 if it was killed.
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies an effect to a pair of sprites that collide.
+     * @param ef effect to apply.
+     * @param s1 first sprite of the collision.
+     * @param s2 second sprite of the collision.
+     */
+    private void executeEffect(EffectRule ef, int s1, int s2)
+    {
+        switch(ef.kind)
+        {
+            case EffectRule.STEP_BACK:
+                posX[s1] = lastX[s1];
+                posY[s1] = lastY[s1];
+                break;
+
+            case EffectRule.KILL_SPRITE:
+                killSprite(s1);
+                break;
+
+            case EffectRule.KILL_BOTH:
+                killSprite(s1);
+                killSprite(s2);
+                break;
+
+            case EffectRule.BOUNCE_FORWARD:
+                double dx = posX[s2] - lastX[s2], dy = posY[s2] - lastY[s2];
+                double mag = Math.sqrt(dx * dx + dy * dy);
+                if(mag != 0)
+                {
+                    dx /= mag;
+                    dy /= mag;
+                }
+                activeMovement(s1, dx, dy, rules.speed[type[s2]]);
+                break;
+
+            case EffectRule.UNDO_ALL:
+                for(int i = 0; i < rules.spriteOrder.length; ++i)
+                {
+                    int itype = rules.spriteOrder[i];
+                    if(ef.notTypes[itype])
+                        continue;
+                    int start = groupStart[itype], end = start + groupCount[itype];
+                    for(int j = start; j < end; ++j)
+                    {
+                        int slot = groupSlots[j];
+                        posX[slot] = lastX[slot];
+                        posY[slot] = lastY[slot];
+                    }
+                }
+                break;
+
+            case EffectRule.TRANSFORM_TO:
+                transformTo(ef, s1, s2);
+                break;
+        }
+
+        if(ef.applyScore)
+            score += ef.scoreChange;
+    }
+
+    /**
+     * Replaces a sprite by a new one of another type, as TransformTo does.
+     * @param ef effect applied.
+     * @param s1 sprite to transform.
+     * @param s2 other sprite of the collision.
+     */
+    private void transformTo(EffectRule ef, int s1, int s2)
+    {
+        int slot = addSprite(ef.itype, posX[s1], posY[s1]);
+        if(slot == -1)
+            return;
+
+        if(rules.oriented[ef.itype] && rules.oriented[type[s1]] && orientation[slot] == 0)
+            orientation[slot] = orientation[s1];
+        lastX[slot] = lastX[s1];
+        lastY[slot] = lastY[s1];
+        int numResources = resourceTypes.length;
+        System.arraycopy(resources, s1 * numResources, resources, slot * numResources, numResources);
+
+        if(rules.isAvatar[type[s1]] && rules.movingAvatar[ef.itype])
+            avatar = slot;
+
+        health[slot] = health[s1];
+        killSprite(s1);
+        if(ef.killSecond)
+            killSprite(s2);
+    }
+
+    /**
+     * Adds a sprite to the game, checking for singletons as Game.addSprite() does.
+     * @param itype type of the sprite.
+     * @param x x coordinate of the sprite.
+     * @param y y coordinate of the sprite.
+     * @return the slot of the new sprite, or -1 if it could not be created.
+     */
+    private int addSprite(int itype, int x, int y)
+    {
+        if(numSprites > rules.maxSprites)
+            return -1;
+
+        int[] ancestors = rules.itypes[itype];
+        for(int i = 0; i < ancestors.length; ++i)
+        {
+            if(rules.singletons[ancestors[i]] && getNumSprites(ancestors[i]) > 0)
+                return -1;
+        }
+
+        if(numSlots == type.length)
+            grow();
+
+        int slot = numSlots++;
+        type[slot] = itype;
+        posX[slot] = lastX[slot] = x;
+        posY[slot] = lastY[slot] = y;
+        orientation[slot] = rules.orientation[itype];
+        health[slot] = rules.health[itype];
+        Arrays.fill(resources, slot * resourceTypes.length, (slot + 1) * resourceTypes.length, -1);
+        alive[slot >> 6] |= 1L << slot;
+
+        if(groupCount[itype] == groupCap[itype])
+        {
+            //Move the group to a bigger segment at the end.
+            int newStart = groupSlots.length;
+            int newCap = groupCap[itype] * 2;
+            groupSlots = Arrays.copyOf(groupSlots, newStart + newCap);
+            System.arraycopy(groupSlots, groupStart[itype], groupSlots, newStart, groupCount[itype]);
+            groupStart[itype] = newStart;
+            groupCap[itype] = newCap;
+        }
+        groupSlots[groupStart[itype] + groupCount[itype]++] = slot;
+        numSprites++;
+        return slot;
+    }
+
+    /**
+     * Kills a sprite, adding it to the list of sprites to remove at the end of this step.
+     * @param slot sprite to kill.
+     */
+    private void killSprite(int slot)
+    {
+        if(!isAlive(slot))
+            return;
+
+        alive[slot >> 6] &= ~(1L << slot);
+        if(numKilled == killList.length)
+            killList = Arrays.copyOf(killList, numKilled * 2);
+        killList[numKilled++] = slot;
+    }
+
+    /**
+     * Removes the sprites killed in this step from their groups, in the same order as SpriteGroup.
+     */
+    private void clearAll()
+    {
+        for(int i = 0; i < numKilled; ++i)
+        {
+            int slot = killList[i];
+            int itype = type[slot];
+            int start = groupStart[itype];
+            int last = start + --groupCount[itype];
+            for(int j = start; j <= last; ++j)
+            {
+                if(groupSlots[j] == slot)
+                {
+                    System.arraycopy(groupSlots, j + 1, groupSlots, j, last - j);
+                    break;
+                }
+            }
+
+            if(slot == avatar)
+                avatar = -1;
+            numSprites--;
+        }
+        numKilled = 0;
+    }
+
+    /**
+     * Checks the termination conditions, as Game.terminationHandling() does.
+     */
+    private void terminationHandling()
+    {
+        for(int i = 0; !isEnded && i < rules.termKind.length; ++i)
+        {
+            boolean done = false;
+            int limit = rules.termLimit[i];
+            switch(rules.termKind[i])
+            {
+                case Rules.SPRITE_COUNTER:
+                    done = getNumSprites(rules.termType1[i]) <= limit;
+                    break;
+                case Rules.MULTI_SPRITE_COUNTER:
+                    int count = 0;
+                    if(rules.termType1[i] != -1) count += getNumSprites(rules.termType1[i]);
+                    if(rules.termType2[i] != -1) count += getNumSprites(rules.termType2[i]);
+                    done = count == limit || (rules.termMin[i] && count > limit);
+                    break;
+                case Rules.TIMEOUT:
+                    done = gameTick >= limit;
+                    break;
+            }
+
+            if(done)
+            {
+                isEnded = true;
+                winner = rules.termWin[i] ? Types.WINNER.PLAYER_WINS : Types.WINNER.PLAYER_LOSES;
+            }
+        }
+    }
+
+    /**
+     * Counts the sprites of the given types, leaving the number of sprites of each type in typeCount.
+     * @param itypes types to count.
+     * @return the total number of sprites.
+     */
+    private int countSprites(int[] itypes)
+    {
+        int total = 0;
+        for(int t = 0; t < itypes.length; ++t)
+        {
+            int itype = itypes[t];
+            typeCount[itype] = groupCount[itype];
+            total += groupCount[itype];
+        }
+        return total;
+    }
+
+    private boolean isAlive(int slot)
+    {
+        return (alive[slot >> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * Creates the arrays of sprite attributes, with room for a number of sprites.
+     * @param capacity number of sprites.
+     */
+    private void allocate(int capacity)
+    {
+        type = new int[capacity];
+        posX = new int[capacity];
+        posY = new int[capacity];
+        lastX = new int[capacity];
+        lastY = new int[capacity];
+        orientation = new int[capacity];
+        health = new int[capacity];
+        resources = new int[capacity * resourceTypes.length];
+        alive = new long[(capacity + 63) >> 6];
+    }
+
+    /**
+     * Doubles the room for sprites of the arrays of sprite attributes.
+     */
+    private void grow()
+    {
+        int capacity = type.length * 2;
+        type = Arrays.copyOf(type, capacity);
+        posX = Arrays.copyOf(posX, capacity);
+        posY = Arrays.copyOf(posY, capacity);
+        lastX = Arrays.copyOf(lastX, capacity);
+        lastY = Arrays.copyOf(lastY, capacity);
+        orientation = Arrays.copyOf(orientation, capacity);
+        health = Arrays.copyOf(health, capacity);
+        resources = Arrays.copyOf(resources, capacity * resourceTypes.length);
+        alive = Arrays.copyOf(alive, (capacity + 63) >> 6);
+    }
+
+    private int resourceIndex(int resType)
+    {
+        for(int i = 0; i < resourceTypes.length; ++i)
+            if(resourceTypes[i] == resType)
+                return i;
+        return -1;
+    }
+
+    private static int orientationIndex(Vector2d orientation)
+    {
+        for(int i = 0; i < ORIENTATIONS.length; ++i)
+            if(ORIENTATIONS[i].equals(orientation))
+                return i;
+        return -1;
+    }
+
+    /**
+     * Gets the score of the game at this state.
+     * @return the score.
+     */
+    public double getGameScore() { return score; }
+
+    /**
+     * Gets the current game step.
+     * @return the game step.
+     */
+    public int getGameTick() { return gameTick; }
+
+    /**
+     * Indicates if there is a game winner in the current state.
+     * @return the winner of the game.
+     */
+    public Types.WINNER getGameWinner() { return winner; }
+
+    /**
+     * Indicates if the game is over or if it hasn't finished yet.
+     * @return true if the game is over.
+     */
+    public boolean isGameOver() { return winner != Types.WINNER.NO_WINNER; }
+
+    /**
+     * Returns the position of the avatar, or Types.NIL if the game is over.
+     * @return position of the avatar.
+     */
+    public Vector2d getAvatarPosition()
+    {
+        if(isEnded || avatar == -1)
+            return Types.NIL;
+        return new Vector2d(posX[avatar], posY[avatar]);
+    }
+
+    /**
+     * Returns the orientation of the avatar, or Types.NIL if the game is over.
+     * @return orientation of the avatar.
+     */
+    public Vector2d getAvatarOrientation()
+    {
+        if(isEnded || avatar == -1)
+            return Types.NIL;
+        return ORIENTATIONS[orientation[avatar]];
+    }
+
+    /**
+     * Returns the health points of the avatar, 0 if there is no avatar.
+     * @return health points of the avatar.
+     */
+    public int getAvatarHealthPoints()
+    {
+        return avatar == -1 ? 0 : health[avatar];
+    }
+
+    /**
+     * Returns the resources in the avatar's possession, as ForwardModel.getAvatarResources().
+     * @return resources owned by the avatar.
+     */
+    public HashMap<Integer, Integer> getAvatarResources()
+    {
+        HashMap<Integer, Integer> owned = new HashMap<Integer, Integer>();
+        if(avatar == -1)
+            return owned;
+
+        for(int i = 0; i < resourceTypes.length; ++i)
+        {
+            int amount = resources[avatar * resourceTypes.length + i];
+            if(amount != -1)
+                owned.put(resourceTypes[i], amount);
+        }
+        return owned;
+    }
+
+    /**
+     * Returns the number of sprites of the type given by parameter, and all its subtypes.
+     * @param itype the type of the sprites to count.
+     * @return the number of sprites, counting also those killed in this step.
+     */
+    public int getNumSprites(int itype)
+    {
+        int[] allTypes = rules.subTypes[itype];
+        int acum = 0;
+        for(int t = 0; t < allTypes.length; ++t)
+            acum += groupCount[allTypes[t]];
+        return acum;
+    }
+
+    /**
+     * Returns the positions of the sprites of a given type (not including its subtypes), in
+     * the same order as the sprites of the SpriteGroup of that type.
+     * @param itype the type of the sprites.
+     * @return the positions of the sprites.
+     */
+    public ArrayList<Vector2d> getPositions(int itype)
+    {
+        ArrayList<Vector2d> positions = new ArrayList<Vector2d>();
+        int start = groupStart[itype], end = start + groupCount[itype];
+        for(int j = start; j < end; ++j)
+            positions.add(new Vector2d(posX[groupSlots[j]], posY[groupSlots[j]]));
+        return positions;
+    }
+
+
+    /**
+     * Effect of a collision, in the form used by CompactState.
+     */
+    static final class EffectRule
+    {
+        static final int STEP_BACK = 0;
+        static final int KILL_SPRITE = 1;
+        static final int KILL_BOTH = 2;
+        static final int BOUNCE_FORWARD = 3;
+        static final int UNDO_ALL = 4;
+        static final int TRANSFORM_TO = 5;
+
+        int kind;
+        int scoreChange;
+        boolean applyScore;
+
+        /**
+         * Type of the new sprite (TRANSFORM_TO).
+         */
+        int itype;
+
+        /**
+         * If the second sprite is killed too (TRANSFORM_TO).
+         */
+        boolean killSecond;
+
+        /**
+         * Types of the sprites not affected (UNDO_ALL).
+         */
+        boolean[] notTypes;
+
+        /**
+         * Creates the rule of an effect.
+         * @param ef effect of the game.
+         * @param registry registry of sprite types of the game.
+         * @param numTypes number of sprite types of the game.
+         * @return the rule, or null if the effect is not supported.
+         */
+        static EffectRule of(Effect ef, VGDLRegistry registry, int numTypes)
+        {
+            EffectRule rule = new EffectRule();
+            Class<?> c = ef.getClass();
+            if(c == StepBack.class && !((StepBack) ef).pixelPerfect)
+                rule.kind = STEP_BACK;
+            else if(c == KillSprite.class)
+                rule.kind = KILL_SPRITE;
+            else if(c == KillBoth.class)
+                rule.kind = KILL_BOTH;
+            else if(c == BounceForward.class)
+                rule.kind = BOUNCE_FORWARD;
+            else if(c == UndoAll.class)
+            {
+                rule.kind = UNDO_ALL;
+                rule.notTypes = new boolean[numTypes];
+                for(int itype : registry.explode(((UndoAll) ef).notStype))
+                    if(itype >= 0)
+                        rule.notTypes[itype] = true;
+            }
+            else if(c == TransformTo.class)
+            {
+                rule.kind = TRANSFORM_TO;
+                rule.itype = ((TransformTo) ef).itype;
+                rule.killSecond = ((TransformTo) ef).killSecond;
+            }
+            else
+                return null;
+
+            rule.scoreChange = ef.scoreChange;
+            rule.applyScore = ef.applyScore;
+            return rule;
+        }
+    }
+
+
+    /**
+     * Rules of a game, in the form used by CompactState. They are built once per game,
+     * and shared by all its compact states.
+     */
+    static final class Rules
+    {
+        static final int SPRITE_COUNTER = 0;
+        static final int MULTI_SPRITE_COUNTER = 1;
+        static final int TIMEOUT = 2;
+
+        int numTypes;
+        int blockSize;
+        int maxSprites;
+        int[] spriteOrder;
+        boolean[] singletons;
+
+        /**
+         * For each type, the type itself and its subtypes (as Game.iSubTypes), and the type
+         * and its ancestors (as VGDLSprite.itypes).
+         */
+        int[][] subTypes, itypes;
+
+        /**
+         * Definition of the sprites of each type. known[t] is false if there can't be sprites of type 't'.
+         */
+        boolean[] known, isAvatar, movingAvatar, oriented;
+        double[] speed;
+        int[] gridWidth, orientation, health;
+
+        /**
+         * Pairs of types with effects defined, in the order of Game.definedEffects, and their effects.
+         */
+        int[] pairFirst, pairSecond;
+        EffectRule[][] pairEffects;
+
+        /**
+         * Termination conditions, in order.
+         */
+        int[] termKind, termType1, termType2, termLimit;
+        boolean[] termWin, termMin;
+
+        /**
+         * Builds the rules of a game.
+         * @param game game to take the rules from.
+         * @return the rules, or null if the game uses features not supported by CompactState.
+         */
+        static Rules compile(Game game)
+        {
+            if(game.definedEOSEffects.size() > 0)
+                return null;
+
+            Rules rules = new Rules();
+            int numTypes = game.spriteGroups.length;
+            rules.numTypes = numTypes;
+            rules.blockSize = game.block_size;
+            rules.maxSprites = game.MAX_SPRITES;
+            rules.spriteOrder = game.spriteOrder;
+            rules.singletons = game.singletons;
+
+            rules.subTypes = new int[numTypes][];
+            rules.itypes = new int[numTypes][];
+            rules.known = new boolean[numTypes];
+            rules.isAvatar = new boolean[numTypes];
+            rules.movingAvatar = new boolean[numTypes];
+            rules.oriented = new boolean[numTypes];
+            rules.speed = new double[numTypes];
+            rules.gridWidth = new int[numTypes];
+            rules.orientation = new int[numTypes];
+            rules.health = new int[numTypes];
+
+            int numPairs = game.definedEffects.size();
+            rules.pairFirst = new int[numPairs];
+            rules.pairSecond = new int[numPairs];
+            rules.pairEffects = new EffectRule[numPairs][];
+            for(int p = 0; p < numPairs; ++p)
+            {
+                Pair<Integer, Integer> pair = game.definedEffects.get(p);
+                ArrayList<Effect> effects = game.collisionEffects[pair.first][pair.second];
+                rules.pairFirst[p] = pair.first;
+                rules.pairSecond[p] = pair.second;
+                rules.pairEffects[p] = new EffectRule[effects.size()];
+                for(int e = 0; e < effects.size(); ++e)
+                {
+                    EffectRule rule = EffectRule.of(effects.get(e), game.context.registry, numTypes);
+                    if(rule == null)
+                        return null;
+                    rules.pairEffects[p][e] = rule;
+                }
+            }
+
+            int numTerminations = game.terminations.size();
+            rules.termKind = new int[numTerminations];
+            rules.termType1 = new int[numTerminations];
+            rules.termType2 = new int[numTerminations];
+            rules.termLimit = new int[numTerminations];
+            rules.termWin = new boolean[numTerminations];
+            rules.termMin = new boolean[numTerminations];
+            for(int i = 0; i < numTerminations; ++i)
+            {
+                Termination term = game.terminations.get(i);
+                Class<?> c = term.getClass();
+                if(c == SpriteCounter.class)
+                {
+                    rules.termKind[i] = SPRITE_COUNTER;
+                    rules.termType1[i] = ((SpriteCounter) term).itype;
+                }
+                else if(c == MultiSpriteCounter.class)
+                {
+                    rules.termKind[i] = MULTI_SPRITE_COUNTER;
+                    rules.termType1[i] = ((MultiSpriteCounter) term).itype1;
+                    rules.termType2[i] = ((MultiSpriteCounter) term).itype2;
+                    rules.termMin[i] = ((MultiSpriteCounter) term).min;
+                }
+                else if(c == Timeout.class)
+                    rules.termKind[i] = TIMEOUT;
+                else
+                    return null;
+
+                rules.termLimit[i] = term.limit;
+                rules.termWin[i] = term.win;
+            }
+
+            //Sprites are created only after checking the rest of the rules, as it is slower.
+            Dimension size = new Dimension(game.block_size, game.block_size);
+            for(int t = 0; t < numTypes; ++t)
+            {
+                rules.subTypes[t] = toArray(game.iSubTypes[t]);
+                rules.itypes[t] = new int[0];
+
+                if(!(game.classConst[t] instanceof SpriteContent))
+                    continue;
+                SpriteContent content = (SpriteContent) game.classConst[t];
+                if(content.referenceClass == null)
+                    continue;
+
+                VGDLSprite sp = game.context.factory.createSprite(content, new Vector2d(0, 0), size);
+                if(sp == null)
+                    return null;
+
+                //Only sprites that never move by themselves, apart from the avatar.
+                Class<?> c = sp.getClass();
+                boolean staticSprite = (c == Immovable.class || c == Passive.class)
+                                    && (sp.is_static || sp.only_active || !sp.is_oriented || sp.speed == 0);
+                if(!(staticSprite || c == MovingAvatar.class) || sp.cooldown != 0
+                        || sp.physics == null || sp.physics.getClass() != GridPhysics.class
+                        || (sp.rotateInPlace && sp.is_oriented) || orientationIndex(sp.orientation) == -1)
+                    return null;
+
+                rules.itypes[t] = toArray(content.itypes);
+                rules.known[t] = true;
+                rules.isAvatar[t] = sp.is_avatar;
+                rules.movingAvatar[t] = c == MovingAvatar.class;
+                rules.oriented[t] = sp.is_oriented;
+                rules.speed[t] = sp.speed;
+                rules.gridWidth[t] = ((GridPhysics) sp.physics).gridsize.width;
+                rules.orientation[t] = orientationIndex(sp.orientation);
+                rules.health[t] = sp.healthPoints;
+            }
+
+            //Sprites created by transformTo must be supported too.
+            for(int p = 0; p < numPairs; ++p)
+                for(EffectRule rule : rules.pairEffects[p])
+                    if(rule.kind == EffectRule.TRANSFORM_TO && !rules.known[rule.itype])
+                        return null;
+
+            return rules;
+        }
+
+        private static int[] toArray(ArrayList<Integer> list)
+        {
+            int[] array = new int[list.size()];
+            for(int i = 0; i < array.length; ++i)
+                array[i] = list.get(i);
+            return array;
+        }
+    }
+}
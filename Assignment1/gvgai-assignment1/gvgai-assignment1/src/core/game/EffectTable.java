@@ -0,0 +1,156 @@
+package core.game;
+
+import java.util.ArrayList;
+
+import ontology.effects.Effect;
+import tools.Pair;
+
+/**
+ * Effects of a game flattened into arrays, in the order in which Game.eventHandling() checks
+ * them: end of screen effects by type, and collision effects by pair of types (as in
+ * Game.definedEffects). Types come with all their subtypes, so the game doesn't need to go
+ * through the lists of effects and subtypes of the definition on every step.
+ * <p/>
+ * Each collision effect also has a shield: a bit that ShieldFrom effects turn on (see
+ * Game.addShield()) to prevent the effect for the rest of the step. The table is built once
+ * for the definition and shared by all the games and forward models that use it.
+ */
+final class EffectTable
+{
+    /**
+     * Subtypes of each type, including the type itself.
+     */
+    final int[][] subTypes;
+
+    /**
+     * End of screen effects: type of the sprites they apply to, and effect.
+     */
+    final int[] eosType;
+    final Effect[] eosEffect;
+
+    /**
+     * Collision effects: types of the first and second sprites, effect, and index of the first
+     * effect of the next pair of types, to skip the rest of the effects of a pair.
+     */
+    final int[] first;
+    final int[] second;
+    final Effect[] effect;
+    final int[] nextPair;
+
+    /**
+     * Shield bit of each collision effect. Effects of the same pair of types and function share it.
+     */
+    final int[] shield;
+
+    /**
+     * Number of shield bits.
+     */
+    final int numShields;
+
+    private EffectTable(int[][] subTypes, int[] eosType, Effect[] eosEffect, int[] first, int[] second,
+                        Effect[] effect, int[] nextPair, int[] shield, int numShields)
+    {
+        this.subTypes = subTypes;
+        this.eosType = eosType;
+        this.eosEffect = eosEffect;
+        this.first = first;
+        this.second = second;
+        this.effect = effect;
+        this.nextPair = nextPair;
+        this.shield = shield;
+        this.numShields = numShields;
+    }
+
+    /**
+     * Builds the table of effects of a game. All its fields are final, so it can be shared
+     * with other threads without synchronization.
+     * @param game game to take the effects from.
+     * @return the table.
+     */
+    static EffectTable compile(Game game)
+    {
+        int numTypes = game.iSubTypes.length;
+        int[][] subTypes = new int[numTypes][];
+        for(int t = 0; t < numTypes; ++t)
+            subTypes[t] = toArray(game.iSubTypes[t]);
+
+        int numEOS = 0;
+        for(Integer intId : game.definedEOSEffects)
+            numEOS += game.eosEffects[intId].size();
+
+        int[] eosType = new int[numEOS];
+        Effect[] eosEffect = new Effect[numEOS];
+        int e = 0;
+        for(Integer intId : game.definedEOSEffects)
+        {
+            for(Effect ef : game.eosEffects[intId])
+            {
+                eosType[e] = intId;
+                eosEffect[e] = ef;
+                e++;
+            }
+        }
+
+        int numEffects = 0;
+        for(Pair<Integer,Integer> p : game.definedEffects)
+            numEffects += game.collisionEffects[p.first][p.second].size();
+
+        int[] first = new int[numEffects];
+        int[] second = new int[numEffects];
+        Effect[] effect = new Effect[numEffects];
+        int[] nextPair = new int[numEffects];
+        int[] shield = new int[numEffects];
+        int numShields = 0;
+        e = 0;
+        for(Pair<Integer,Integer> p : game.definedEffects)
+        {
+            ArrayList<Effect> effects = game.collisionEffects[p.first][p.second];
+            int pairStart = e;
+            for(Effect ef : effects)
+            {
+                first[e] = p.first;
+                second[e] = p.second;
+                effect[e] = ef;
+                nextPair[e] = pairStart + effects.size();
+
+                //Effects of the same pair with the same function are shielded together.
+                int s = findShield(first, second, effect, shield, e, p.first, p.second, ef.hashCode);
+                shield[e] = (s == -1) ? numShields++ : s;
+                e++;
+            }
+        }
+
+        return new EffectTable(subTypes, eosType, eosEffect, first, second, effect, nextPair, shield, numShields);
+    }
+
+    /**
+     * Finds the shield bit of the collision effects between two types with a given function.
+     * @param type1 type of the first sprite.
+     * @param type2 type of the second sprite.
+     * @param functHash hash of the name of the function of the effect.
+     * @return the shield bit, or -1 if no collision effect matches.
+     */
+    int findShield(int type1, int type2, long functHash)
+    {
+        return findShield(first, second, effect, shield, effect.length, type1, type2, functHash);
+    }
+
+    private static int findShield(int[] first, int[] second, Effect[] effect, int[] shield, int numEffects,
+                                  int type1, int type2, long functHash)
+    {
+        for(int e = 0; e < numEffects; ++e)
+        {
+            if(first[e] == type1 && second[e] == type2 && effect[e].hashCode == functHash)
+                return shield[e];
+        }
+        return -1;
+    }
+
+    private static int[] toArray(ArrayList<Integer> list)
+    {
+        int[] array = new int[list.size()];
+        for(int i = 0; i < array.length; ++i)
+            array[i] = list.get(i);
+        return array;
+    }
+}
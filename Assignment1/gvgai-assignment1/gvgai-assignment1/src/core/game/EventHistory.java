@@ -0,0 +1,277 @@
+package core.game;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Persistent history of events. It is never modified: appending an event gives a new
+ * history that shares all previous game steps with this one, so states and their copies
+ * can share their histories no matter how long they are.
+ * <p/>
+ * The events are kept in the same order as in a TreeSet (asc. by game step, and by
+ * Event.compareTo() within a step), and events that compare equal to one already in
+ * the history are not added, as TreeSet does.
+ */
+public final class EventHistory extends AbstractCollection<Event>
+{
+    /**
+     * The empty history.
+     */
+    public static final EventHistory EMPTY = new EventHistory(null);
+
+    /**
+     * Events of one game step, linked to the previous game step with events.
+     */
+    private static final class Step
+    {
+        final int gameStep;
+        final Event[] events;
+        final Step previous;
+
+        /**
+         * Number of events of this and all previous steps.
+         */
+        final int size;
+
+        /**
+         * Game step of the oldest step of the chain.
+         */
+        final int oldestStep;
+
+        Step(int gameStep, Event[] events, Step previous)
+        {
+            this.gameStep = gameStep;
+            this.events = events;
+            this.previous = previous;
+            this.size = events.length + (previous == null ? 0 : previous.size);
+            this.oldestStep = previous == null ? gameStep : previous.oldestStep;
+        }
+    }
+
+    /**
+     * Last game step with events, null if the history is empty.
+     */
+    private final Step last;
+
+    private EventHistory(Step last)
+    {
+        this.last = last;
+    }
+
+    /**
+     * Gets the history with an event appended.
+     * @param event event to append.
+     * @return the new history. It is this history if it already has an event equal to the new one.
+     */
+    public EventHistory append(Event event)
+    {
+        Step step = insert(last, event);
+        return step == last ? this : new EventHistory(step);
+    }
+
+    /**
+     * Gets the history with the events of one game step appended. This is faster than appending
+     * them one by one, as the step is built only once.
+     * @param events events to append, all of the same game step. The array is not kept.
+     * @param count number of events to take from the array.
+     * @return the new history. It is this history if all the events are already in it.
+     */
+    public EventHistory appendAll(Event[] events, int count)
+    {
+        int gameStep = events[0].gameStep;
+        if(last != null && gameStep <= last.gameStep)
+        {
+            //The step already has events (events come in order of game step, so this should not happen).
+            EventHistory history = this;
+            for(int i = 0; i < count; ++i)
+                history = history.append(events[i]);
+            return history;
+        }
+
+        //Sort them (keeping the first of equal events, as TreeSet does) and drop the repeated ones.
+        Event[] sorted = Arrays.copyOf(events, count);
+        Arrays.sort(sorted);
+        int n = 1;
+        for(int i = 1; i < count; ++i)
+        {
+            if(sorted[i].compareTo(sorted[n - 1]) != 0)
+                sorted[n++] = sorted[i];
+        }
+        if(n < count)
+            sorted = Arrays.copyOf(sorted, n);
+        return new EventHistory(new Step(gameStep, sorted, last));
+    }
+
+    /**
+     * Gets the history without the events that happened before a given game step.
+     * @param minStep first game step to keep.
+     * @return the new history. It is this history if there are no events to discard.
+     */
+    public EventHistory since(int minStep)
+    {
+        if(last == null || last.oldestStep >= minStep)
+            return this;
+        if(last.gameStep < minStep)
+            return EMPTY;
+
+        //Rebuild the steps kept, sharing their events.
+        int numSteps = 0;
+        for(Step s = last; s != null && s.gameStep >= minStep; s = s.previous)
+            numSteps++;
+        Step[] steps = new Step[numSteps];
+        Step s = last;
+        for(int i = numSteps - 1; i >= 0; --i, s = s.previous)
+            steps[i] = s;
+
+        Step rebuilt = null;
+        for(int i = 0; i < numSteps; ++i)
+            rebuilt = new Step(steps[i].gameStep, steps[i].events, rebuilt);
+        return new EventHistory(rebuilt);
+    }
+
+    /**
+     * Gets the number of game steps kept in this history, including those that may not have events.
+     * @return the game steps from the oldest event to the most recent one, 0 if there are no events.
+     */
+    public int span()
+    {
+        return last == null ? 0 : last.gameStep - last.oldestStep + 1;
+    }
+
+    /**
+     * Returns the number of events.
+     * @return the number of events.
+     */
+    @Override
+    public int size()
+    {
+        return last == null ? 0 : last.size;
+    }
+
+    /**
+     * Iterates the events asc. by game step, as a TreeSet does.
+     * @return the iterator.
+     */
+    @Override
+    public Iterator<Event> iterator()
+    {
+        int numSteps = 0;
+        for(Step s = last; s != null; s = s.previous)
+            numSteps++;
+        final Step[] steps = new Step[numSteps];
+        Step s = last;
+        for(int i = numSteps - 1; i >= 0; --i, s = s.previous)
+            steps[i] = s;
+
+        return new Iterator<Event>()
+        {
+            int step = 0, index = 0;
+
+            public boolean hasNext()
+            {
+                return step < steps.length;
+            }
+
+            public Event next()
+            {
+                if(step == steps.length)
+                    throw new NoSuchElementException();
+                Event event = steps[step].events[index++];
+                if(index == steps[step].events.length)
+                {
+                    step++;
+                    index = 0;
+                }
+                return event;
+            }
+        };
+    }
+
+    /**
+     * Iterates the events desc. by game step, starting by the most recent one. Unlike
+     * iterator(), it takes constant time to start, so it is the way to look at the recent events.
+     * @return the iterator.
+     */
+    public Iterator<Event> descendingIterator()
+    {
+        return new Iterator<Event>()
+        {
+            Step step = last;
+            int index = last == null ? -1 : last.events.length - 1;
+
+            public boolean hasNext()
+            {
+                return step != null;
+            }
+
+            public Event next()
+            {
+                if(step == null)
+                    throw new NoSuchElementException();
+                Event event = step.events[index--];
+                if(index < 0)
+                {
+                    step = step.previous;
+                    index = step == null ? -1 : step.events.length - 1;
+                }
+                return event;
+            }
+        };
+    }
+
+    /**
+     * Checks if this history has the same events as another one, in the same order. Steps shared
+     * by both histories are not compared event by event.
+     * @param other the other history.
+     * @return true if both histories have the same events.
+     */
+    public boolean sameEvents(EventHistory other)
+    {
+        if(size() != other.size())
+            return false;
+
+        Step a = last, b = other.last;
+        while(a != b)
+        {
+            if(a == null || b == null || a.gameStep != b.gameStep || !Arrays.equals(a.events, b.events))
+                return false;
+            a = a.previous;
+            b = b.previous;
+        }
+        return true;
+    }
+
+    /**
+     * Inserts an event in a chain of steps.
+     * @param last last step of the chain.
+     * @param event event to insert.
+     * @return the last step of the new chain, or 'last' if the chain has an event equal to the new one.
+     */
+    private static Step insert(Step last, Event event)
+    {
+        if(last == null || event.gameStep > last.gameStep)
+            return new Step(event.gameStep, new Event[]{event}, last);
+
+        if(event.gameStep < last.gameStep)
+        {
+            //Events come in order of game step, so this should not happen.
+            Step previous = insert(last.previous, event);
+            return previous == last.previous ? last : new Step(last.gameStep, last.events, previous);
+        }
+
+        //Same step: insert it in order.
+        Event[] events = last.events;
+        int pos = Arrays.binarySearch(events, event);
+        if(pos >= 0)
+            return last;
+        pos = -pos - 1;
+
+        Event[] newEvents = new Event[events.length + 1];
+        System.arraycopy(events, 0, newEvents, 0, pos);
+        newEvents[pos] = event;
+        System.arraycopy(events, pos, newEvents, pos + 1, events.length - pos);
+        return new Step(last.gameStep, newEvents, last.previous);
+    }
+}
@@ -3,6 +3,7 @@ package core.game;
 import java.awt.Dimension;
 import java.sql.Time;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -10,14 +11,15 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import core.SpriteGroup;
 import core.VGDLSprite;
 import ontology.Types;
 import ontology.avatar.MovingAvatar;
 import ontology.effects.TimeEffect;
-import tools.Pair;
+import tools.ActionKeys;
+import tools.RestorableRandom;
 import tools.Vector2d;
 
 /**
@@ -34,7 +36,7 @@ public class ForwardModel extends Game
      * observation will use this sampleRandom generator, different from the one
      * that is used in the real game.
      */
-    private Random randomObs;
+    private RestorableRandom randomObs;
 
     /**
      * Boolean map of sprite types that are NPCs.
@@ -85,15 +87,96 @@ public class ForwardModel extends Game
     private boolean visibleList[];
 
     /**
-     * List of (persistent) observations for all sprites, indexed by sprite ID.
+     * List of (persistent) observations for all sprites, indexed by sprite ID
+     * (null for sprites without observation). It grows as needed.
      */
-    private HashMap<Integer, Observation> observations;
+    private Observation[] observations;
 
     /**
-     * Observation grid
+     * Observation grid. It is null in copies of a forward model until it is requested.
+     * From then on, it is brought up to date with the sprites changed since the last
+     * time it was requested (see dirtySprites).
      */
     private ArrayList<Observation>[][] observationGrid;
 
+    /**
+     * Sprites changed since the observations were last brought up to date, packed
+     * as (type << 32 | sprite ID). Only the first 'numDirty' are valid.
+     */
+    private long[] dirtySprites;
+
+    /**
+     * Number of valid entries in dirtySprites.
+     */
+    private int numDirty;
+
+    /**
+     * Indicates that too many sprites changed to keep track of them, so all
+     * observations must be brought up to date.
+     */
+    private boolean allDirty;
+
+    /**
+     * Source of unique generations for forward models.
+     */
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+
+    /**
+     * Generation of this forward model. Only sprites with this same generation
+     * belong to this model, and can be modified in place. Any other sprite is shared
+     * with other copies, and must be cloned before being modified.
+     */
+    private long generation;
+
+    /**
+     * Indicates, for each sprite type, if the sprite group is owned by this model
+     * (true) or shared with other copies (false).
+     */
+    private boolean ownedGroups[];
+
+    /**
+     * Number of game steps of events kept in the history, 0 to keep all of them.
+     */
+    private int eventWindow;
+
+    /**
+     * Indicates if sprites killed in this model are kept in the pool of the thread, and
+     * new sprites are taken from it (see setSpritePooling()).
+     */
+    private boolean spritePooling;
+
+    /**
+     * Indicates if the time effects are shared with other copies.
+     */
+    private boolean sharedTimeEffects;
+
+    /**
+     * Number of copies made from this model.
+     */
+    private int numCopies;
+
+    /**
+     * Indicates if advance() records the information needed to undo it.
+     */
+    private boolean undoMode;
+
+    /**
+     * Log of the steps that can be undone. Its entries are reused, so only the
+     * first 'undoSteps' are valid.
+     */
+    private ArrayList<UndoStep> undoLog;
+
+    /**
+     * Number of steps that can be undone.
+     */
+    private int undoSteps;
+
+    /**
+     * Rules of the game in the form used by CompactState, or null if the game is not
+     * supported by it. Shared by all copies of this model.
+     */
+    private CompactState.Rules compactRules;
+
     /**
      * Constructor for StateObservation. Initializes everything
      * @param a_gameState
@@ -102,9 +185,75 @@ public class ForwardModel extends Game
     {
         //All static elements of the game are assigned from the game we create the copy from.
         initNonVolatile(a_gameState);
+        createObservationGrid();
 
         //Init those variables that take a determined value at the beginning of a game.
         init();
+
+        compactRules = CompactState.Rules.compile(a_gameState);
+    }
+
+    /**
+     * Constructor for games that copy a level already built in another game of the same
+     * definition (see Game.copyLevel()). The compact rules do not depend on the sprites of the
+     * level, so they are taken from the model of that game instead of being compiled again.
+     * @param a_gameState game to create the model for.
+     * @param level forward model of the game the level was copied from.
+     */
+    ForwardModel(Game a_gameState, ForwardModel level)
+    {
+        initNonVolatile(a_gameState);
+        createObservationGrid();
+        init();
+
+        compactRules = level.compactRules;
+    }
+
+    /**
+     * Creates a copy of another forward model. Sprites, sprite groups and time effects are
+     * shared by both models, and copied by each one of them the first time they are modified.
+     * The history of events is persistent, so it is just shared.
+     * @param other forward model to copy.
+     */
+    private ForwardModel(ForwardModel other)
+    {
+        initNonVolatile(other);
+        init();
+
+        int numSpriteTypes = other.spriteGroups.length;
+        spriteGroups = other.spriteGroups.clone();
+        kill_list = new ArrayList<VGDLSprite>();
+        shields = (other.shields == null) ? null : other.shields.clone();
+        shielded = other.shielded;
+
+        for(int i = 0; i < numSpriteTypes; ++i)
+        {
+            VGDLSprite sp = spriteGroups[i].getFirstSprite();
+            if(sp != null && !sp.hidden)
+                checkSpriteFeatures(sp, i);
+        }
+
+        this.historicEvents = other.historicEvents;
+        this.eventWindow = other.eventWindow;
+        this.spritePooling = other.spritePooling;
+        this.timeEffects = other.timeEffects;
+        this.compactRules = other.compactRules;
+
+        //Game state variables:
+        this.gameTick = other.gameTick;
+        this.isEnded = other.isEnded;
+        this.winner = other.winner;
+        this.score = other.score;
+        this.avatarLastAction = other.avatarLastAction;
+        this.nextSpriteID = other.nextSpriteID;
+        this.num_sprites = other.num_sprites;
+        this.spriteCounts = other.spriteCounts.clone();
+        this.spriteHash = other.spriteHash;
+
+        this.ownedGroups = new boolean[numSpriteTypes];
+        share();
+        other.share();
+        other.numCopies++;
     }
 
 
@@ -116,18 +265,23 @@ public class ForwardModel extends Game
     final public void update(Game a_gameState)
     {
         int numSpriteTypes = a_gameState.spriteGroups.length;
+        generation = GENERATIONS.incrementAndGet();
+        ownedGroups = new boolean[numSpriteTypes];
+        Arrays.fill(ownedGroups, true);
+        sharedTimeEffects = false;
+        undoSteps = 0;
+        collisionGrid = null;
         kill_list = new ArrayList<VGDLSprite>();
-        bucketList = new Bucket[numSpriteTypes];
-        historicEvents = new TreeSet<Event>();
-        shieldedEffects = new ArrayList[numSpriteTypes];
+        ki = a_gameState.ki;
 
         //Copy of sprites from the game.
         spriteGroups = new SpriteGroup[numSpriteTypes];
         num_sprites = 0;
+        spriteHash = 0;
+        newSprites.clear();
 
         for(int i = 0; i < spriteGroups.length; ++i)
         {
-            bucketList[i] = new Bucket();
             spriteGroups[i] = new SpriteGroup(i);
 
             Iterator<VGDLSprite> spriteIt = a_gameState.spriteGroups[i].getSpriteIterator();
@@ -135,39 +289,31 @@ public class ForwardModel extends Game
             {
                 VGDLSprite sp = spriteIt.next();
                 VGDLSprite spCopy = sp.copy();
+                spCopy.generation = generation;
+                spCopy.hashKey = spCopy.hashKey();
+                spriteHash ^= spCopy.hashKey;
                 spriteGroups[i].addSprite(spCopy.spriteID, spCopy);
 
-                if(!spCopy.hidden) {
+                if(!spCopy.hidden)
                     checkSpriteFeatures(spCopy, i);
-                    updateObservation(spCopy);
-                }
             }
 
             int nSprites = spriteGroups[i].numSprites();
             num_sprites += nSprites;
-
-            //copy the shields
-            shieldedEffects[i] = new ArrayList<>();
-            for(Pair p : a_gameState.shieldedEffects[i])
-                shieldedEffects[i].add(p.copy());
         }
+        spriteCounts = a_gameState.spriteCounts.clone();
 
-        //events:
-        Iterator<Event> itEvent = a_gameState.historicEvents.iterator();
-        while(itEvent.hasNext())
-        {
-            historicEvents.add(itEvent.next().copy());
-        }
+        //copy the shields
+        shields = (a_gameState.shields == null) ? null : a_gameState.shields.clone();
+        shielded = a_gameState.shielded;
+
+        //events (the history never changes, so it is shared with the game):
+        historicEvents = a_gameState.historicEvents;
+        if(eventWindow > 0)
+            historicEvents = historicEvents.since(a_gameState.gameTick - eventWindow);
 
         //copy the time effects:
-        this.timeEffects = new TreeSet<TimeEffect>();
-        Iterator<TimeEffect> timeEffects = a_gameState.timeEffects.descendingIterator();
-        while(timeEffects.hasNext())
-        {
-            TimeEffect tef = timeEffects.next().copy();
-            this.timeEffects.add(tef);
-        }
-        //System.out.println("Tef size: " + this.timeEffects.size());
+        this.timeEffects = a_gameState.timeEffects.copy();
 
         //Game state variables:
         this.gameTick = a_gameState.gameTick;
@@ -176,6 +322,10 @@ public class ForwardModel extends Game
         this.score = a_gameState.score;
         this.avatarLastAction = a_gameState.avatarLastAction;
         this.nextSpriteID = a_gameState.nextSpriteID;
+
+        //Observations are brought up to date when requested.
+        numDirty = 0;
+        allDirty = true;
     }
 
     /**
@@ -187,21 +337,22 @@ public class ForwardModel extends Game
     {
         int spriteId = sprite.spriteID;
         boolean moved = false, newObs = false;
-        Observation obs;
+        Observation obs = spriteId < observations.length ? observations[spriteId] : null;
         Vector2d oldPosition = null;
-        if(observations.containsKey(spriteId))
+        if(obs != null)
         {
-            obs = observations.get(spriteId);
             oldPosition = obs.position;
-            moved = ! obs.position.equals(sprite.getPosition());
-            obs.position = sprite.getPosition();
+            moved = obs.position.x != sprite.rect.x || obs.position.y != sprite.rect.y;
+            if(moved)
+                obs.position = sprite.getPosition();
         }else
         {
             obs = createSpriteObservation(sprite);
             newObs = true;
         }
 
-        updateGrid(obs, newObs, moved, oldPosition);
+        if(observationGrid != null)
+            updateGrid(obs, newObs, moved, oldPosition);
     }
 
     /**
@@ -212,11 +363,12 @@ public class ForwardModel extends Game
     {
         int spriteId = sprite.spriteID;
 
-        if(observations.containsKey(spriteId))
+        if(spriteId < observations.length && observations[spriteId] != null)
         {
-            Observation obs = observations.get(spriteId);
-            removeObservationFromGrid(obs, obs.position);
-            observations.remove(spriteId);
+            Observation obs = observations[spriteId];
+            if(observationGrid != null)
+                removeObservationFromGrid(obs, obs.position);
+            observations[spriteId] = null;
         }
     }
 
@@ -322,7 +474,9 @@ public class ForwardModel extends Game
     {
         int category = getSpriteCategory(sprite);
         Observation obs = new Observation(sprite.getType(), sprite.spriteID, sprite.getPosition(), Types.NIL, category);
-        observations.put(sprite.spriteID, obs);
+        if(sprite.spriteID >= observations.length)
+            observations = Arrays.copyOf(observations, Math.max(sprite.spriteID + 1, observations.length * 2));
+        observations[sprite.spriteID] = obs;
         return obs;
     }
 
@@ -334,9 +488,9 @@ public class ForwardModel extends Game
     private Observation getSpriteObservation(VGDLSprite sprite)
     {
         int spriteId = sprite.spriteID;
-        if(observations.containsKey(spriteId))
+        if(spriteId < observations.length && observations[spriteId] != null)
         {
-            return observations.get(spriteId);
+            return observations[spriteId];
         }else{
             return createSpriteObservation(sprite);
         }
@@ -412,7 +566,7 @@ public class ForwardModel extends Game
      */
     private void init()
     {
-        this.randomObs = new Random();
+        this.randomObs = new RestorableRandom();
         this.gameTick = 0;
         this.isEnded = false;
         this.winner = Types.WINNER.NO_WINNER;
@@ -427,15 +581,21 @@ public class ForwardModel extends Game
      */
     private void initNonVolatile(Game a_gameState)
     {
-        //We skip this.resource_colors, ki and sampleRandom.
+        //We skip this.resource_colors and sampleRandom. ki is the key input of the game, which
+        //human controllers read from their observation. tick() replaces it by the keys of the action.
+        this.ki = a_gameState.ki;
+        this.context = a_gameState.context;
         this.spriteOrder = a_gameState.spriteOrder;
         this.singletons = a_gameState.singletons;
         this.classConst = a_gameState.classConst;
+        this.prototypes = a_gameState.prototypes;
+        this.effectTable = a_gameState.effectTable();
         this.collisionEffects = a_gameState.collisionEffects;
         this.definedEffects = a_gameState.definedEffects;
         this.eosEffects = a_gameState.eosEffects;
         this.definedEOSEffects = a_gameState.definedEOSEffects;
         this.iSubTypes = a_gameState.iSubTypes;
+        this.superTypes = a_gameState.superTypes;
         this.charMapping = a_gameState.charMapping;
         this.terminations = a_gameState.terminations;
         this.resources_limits = a_gameState.resources_limits;
@@ -457,13 +617,201 @@ public class ForwardModel extends Game
         knownList = new boolean[a_gameState.spriteGroups.length];
         visibleList = new boolean[a_gameState.spriteGroups.length];
 
-        observations = new HashMap<Integer, Observation>();
+        observations = new Observation[64];
+
+        this.pathf = a_gameState.pathf;
+    }
+
+    /**
+     * Creates an empty observation grid.
+     */
+    private void createObservationGrid()
+    {
         observationGrid = new ArrayList[screenSize.width/block_size][screenSize.height/block_size];
         for(int i = 0; i < observationGrid.length; ++i)
             for(int j = 0; j < observationGrid[i].length; ++j)
                 observationGrid[i][j] = new ArrayList<Observation>();
+    }
 
-        this.pathf = a_gameState.pathf;
+    /**
+     * Gives this model a new generation, so all its current sprites, sprite groups
+     * and time effects are considered shared with a copy.
+     */
+    private void share()
+    {
+        generation = GENERATIONS.incrementAndGet();
+        Arrays.fill(ownedGroups, false);
+        sharedTimeEffects = true;
+    }
+
+    /**
+     * Gets a version of the sprite received that belongs to this model, cloning it
+     * (and replacing it in its sprite group) if it is shared with other copies.
+     * @param sprite sprite about to be modified.
+     * @return the sprite to modify.
+     */
+    protected VGDLSprite writableSprite(VGDLSprite sprite)
+    {
+        if(sprite.generation == generation)
+            return sprite;
+
+        int itype = sprite.getType();
+        VGDLSprite current = spriteGroups[itype].getSprite(sprite.spriteID);
+        if(current != null && current.generation == generation)
+            return current; //Already cloned from another reference.
+
+        VGDLSprite own = spritePooling ? SpritePool.get().take(itype, sprite.getClass()) : null;
+        if(own == null)
+            own = sprite.copy();
+        else
+            sprite.copyTo(own);
+        own.generation = generation;
+        if(current != null)
+            writableGroup(itype).addSprite(own.spriteID, own);
+
+        if(sprite == avatar)
+            avatar = (MovingAvatar) own;
+
+        if(collisionGrid != null)
+            collisionGrid.replace(own);
+        return own;
+    }
+
+    /**
+     * Gets the version of a sprite that is in its sprite group now: the clone that replaced
+     * it, if it has been taken by this model since it was read.
+     * @param sprite sprite taken from the group (or the collision grid) earlier in this step.
+     * @return the current version of the sprite.
+     */
+    protected VGDLSprite currentSprite(VGDLSprite sprite)
+    {
+        if(sprite.generation == generation)
+            return sprite;
+
+        VGDLSprite current = spriteGroups[sprite.getType()].getSprite(sprite.spriteID);
+        return current != null ? current : sprite;
+    }
+
+    /**
+     * Gets the group of sprites of the given type, ready to add or remove sprites. The group
+     * is copied (but not its sprites) if it is shared with other copies.
+     * @param itype type of the sprites of the group.
+     * @return the sprite group to modify.
+     */
+    protected SpriteGroup writableGroup(int itype)
+    {
+        if(!ownedGroups[itype])
+        {
+            spriteGroups[itype] = spriteGroups[itype].shallowCopy();
+            ownedGroups[itype] = true;
+        }
+        return spriteGroups[itype];
+    }
+
+    /**
+     * Adds a new sprite to this model. The sprite belongs to this model.
+     * @param sprite the new sprite to add.
+     * @param itype main int type of this sprite (leaf of the hierarchy of types).
+     */
+    protected void addSprite(VGDLSprite sprite, int itype)
+    {
+        sprite.generation = generation;
+        super.addSprite(sprite, itype);
+        markDirty(sprite);
+    }
+
+    /**
+     * Kills a sprite. The sprite is taken by this model first, so the reference kept in
+     * the kill list is not replaced by a clone later in this step.
+     * @param sprite the sprite to kill.
+     */
+    public void killSprite(VGDLSprite sprite)
+    {
+        super.killSprite(writableSprite(sprite));
+    }
+
+    /**
+     * Gets a sprite from the pool of the thread, if sprite pooling is on.
+     * @param itype type of the sprite needed.
+     * @param spriteClass class of the sprite needed.
+     * @return the sprite, to be reset with copyTo(), or null if there is none.
+     */
+    protected VGDLSprite recycledSprite(int itype, Class<? extends VGDLSprite> spriteClass)
+    {
+        if(!spritePooling)
+            return null;
+        return SpritePool.get().take(itype, spriteClass);
+    }
+
+    /**
+     * Gives a killed sprite to the pool of the thread, if sprite pooling is on. Only sprites
+     * that belong to this model are given, as shared sprites are still used by other copies.
+     * The avatar is never given, as it can still be queried once the game is over.
+     * @param sprite the sprite removed.
+     * @param itype type of the sprite.
+     */
+    protected void recycleSprite(VGDLSprite sprite, int itype)
+    {
+        if(spritePooling && sprite.generation == generation && !sprite.is_avatar)
+            SpritePool.get().give(itype, sprite);
+    }
+
+    /**
+     * Adds the events of the current game step to the history of events, discarding the
+     * events out of the window.
+     */
+    protected void flushHistoricEvents()
+    {
+        super.flushHistoricEvents();
+
+        //The history is rebuilt when it keeps twice the steps of the window, so this costs
+        //constant time per step. Events kept beyond the window are not seen by getEvents().
+        if(eventWindow > 0 && historicEvents.span() > 2 * eventWindow)
+            historicEvents = historicEvents.since(gameTick - eventWindow);
+    }
+
+    /**
+     * Sets the number of game steps of events kept in the history of this model and the
+     * copies made from it.
+     * @param steps number of steps, 0 to keep all the events of the game.
+     */
+    final public void setEventWindow(int steps)
+    {
+        eventWindow = steps;
+    }
+
+    /**
+     * Turns sprite pooling on or off for this model and the copies made from it. With pooling,
+     * sprites killed in the model go to a pool of the current thread, and new sprites (and the
+     * copies of sprites shared with other models) are taken from it, so long searches create
+     * less garbage.
+     * @param pooling true to turn pooling on.
+     */
+    final public void setSpritePooling(boolean pooling)
+    {
+        spritePooling = pooling;
+    }
+
+    /**
+     * Adds a time effect, copying the time effects first if they are shared.
+     * @param ef the time effect to add.
+     */
+    public void addTimeEffect(TimeEffect ef)
+    {
+        ownTimeEffects();
+        super.addTimeEffect(ef);
+    }
+
+    /**
+     * Copies the time effects of this model, if they are shared with other copies.
+     */
+    private void ownTimeEffects()
+    {
+        if(sharedTimeEffects)
+        {
+            timeEffects = timeEffects.copy();
+            sharedTimeEffects = false;
+        }
     }
 
 
@@ -484,7 +832,7 @@ public class ForwardModel extends Game
      */
     public void setNewSeed(int seed)
     {
-        randomObs = new Random(seed);
+        randomObs = new RestorableRandom(seed);
     }
 
 
@@ -498,24 +846,29 @@ public class ForwardModel extends Game
      */
     protected void tick(Types.ACTIONS action)
     {
-        this.ki.reset();
-        this.ki.setAction(action);
+        this.ki = ActionKeys.of(action);
+        writableSprite(avatar);
         avatar.preMovement();
         avatar.move(this, this.ki.getMask());
+        spriteChanged(avatar);
 
         for(int i = spriteOrder.length-1; i >= 0; --i)
         {
             int spriteTypeInt = spriteOrder[i];
 
-            Iterator<VGDLSprite> spriteIt = spriteGroups[spriteTypeInt].getSpriteIterator();
-            if(spriteIt != null) while(spriteIt.hasNext())
+            //Same as in Game.tick(), sprites created in this loop are not updated until the next tick.
+            int numSprites = spriteGroups[spriteTypeInt].numSprites();
+            for(int j = 0; j < numSprites; ++j)
             {
-                VGDLSprite sp = spriteIt.next();
+                VGDLSprite sp = spriteGroups[spriteTypeInt].getSpriteAt(j);
 
-                if(sp != avatar)
+                //Inert sprites are not updated, so they can still be shared with other copies.
+                if(sp != avatar && !sp.isInert())
                 {
+                    sp = writableSprite(sp);
                     sp.preMovement();
                     sp.update(this);
+                    spriteChanged(sp);
                 }
             }
         }
@@ -529,34 +882,235 @@ public class ForwardModel extends Game
      */
     final public void advance(Types.ACTIONS action)
     {
+        if(undoMode)
+            recordUndoStep();
+
         if(!isEnded)
         {
             tick(action);
+
+            if(timeEffects.hasDue(gameTick))
+                ownTimeEffects();
             eventHandling();
+
             clearAll(this);
             terminationHandling();
             checkTimeOut();
-            updateAllObservations();
             gameTick++;
         }
     }
 
     /**
-     * Updates all observations of this class.
+     * Enables or disables the undo mode. In undo mode, every call to advance() can be
+     * rolled back with undo(). Disabling it discards all steps recorded.
+     * @param undoMode true to enable the undo mode.
+     */
+    final public void setUndoMode(boolean undoMode)
+    {
+        this.undoMode = undoMode;
+        if(!undoMode)
+            undoSteps = 0;
+    }
+
+    /**
+     * Records the current state before advancing it. Sprites, sprite groups, events and
+     * time effects are not copied: they are kept by the step and considered shared from
+     * now on, so the next advance() copies anything it modifies (and only that).
      */
-    final private void updateAllObservations()
+    private void recordUndoStep()
     {
-        //Now, update all others (but avatar).
-        int typeIndex = spriteOrder.length-1;
-        for(int i = typeIndex; i >=0; --i)   //For update, opposite order than drawing.
+        if(undoLog == null)
+            undoLog = new ArrayList<UndoStep>();
+        if(undoSteps == undoLog.size())
+            undoLog.add(new UndoStep(spriteGroups.length));
+
+        UndoStep step = undoLog.get(undoSteps++);
+        System.arraycopy(spriteGroups, 0, step.spriteGroups, 0, spriteGroups.length);
+        System.arraycopy(ownedGroups, 0, step.ownedGroups, 0, ownedGroups.length);
+        System.arraycopy(knownList, 0, step.knownList, 0, knownList.length);
+        step.generation = generation;
+        step.numCopies = numCopies;
+        step.historicEvents = historicEvents;
+        step.timeEffects = timeEffects;
+        step.sharedTimeEffects = sharedTimeEffects;
+        step.avatar = avatar;
+        step.random = randomObs;
+        step.randomState = randomObs.getState();
+        step.gameTick = gameTick;
+        step.isEnded = isEnded;
+        step.winner = winner;
+        step.score = score;
+        step.nextSpriteID = nextSpriteID;
+        step.num_sprites = num_sprites;
+        System.arraycopy(spriteCounts, 0, step.spriteCounts, 0, spriteCounts.length);
+        step.spriteHash = spriteHash;
+
+        share();
+    }
+
+    /**
+     * Rolls back the last call to advance() made in undo mode, including the state
+     * of the random generator.
+     * @return false if there is no step to undo.
+     */
+    final public boolean undo()
+    {
+        if(undoSteps == 0)
+            return false;
+
+        UndoStep step = undoLog.get(--undoSteps);
+        System.arraycopy(step.spriteGroups, 0, spriteGroups, 0, spriteGroups.length);
+        historicEvents = step.historicEvents;
+        timeEffects = step.timeEffects;
+        avatar = step.avatar;
+        randomObs = step.random;
+        randomObs.setState(step.randomState);
+        gameTick = step.gameTick;
+        isEnded = step.isEnded;
+        winner = step.winner;
+        score = step.score;
+        nextSpriteID = step.nextSpriteID;
+        num_sprites = step.num_sprites;
+        System.arraycopy(step.spriteCounts, 0, spriteCounts, 0, spriteCounts.length);
+        spriteHash = step.spriteHash;
+
+        //Forget the sprite types discovered during the step.
+        for(int i = 0; i < knownList.length; ++i)
         {
-            int spriteTypeInt = spriteOrder[i];
+            if(knownList[i] && !step.knownList[i])
+            {
+                npcList[i] = immList[i] = movList[i] = resList[i] = false;
+                portalList[i] = fromAvatar[i] = knownList[i] = visibleList[i] = false;
+            }
+        }
 
-            Iterator<VGDLSprite> spriteIt = spriteGroups[spriteTypeInt].getSpriteIterator();
-            if(spriteIt != null) while(spriteIt.hasNext())
+        if(step.numCopies == numCopies)
+        {
+            //Nobody else has seen what this model owned before the step: it can own it again.
+            generation = step.generation;
+            System.arraycopy(step.ownedGroups, 0, ownedGroups, 0, ownedGroups.length);
+            sharedTimeEffects = step.sharedTimeEffects;
+        }else{
+            share();
+        }
+
+        //Observations and the collision grid are rebuilt from the restored sprites when needed.
+        Arrays.fill(observations, null);
+        observationGrid = null;
+        numDirty = 0;
+        allDirty = false;
+        collisionGrid = null;
+        return true;
+    }
+
+    /**
+     * Takes note of a sprite that changed, so its observation is brought up to date
+     * the next time observations are requested. Nothing is recorded while there is
+     * no observation grid, as observations are then updated when they are read.
+     * @param sprite sprite that changed.
+     */
+    private void markDirty(VGDLSprite sprite)
+    {
+        if(observationGrid == null || allDirty)
+            return;
+
+        if(dirtySprites == null)
+            dirtySprites = new long[64];
+        if(numDirty == dirtySprites.length)
+        {
+            //A sprite may be recorded many times. Past this point, updating all is cheaper.
+            if(numDirty >= 2 * num_sprites)
             {
-                VGDLSprite sp = spriteIt.next();
-                updateObservation(sp);
+                allDirty = true;
+                numDirty = 0;
+                return;
+            }
+            dirtySprites = Arrays.copyOf(dirtySprites, numDirty * 2);
+        }
+        dirtySprites[numDirty++] = ((long)sprite.getType() << 32) | sprite.spriteID;
+    }
+
+    /**
+     * Brings the observations (and the observation grid) up to date with the sprites
+     * that changed since the last call.
+     */
+    private void updateObservations()
+    {
+        if(observationGrid != null)
+        {
+            if(allDirty)
+            {
+                int typeIndex = spriteOrder.length-1;
+                for(int i = typeIndex; i >=0; --i)   //For update, opposite order than drawing.
+                {
+                    int spriteTypeInt = spriteOrder[i];
+
+                    Iterator<VGDLSprite> spriteIt = spriteGroups[spriteTypeInt].getSpriteIterator();
+                    if(spriteIt != null) while(spriteIt.hasNext())
+                    {
+                        VGDLSprite sp = spriteIt.next();
+                        if(!sp.hidden)
+                            updateObservation(sp);
+                    }
+                }
+            }else
+            {
+                for(int i = 0; i < numDirty; ++i)
+                {
+                    long entry = dirtySprites[i];
+                    //Sprites killed since then are not in their group any more.
+                    VGDLSprite sp = spriteGroups[(int)(entry >>> 32)].getSprite((int)entry);
+                    if(sp != null && !sp.hidden)
+                        updateObservation(sp);
+                }
+            }
+        }
+        numDirty = 0;
+        allDirty = false;
+    }
+
+    /**
+     * Updates the hash and the collision grid with the current state of a sprite,
+     * and takes note of it to update its observation later.
+     * @param sprite sprite that may have changed.
+     */
+    protected void spriteChanged(VGDLSprite sprite)
+    {
+        super.spriteChanged(sprite);
+        markDirty(sprite);
+    }
+
+    /**
+     * Updates the hash and the collision grid with the current state of all sprites,
+     * and takes note of it to update all observations later.
+     */
+    protected void allSpritesChanged()
+    {
+        super.allSpritesChanged();
+        if(observationGrid != null)
+            allDirty = true;
+    }
+
+    /**
+     * Gives the sprites that belong to this model to the pool of the thread, if sprite pooling
+     * is on. Sprites shared with other copies are not given. The model must not be used after
+     * this call, and it is meant for copies that are discarded, like those of a rollout.
+     */
+    final public void release()
+    {
+        if(!spritePooling)
+            return;
+
+        SpritePool pool = SpritePool.get();
+        for(int i = 0; i < spriteGroups.length; ++i)
+        {
+            SpriteGroup group = spriteGroups[i];
+            int numSprites = group.numSprites();
+            for(int j = 0; j < numSprites; ++j)
+            {
+                VGDLSprite sprite = group.getSpriteAt(j);
+                if(sprite.generation == generation)
+                    pool.give(i, sprite);
             }
         }
     }
@@ -567,9 +1121,18 @@ public class ForwardModel extends Game
      */
     final public ForwardModel copy()
     {
-        ForwardModel copyObs = new ForwardModel(this);
-        copyObs.update(this);
-        return copyObs;
+        return new ForwardModel(this);
+    }
+
+    /**
+     * Creates a compact copy of the current state of this model.
+     * @return the compact state, or null if the game (or this state) is not supported by CompactState.
+     */
+    final public CompactState compact()
+    {
+        if(compactRules == null)
+            return null;
+        return CompactState.create(compactRules, this);
     }
 
     /**
@@ -748,6 +1311,27 @@ public class ForwardModel extends Game
      */
     private ArrayList<Observation>[] getPositionsFrom(boolean[] groupArray, Vector2d refPosition)
     {
+        return getPositionsFrom(groupArray, refPosition, 0, null);
+    }
+
+    /**
+     * Gets position from the sprites corresponding to the boolean map passed by parameter,
+     * reusing the array and lists received if possible.
+     * @param groupArray boolean map that indicates which sprite types must be considered.
+     * @param refPosition reference position to sort the observations by distance (null: unsorted).
+     * @param k maximum number of observations of each type, the closest to the reference
+     *          position (only if there is one). 0 or less means all of them.
+     * @param buffer array returned by a previous call (or null). It is reused (with its lists)
+     *               if it has one entry per sprite type of this category.
+     * @return List of arrays with Observations. Each entry in the array corresponds to a different
+     * sprite type.
+     */
+    private ArrayList<Observation>[] getPositionsFrom(boolean[] groupArray, Vector2d refPosition,
+                                                      int k, ArrayList<Observation>[] buffer)
+    {
+        //Observations are updated below, but the grid must be kept consistent with them.
+        updateObservations();
+
         //First, get how many types we have. Need to consider hidden sprites out.
         int numDiffTypes = 0;
         for(int i = 0; i < groupArray.length; ++i)
@@ -762,10 +1346,18 @@ public class ForwardModel extends Game
         if(numDiffTypes == 0)
             return null; //Wait, no types? no sprites of this group then.
 
-        ArrayList<Observation>[] observations = new ArrayList[numDiffTypes];
+        ArrayList<Observation>[] observations = buffer;
+        if(buffer == null || buffer.length != numDiffTypes)
+        {
+            observations = new ArrayList[numDiffTypes];
+            if(buffer != null)
+                System.arraycopy(buffer, 0, observations, 0, Math.min(buffer.length, numDiffTypes));
+        }
+
         Vector2d reference = refPosition;
         if(refPosition == null)
             reference = Types.NIL;
+        boolean closestOnly = k > 0 && reference != Types.NIL;
 
         int idx = 0;
         for(int i = 0; i < groupArray.length; ++i)
@@ -773,22 +1365,33 @@ public class ForwardModel extends Game
             //For each one of the sprite types that belong to the specified category
             if(groupArray[i] && visibleList[i])
             {
-                observations[idx] = new ArrayList<Observation>();
-                Iterator<VGDLSprite> spriteIt = spriteGroups[i].getSpriteIterator();
-                if(spriteIt != null) while(spriteIt.hasNext())
+                ArrayList<Observation> list = observations[idx];
+                if(list == null)
+                    list = observations[idx] = new ArrayList<Observation>();
+                else
+                    list.clear();
+
+                SpriteGroup group = spriteGroups[i];
+                int numSprites = group.numSprites();
+                for(int j = 0; j < numSprites; ++j)
                 {
-                    VGDLSprite sp = spriteIt.next();
+                    VGDLSprite sp = group.getSpriteAt(j);
 
                     Observation observation = getSpriteObservation(sp);
-                    observation.update(i, sp.spriteID, sp.getPosition(), reference, getSpriteCategory(sp));
-
-                    observation.reference = reference;
-                    observations[idx].add(observation);
+                    Vector2d position = observation.position;
+                    if(position.x != sp.rect.x || position.y != sp.rect.y)
+                        position = sp.getPosition();
+                    observation.update(i, sp.spriteID, position, reference, getSpriteCategory(sp));
+
+                    if(closestOnly)
+                        addClosest(list, observation, k);
+                    else
+                        list.add(observation);
                 }
 
-                if(reference != Types.NIL)
+                if(reference != Types.NIL && !closestOnly)
                 {
-                    Collections.sort(observations[idx]);
+                    Collections.sort(list);
                 }
 
                 idx++;
@@ -798,12 +1401,112 @@ public class ForwardModel extends Game
         return observations;
     }
 
+    /**
+     * Adds an observation to a list that keeps the k observations closest to the reference,
+     * sorted by distance. Observations at the same distance keep their order of arrival,
+     * so the result is the same as the first k of a (stable) sort.
+     * @param closest list of closest observations.
+     * @param observation observation to add.
+     * @param k maximum size of the list.
+     */
+    private void addClosest(ArrayList<Observation> closest, Observation observation, int k)
+    {
+        int pos = closest.size();
+        while(pos > 0 && closest.get(pos-1).sqDist > observation.sqDist)
+            pos--;
+
+        if(pos < k)
+        {
+            if(closest.size() == k)
+                closest.remove(k-1);
+            closest.add(pos, observation);
+        }
+    }
+
+    /**
+     * Gets the boolean map of the sprite types of a category.
+     * @param category category of the sprites (Types.TYPE_*, except Types.TYPE_AVATAR).
+     * @return the boolean map of the sprite types.
+     */
+    private boolean[] getCategoryList(int category)
+    {
+        switch (category)
+        {
+            case Types.TYPE_RESOURCE: return resList;
+            case Types.TYPE_PORTAL: return portalList;
+            case Types.TYPE_NPC: return npcList;
+            case Types.TYPE_STATIC: return immList;
+            case Types.TYPE_FROMAVATAR: return fromAvatar;
+            case Types.TYPE_MOVABLE: return movList;
+        }
+        throw new IllegalArgumentException("Invalid category of sprites: " + category);
+    }
+
+    /**
+     * Gets the observations of the sprites of a category, reusing the array and lists of a
+     * previous call, and optionally keeping only the k closest of each type.
+     * @param category category of the sprites (Types.TYPE_*, except Types.TYPE_AVATAR).
+     * @param refPosition reference position to sort the observations by distance (null: unsorted).
+     * @param k maximum number of observations of each type (0 or less: all of them).
+     * @param buffer array returned by a previous call to reuse, or null.
+     * @return the observations of the category, one list per sprite type, or null if none.
+     */
+    public ArrayList<Observation>[] getPositions(int category, Vector2d refPosition, int k,
+                                                 ArrayList<Observation>[] buffer)
+    {
+        return getPositionsFrom(getCategoryList(category), refPosition, k, buffer);
+    }
+
+    /**
+     * Counts the sprites of a category that are not hidden.
+     * @param category category of the sprites (Types.TYPE_*, except Types.TYPE_AVATAR).
+     * @return the number of sprites of the category.
+     */
+    public int getCategoryCount(int category)
+    {
+        boolean[] groupArray = getCategoryList(category);
+        int count = 0;
+        for(int i = 0; i < groupArray.length; ++i)
+        {
+            if(!knownList[i] && spriteGroups[i].getFirstSprite() != null)
+                checkSpriteFeatures(spriteGroups[i].getFirstSprite(), i);
+
+            if(groupArray[i] && visibleList[i])
+                count += spriteGroups[i].numSprites();
+        }
+        return count;
+    }
+
     /**
      * Returns a grid with all observations in the level.
      * @return the grid of observations
      */
     public ArrayList<Observation>[][] getObservationGrid()
     {
+        if(observationGrid != null)
+        {
+            updateObservations();
+        }else
+        {
+            //Copies build their grid the first time it is requested.
+            createObservationGrid();
+            numDirty = 0;
+            allDirty = false;
+            for(int i = 0; i < spriteGroups.length; ++i)
+            {
+                Iterator<VGDLSprite> spriteIt = spriteGroups[i].getSpriteIterator();
+                if(spriteIt != null) while(spriteIt.hasNext())
+                {
+                    VGDLSprite sp = spriteIt.next();
+                    if(!sp.hidden)
+                    {
+                        Observation obs = getSpriteObservation(sp);
+                        obs.position = sp.getPosition();
+                        addObservationToGrid(obs, obs.position);
+                    }
+                }
+            }
+        }
         return observationGrid;
     }
 
@@ -813,6 +1516,17 @@ public class ForwardModel extends Game
      */
     public TreeSet<Event> getEventsHistory()
     {
+        return new TreeSet<Event>(getEvents());
+    }
+
+    /**
+     * Returns the history of events happened in this game so far, within the window.
+     * @return history of events.
+     */
+    public EventHistory getEvents()
+    {
+        if(eventWindow > 0)
+            return historicEvents.since(gameTick - eventWindow);
         return historicEvents;
     }
 
@@ -893,26 +1607,17 @@ public class ForwardModel extends Game
     {
         for(int i = 0; i < spriteGroups.length; ++i)
         {
-            ConcurrentHashMap<Integer, VGDLSprite> thisSpriteMap = this.spriteGroups[i].getSprites();
-            ConcurrentHashMap<Integer, VGDLSprite> otherSpriteMap = other.spriteGroups[i].getSprites();
-            if(thisSpriteMap.size() != otherSpriteMap.size())
-            {
-                if(thisSpriteMap.size() > 25 && otherSpriteMap.size() > 25)
-                {
-                    //For reasons I don't fully understand (balancing?), ConcurrentHashMap returns the keySet
-                    // in different order some times when there are many elements. This makes the update happen
-                    // in a different order and therefore (in stochastic environments) things change. If this
-                    // happens, we ignore this case (this scenario has only been seen in Firestorms so far).
-                    return true;
-                }
+            SpriteGroup thisGroup = this.spriteGroups[i];
+            SpriteGroup otherGroup = other.spriteGroups[i];
+            int numSprites = otherGroup.numSprites();
+            if(thisGroup.numSprites() != numSprites)
                 return false;
-            }
 
-            Set<Integer> allOtherSpriteKeys = otherSpriteMap.keySet();
-            for(Integer key : allOtherSpriteKeys)
+            for(int j = 0; j < numSprites; ++j)
             {
-                VGDLSprite sp = thisSpriteMap.get(key);
-                if(!otherSpriteMap.get(key).equivPosition(sp))
+                VGDLSprite otherSp = otherGroup.getSpriteAt(j);
+                VGDLSprite sp = thisGroup.getSprite(otherSp.spriteID);
+                if(!otherSp.equivPosition(sp))
                     return false;
             }
         }
@@ -925,4 +1630,38 @@ public class ForwardModel extends Game
 		throw new RuntimeException("buildLevel should not be called in this instance.");
 	}
 
+    /**
+     * State of the forward model before a step, kept to undo it.
+     */
+    private static class UndoStep
+    {
+        SpriteGroup[] spriteGroups;
+        boolean[] ownedGroups;
+        boolean[] knownList;
+        long generation;
+        int numCopies;
+        EventHistory historicEvents;
+        TimingWheel timeEffects;
+        boolean sharedTimeEffects;
+        MovingAvatar avatar;
+        RestorableRandom random;
+        long randomState;
+        int gameTick;
+        boolean isEnded;
+        Types.WINNER winner;
+        double score;
+        int nextSpriteID;
+        int num_sprites;
+        int[] spriteCounts;
+        long spriteHash;
+
+        UndoStep(int numSpriteTypes)
+        {
+            spriteGroups = new SpriteGroup[numSpriteTypes];
+            ownedGroups = new boolean[numSpriteTypes];
+            knownList = new boolean[numSpriteTypes];
+            spriteCounts = new int[numSpriteTypes];
+        }
+    }
+
 }
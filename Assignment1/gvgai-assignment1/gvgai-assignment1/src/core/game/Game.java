@@ -4,13 +4,12 @@ import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Rectangle;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.JOptionPane;
 
+import core.GameContext;
 import core.SpriteGroup;
 import core.VGDLFactory;
-import core.VGDLRegistry;
 import core.VGDLSprite;
 import core.VGDLViewer;
 import core.competition.CompetitionParameters;
@@ -33,6 +32,7 @@ import tools.KeyHandler;
 import tools.KeyInput;
 import tools.KeyPulse;
 import tools.Pair;
+import tools.Utils;
 import tools.Vector2d;
 import tools.WindowInput;
 import tools.pathfinder.Node;
@@ -66,6 +66,13 @@ public abstract class Game
      */
     protected Content[] classConst;
 
+    /**
+     * Sprites created from the content of each type, that new sprites of the type are copied
+     * from instead of being created by the factory. Created the first time a sprite of each
+     * type is added, and shared with the forward models of the game.
+     */
+    protected VGDLSprite[] prototypes;
+
     /**
      * Groups of sprites in the level. Each element of the array is a
      * collection of sprites of a given type, which is also the index
@@ -95,9 +102,9 @@ public abstract class Game
     protected ArrayList<Effect>[] eosEffects;
 
     /**
-     * List of TIME effects
+     * TIME effects waiting to be triggered.
      */
-    protected TreeSet<TimeEffect> timeEffects;
+    protected TimingWheel timeEffects;
 
 
     /**
@@ -109,7 +116,18 @@ public abstract class Game
      * Historic of events related to the avatar happened during the game.
      * The entries are ordered asc. by game step.
      */
-    protected TreeSet<Event> historicEvents;
+    protected EventHistory historicEvents;
+
+    /**
+     * Events of the current game step, not yet in historicEvents. They are added to it
+     * all at once at the end of eventHandling().
+     */
+    private Event[] stepEvents;
+
+    /**
+     * Number of events in stepEvents.
+     */
+    private int numStepEvents;
 
 
     /**
@@ -118,18 +136,57 @@ public abstract class Game
      */
     protected ArrayList<Integer>[] iSubTypes;
 
+    /**
+     * For each sprite type, the types it is a subtype of (those that have it in iSubTypes).
+     */
+    protected int[][] superTypes;
+
 
     /**
-     * For each entry, int identifier of sprite type, a list with all the itypes this
-     * sprite belongs to.
+     * Effects of the game, flattened in the order they are checked (see EffectTable). It is
+     * built the first time it is needed, and shared with the forward models of the game.
      */
-    protected ArrayList<Pair<Integer,Long>>[] shieldedEffects;
+    protected EffectTable effectTable;
 
+    /**
+     * Collision effects shielded in the current step, a bit for each shield of effectTable.
+     */
+    protected long[] shields;
+
+    /**
+     * Indicates if any bit of shields is on.
+     */
+    protected boolean shielded;
 
     /**
-     * Arraylist to hold collisions between objects in every frame
+     * Indicates if the score change of the effect being executed applies. Effects that only
+     * change the score under some condition set it (see setApplyScore()), as the effects are
+     * shared by all games of the same description.
      */
-    protected Bucket[] bucketList;
+    private boolean applyScore;
+
+    /**
+     * Sprites each effect has been applied to in the current step, for the effects that are
+     * applied only once per step to each sprite (see firstInStep()). Created when first needed.
+     */
+    private HashMap<Effect, ArrayList<VGDLSprite>> effectSprites;
+
+
+    /**
+     * Grid that holds the sprites by position, to find collisions between them. It is
+     * created the first time events are handled, and kept up to date from then on.
+     */
+    protected CollisionGrid collisionGrid;
+
+    /**
+     * Sprites that may collide with the one being checked (reused between checks).
+     */
+    private ArrayList<VGDLSprite> collisionCandidates = new ArrayList<VGDLSprite>();
+
+    /**
+     * Number of sprites of each type at the start of the current event loop.
+     */
+    private int[] typeCount;
 
     /**
      * Mapping between characters in the level and the entities they represent.
@@ -143,10 +200,21 @@ public abstract class Game
     protected ArrayList<Termination> terminations;
 
     /**
-     * List of sprites killed in the game.
+     * List of sprites killed in the current step (each of them only once, see VGDLSprite.is_killed).
      */
     protected ArrayList<VGDLSprite> kill_list;
 
+    /**
+     * Hash of all sprites of the game: XOR of the hash keys of all of them.
+     */
+    protected long spriteHash;
+
+    /**
+     * Sprites created in the current step. Their hash keys are checked again at the end of
+     * the step, as they are usually modified after being created.
+     */
+    protected ArrayList<VGDLSprite> newSprites = new ArrayList<VGDLSprite>();
+
     /**
      * Limit number of each resource type
      */
@@ -177,21 +245,36 @@ public abstract class Game
      */
     protected int num_sprites;
 
+    /**
+     * Number of sprites of each type, including the sprites of its subtypes. Kept up to date
+     * as sprites are added and removed, so the terminations don't count them on every step.
+     */
+    protected int[] spriteCounts;
+
     /**
      * Game tick
      */
     protected int gameTick;
 
     /**
-     * Key input
+     * Context of this game: registry of sprite types and factory of sprites.
+     */
+    protected GameContext context;
+
+    /**
+     * Parameters of the game, as read from its description.
+     */
+    protected GameContent gameContent;
+
+    /**
+     * Key input of this game. Each game has its own, so several games can be played at the same time.
      */
-    public static KeyHandler ki = CompetitionParameters.KEY_HANDLER == CompetitionParameters.KEY_INPUT ? 
-    		new KeyInput() : new KeyPulse();
+    public KeyHandler ki;
 
     /**
      * Handling when the window is closed
      */
-    public static WindowInput wi = new WindowInput();
+    public WindowInput wi;
     
     /**
      * Size of the block in pixels.
@@ -288,8 +371,8 @@ public abstract class Game
         definedEOSEffects = new ArrayList<Integer>();
         charMapping = new HashMap<Character,ArrayList<String>>();
         terminations = new ArrayList<Termination>();
-        historicEvents = new TreeSet<Event>();
-        timeEffects = new TreeSet<TimeEffect>();
+        historicEvents = EventHistory.EMPTY;
+        timeEffects = new TimingWheel();
 
         //Game attributes:
         size = new Dimension();
@@ -297,8 +380,6 @@ public abstract class Game
         disqualified = false;
         num_sprites = 0;
         nextSpriteID = 0;
-
-        loadDefaultConstr();
     }
 
     /**
@@ -307,8 +388,8 @@ public abstract class Game
     private void loadDefaultConstr()
     {
         //If more elements are added here, initSprites() must be modified accordingly!
-        VGDLRegistry.GetInstance().registerSprite("wall");
-        VGDLRegistry.GetInstance().registerSprite("avatar");
+        context.registry.registerSprite("wall");
+        context.registry.registerSprite("avatar");
     }
 
 
@@ -325,8 +406,8 @@ public abstract class Game
         spriteOrder = new int[spOrder.size()];
 
         //We need here the default 2 sprites:
-        avatarId = VGDLRegistry.GetInstance().getRegisteredSpriteValue("avatar");
-        wallId = VGDLRegistry.GetInstance().getRegisteredSpriteValue("wall");
+        avatarId = context.registry.getRegisteredSpriteValue("avatar");
+        wallId = context.registry.getRegisteredSpriteValue("wall");
 
         //1. "avatar" ALWAYS at the end of the array.
         spriteOrder[spriteOrder.length-1] = avatarId;
@@ -342,14 +423,14 @@ public abstract class Game
         }
 
         //Singletons
-        singletons = new boolean[VGDLRegistry.GetInstance().numSpriteTypes()];
+        singletons = new boolean[context.registry.numSpriteTypes()];
         for(Integer intId : sings)
         {
             singletons[intId] = true;
         }
 
         //Constructors, as many as number of sprite types, so they are accessed by its id:
-        classConst = new Content[VGDLRegistry.GetInstance().numSpriteTypes()];
+        classConst = new Content[context.registry.numSpriteTypes()];
 
         //By default, we have 2 constructors:
         Content wallConst = new SpriteContent("wall", "Immovable");
@@ -370,7 +451,7 @@ public abstract class Game
             String refClass = entry.getValue().referenceClass;
             if(refClass != null && refClass.equals("Resource"))
             {
-                VGDLSprite resourceTest = VGDLFactory.GetInstance().
+                VGDLSprite resourceTest = context.factory.
                         createSprite(entry.getValue(), new Vector2d(0,0), new Dimension(1,1));
                 resources.add((Resource)resourceTest);
             }
@@ -378,11 +459,9 @@ public abstract class Game
 
         //Structures to hold game sprites, as many as number of sprite types, so they are accessed by its id:
         spriteGroups = new SpriteGroup[classConst.length];
-        shieldedEffects = new ArrayList[classConst.length];
         collisionEffects = new ArrayList[classConst.length][classConst.length];
         eosEffects = new ArrayList[classConst.length];
         iSubTypes = new ArrayList[classConst.length];
-        bucketList = new Bucket[classConst.length];
         resources_limits = new int[classConst.length];
         resources_colors = new Color[classConst.length];
 
@@ -391,10 +470,7 @@ public abstract class Game
         {
             //Create the space for the sprites and effects of this type.
             spriteGroups[j] = new SpriteGroup(j);
-            shieldedEffects[j] = new ArrayList<>();
             eosEffects[j] = new ArrayList<Effect>();
-            timeEffects = new TreeSet<TimeEffect>();
-            bucketList[j] = new Bucket();
 
             //Declare the extended types list of this sprite type.
             iSubTypes[j] = (ArrayList<Integer>) ((SpriteContent)classConst[j]).subtypes.clone();
@@ -414,6 +490,9 @@ public abstract class Game
         if(!iSubTypes[avatarId].contains(avatarId))
             iSubTypes[avatarId].add(avatarId);
 
+        superTypes = superTypes(iSubTypes);
+        spriteCounts = new int[classConst.length];
+
         //Resources: use the list of resources created before to store limit and color of each resource.
         for(i = 0; i < resources.size(); ++i)
         {
@@ -468,7 +547,7 @@ public abstract class Game
     		}
     		
     		if(isLeafNode(current)){
-    			result.add(VGDLRegistry.GetInstance().getRegisteredSpriteKey(current));
+    			result.add(context.registry.getRegisteredSpriteKey(current));
     		}
     		else{
     			SpriteContent sc = (SpriteContent)classConst[current];
@@ -523,7 +602,7 @@ public abstract class Game
     	data.name = sc.identifier;
     	data.type = sc.referenceClass;
     	
-    	VGDLSprite sprite = VGDLFactory.GetInstance().createSprite(sc, new Vector2d(), new Dimension(1, 1));
+    	VGDLSprite sprite = context.factory.createSprite(sc, new Vector2d(), new Dimension(1, 1));
     	switch(getSpriteCategory(sprite)){
     	case Types.TYPE_NPC:
     		data.isNPC = true;
@@ -544,7 +623,7 @@ public abstract class Game
     	
     	ArrayList<String> dependentSprites = sprite.getDependentSprites();
     	for(String s:dependentSprites){
-    		ArrayList<String> expandedSprites = expandNonLeafNode(VGDLRegistry.GetInstance().getRegisteredSpriteValue(s));
+    		ArrayList<String> expandedSprites = expandNonLeafNode(context.registry.getRegisteredSpriteValue(s));
     		data.sprites.addAll(expandedSprites);
     	}
     	
@@ -573,9 +652,9 @@ public abstract class Game
      * @return a temproary avatar sprite
      */
     public VGDLSprite getTempAvatar(SpriteData sprite){
-    	avatarId = VGDLRegistry.GetInstance().getRegisteredSpriteValue(sprite.name);
+    	avatarId = context.registry.getRegisteredSpriteValue(sprite.name);
     	if(((SpriteContent)classConst[avatarId]).referenceClass != null){
-    		VGDLSprite result = VGDLFactory.GetInstance().createSprite((SpriteContent) classConst[avatarId], 
+    		VGDLSprite result = context.factory.createSprite((SpriteContent) classConst[avatarId], 
     				new Vector2d(), new Dimension(1, 1));
     		if(result != null){
     			return result;
@@ -603,7 +682,7 @@ public abstract class Game
     		
     		ArrayList<String> sprites = tr.getTerminationSprites();
     		for(String s:sprites){
-    			int itype = VGDLRegistry.GetInstance().getRegisteredSpriteValue(s);
+    			int itype = context.registry.getRegisteredSpriteValue(s);
     			if(isLeafNode(itype)){
     				td.sprites.add(s);
     			}
@@ -681,6 +760,8 @@ public abstract class Game
     public void reset()
     {
         num_sprites = 0;
+        spriteHash = 0;
+        newSprites.clear();
         winner = Types.WINNER.NO_WINNER;
         isEnded = false;
         gameTick=-1;
@@ -694,14 +775,12 @@ public abstract class Game
             //Create the space for the sprites and effects of this type.
             spriteGroups[i].clear();
         }
+        Arrays.fill(spriteCounts, 0);
         
         if(kill_list != null){
         	kill_list.clear();
         }
-        for(int j = 0; j < spriteGroups.length; ++j)
-        {
-            bucketList[j].clear();
-        }
+        collisionGrid = null;
 
         resetShieldEffects();
     }
@@ -715,14 +794,94 @@ public abstract class Game
         fwdModel.update(this);
     }
 
+    /**
+     * Creates a new game with the definition of this one (sprite types, effects, terminations...),
+     * as if the same description was parsed again. The definition is shared by both games, as it is
+     * with the forward models, but the time effects, which change while playing, are copied.
+     * Effects and terminations keep no state of their own, so the games can be played at the same
+     * time in different threads: what an effect needs for a particular game is kept in the game
+     * (see setApplyScore() and firstInStep()). The new game has no level.
+     * @return the new game.
+     */
+    Game newInstance()
+    {
+        Game game = context.factory.createGame(gameContent);
+
+        game.spriteOrder = spriteOrder;
+        game.singletons = singletons;
+        game.classConst = classConst;
+        game.collisionEffects = collisionEffects;
+        game.definedEffects = definedEffects;
+        game.eosEffects = eosEffects;
+        game.definedEOSEffects = definedEOSEffects;
+        game.iSubTypes = iSubTypes;
+        game.superTypes = superTypes;
+        game.charMapping = new HashMap<Character, ArrayList<String>>(charMapping);
+        game.terminations = terminations;
+        game.resources_limits = resources_limits;
+        game.resources_colors = resources_colors;
+        game.avatarId = avatarId;
+        game.wallId = wallId;
+        game.is_stochastic = is_stochastic;
+
+        game.effectTable = effectTable();
+        game.spriteGroups = new SpriteGroup[spriteGroups.length];
+        for(int i = 0; i < spriteGroups.length; ++i)
+            game.spriteGroups[i] = new SpriteGroup(i);
+
+        game.spriteCounts = new int[spriteGroups.length];
+        game.timeEffects = timeEffects.copy();
+
+        return game;
+    }
+
+    /**
+     * Builds in this game a level that is already built in another game with the same definition,
+     * copying its sprites. The path finder of the level is shared, as it does not change after it
+     * is built. The other game is only read, and it must not be played.
+     * @param level game with the level built.
+     */
+    void copyLevel(Game level)
+    {
+        size = new Dimension(level.size);
+        screenSize = new Dimension(level.screenSize);
+        block_size = level.block_size;
+        is_stochastic = level.is_stochastic;
+        pathf = level.pathf;
+
+        for(int i = 0; i < spriteGroups.length; ++i)
+        {
+            int numSprites = level.spriteGroups[i].numSprites();
+            for(int j = 0; j < numSprites; ++j)
+            {
+                VGDLSprite sp = level.spriteGroups[i].getSpriteAt(j).copy();
+                spriteGroups[i].addSprite(sp.spriteID, sp);
+                newSprites.add(sp);
+            }
+            num_sprites += numSprites;
+        }
+        spriteCounts = level.spriteCounts.clone();
+        nextSpriteID = level.nextSpriteID;
+        spriteHash = level.spriteHash;
+        kill_list = new ArrayList<VGDLSprite>();
+
+        fwdModel = new ForwardModel(this, level.fwdModel);
+        fwdModel.update(this);
+    }
+
     /**
      * Reads the parameters of a game type.
      * @param content list of parameter-value pairs.
      */
     protected void parseParameters(GameContent content)
     {
-        VGDLFactory factory = VGDLFactory.GetInstance();
-        Class refClass = VGDLFactory.registeredGames.get(content.referenceClass);
+        //The game is created by the factory of the context it is parsed in.
+        context = GameContext.current();
+        gameContent = content;
+        loadDefaultConstr();
+
+        VGDLFactory factory = context.factory;
+        Class refClass = factory.registeredGames.get(content.referenceClass);
         //System.out.inn("refClass" + refClass.toString());
         if (!this.getClass().equals(refClass)) {
             System.out.println("Error: Game subclass instance not the same as content.referenceClass" +
@@ -733,11 +892,9 @@ public abstract class Game
 
         factory.parseParameters(content, this);
 
-        if(key_handler != null && key_handler.equalsIgnoreCase("Pulse"))
-            CompetitionParameters.KEY_HANDLER = CompetitionParameters.KEY_PULSE;
-
-        ki = CompetitionParameters.KEY_HANDLER == CompetitionParameters.KEY_INPUT ?
-                new KeyInput() : new KeyPulse();
+        boolean pulse = (key_handler != null && key_handler.equalsIgnoreCase("Pulse")) ||
+                CompetitionParameters.KEY_HANDLER == CompetitionParameters.KEY_PULSE;
+        ki = pulse ? new KeyPulse() : new KeyInput();
     }
 
     /**
@@ -749,13 +906,20 @@ public abstract class Game
     protected void addSprite(VGDLSprite sprite, int itype)
     {
         sprite.spriteID = nextSpriteID;
-        spriteGroups[itype].addSprite(nextSpriteID++, sprite);
+        writableGroup(itype).addSprite(nextSpriteID++, sprite);
         num_sprites++;
+        updateSpriteCounts(itype, 1);
+
+        sprite.hashKey = 0;
+        updateHash(sprite);
+        newSprites.add(sprite);
+        if(collisionGrid != null)
+            collisionGrid.addLater(sprite);
 
         if(sprite.is_stochastic)
             this.is_stochastic = true;
 
-        if(itype == wallId)
+        if(itype == wallId && VGDLSprite.loadsImages())
         {
             sprite.loadImage("wall.png");
         }else if(itype == avatarId)
@@ -771,12 +935,47 @@ public abstract class Game
      */
     public int getNumSprites(int itype)
     {
-        int acum = 0;
-        for( Integer subtype : this.iSubTypes[itype] )
+        return spriteCounts[itype];
+    }
+
+    /**
+     * Adds a number of sprites to the counts of a type and the types it is a subtype of.
+     * @param itype type of the sprites (leaf of the hierarchy of types).
+     * @param change number of sprites added (negative if they are removed).
+     */
+    protected void updateSpriteCounts(int itype, int change)
+    {
+        int[] types = superTypes[itype];
+        for(int t = 0; t < types.length; ++t)
+            spriteCounts[types[t]] += change;
+    }
+
+    /**
+     * Finds the types each sprite type is a subtype of.
+     * @param subTypes subtypes of each type.
+     * @return the supertypes of each type, as many times as it is in their lists of subtypes.
+     */
+    private static int[][] superTypes(ArrayList<Integer>[] subTypes)
+    {
+        int[] numSuperTypes = new int[subTypes.length];
+        for(int t = 0; t < subTypes.length; ++t)
+            for(int s = 0; s < subTypes[t].size(); ++s)
+                numSuperTypes[subTypes[t].get(s)]++;
+
+        int[][] superTypes = new int[subTypes.length][];
+        for(int t = 0; t < subTypes.length; ++t)
+            superTypes[t] = new int[numSuperTypes[t]];
+
+        Arrays.fill(numSuperTypes, 0);
+        for(int t = 0; t < subTypes.length; ++t)
         {
-            acum += spriteGroups[subtype].numSprites();
+            for(int s = 0; s < subTypes[t].size(); ++s)
+            {
+                int sub = subTypes[t].get(s);
+                superTypes[sub][numSuperTypes[sub]++] = t;
+            }
         }
-        return acum;
+        return superTypes;
     }
 
     /**
@@ -819,9 +1018,9 @@ public abstract class Game
         VGDLViewer view = new VGDLViewer(this, player);
         JEasyFrame frame;
         frame = new JEasyFrame(view, "Java-VGDL");
+        wi = new WindowInput();
         frame.addKeyListener(ki);
         frame.addWindowListener(wi);
-        wi.windowClosed = false;
 
         //Determine the delay for playing with a good fps.
         double delay = CompetitionParameters.LONG_DELAY;
@@ -1044,21 +1243,24 @@ public abstract class Game
         //Now, do the avatar.
         avatar.preMovement();
         avatar.update(this);
+        spriteChanged(avatar);
         //random = new Random(this.gameTick * 100); //uncomment this for testing a new rnd generator after avatar's move
 
         int spriteOrderCount = spriteOrder.length;
         for(int i = spriteOrderCount-1; i >= 0 ; --i)
         {
             int spriteTypeInt = spriteOrder[i];
-            Integer[] keys = spriteGroups[spriteTypeInt].getKeys();
 
-            if(keys!=null) for(Integer spriteKey : keys)
+            //Sprites created during this loop are not updated until the next tick.
+            int numSprites = spriteGroups[spriteTypeInt].numSprites();
+            for(int j = 0; j < numSprites; ++j)
             {
-                VGDLSprite sp = spriteGroups[spriteTypeInt].getSprite(spriteKey);
+                VGDLSprite sp = spriteGroups[spriteTypeInt].getSpriteAt(j);
                 if(sp != avatar)
                 {
                     sp.preMovement();
                     sp.update(this);
+                    spriteChanged(sp);
                 }
 
             }
@@ -1071,56 +1273,52 @@ public abstract class Game
      */
     protected void eventHandling()
     {
-        //Array to indicate that the sprite type has no representative in collisions.
-        boolean noSprites[] = new boolean[spriteGroups.length];
+        //The collision grid is kept up to date as sprites move. Create it the first time.
+        if(collisionGrid == null)
+        {
+            collisionGrid = new CollisionGrid(screenSize, block_size, iSubTypes);
+            collisionGrid.updateAll(spriteGroups);
+            typeCount = new int[spriteGroups.length];
+        }
+
+        EffectTable table = effectTable();
+        if(effectSprites != null)
+            effectSprites.clear();
 
         //First, check the effects that are triggered in a timely manner.
-        while (timeEffects.size() > 0 && timeEffects.first().nextExecution <= gameTick)
+        while (timeEffects.hasDue(gameTick))
         {
-            TimeEffect ef = timeEffects.pollFirst();
+            TimeEffect ef = timeEffects.poll();
             int intId = ef.itype;
 
             //if intId==-1, we have no sprite
             if(intId == -1)
             {
                 //With no sprite, the effect is independent from particular sprites.
+                applyScore = true;
                 ef.execute(null,null,this);
+                if(ef.moves_other_sprites)
+                    allSpritesChanged();
 
                 //Affect score:
-                if(ef.applyScore)
+                if(ef.applyScore && applyScore)
                     this.score += ef.scoreChange;
 
             }else {
 
-                if (!noSprites[intId] && bucketList[intId].size() == 0) {
-                    //Take all the subtypes in the hierarchy of this sprite.
-                    ArrayList<Integer> allTypes = iSubTypes[intId];
-                    for (Integer itype : allTypes) {
-                        //Add all sprites of this subtype to the list of sprites.
-                        //This are sprites that could potentially collide with EOS
-                        Collection<VGDLSprite> sprites = this.getSprites(itype).values();
-                        for (VGDLSprite sp : sprites) {
-                            //bucketList[intId].insert(sp);
-                            bucketList[intId].add(sp);
+                //For all sprites of this type and its subtypes (that exist now).
+                int[] allTypes = table.subTypes[intId];
+                countSprites(allTypes);
+                for (int t = 0; t < allTypes.length; ++t) {
+                    int itype = allTypes[t];
+                    for (int j = 0; j < typeCount[itype]; ++j) {
+                        VGDLSprite s1 = spriteGroups[itype].getSpriteAt(j);
+                        //Check that they are not dead (could happen in this same cycle).
+                        if (!s1.is_killed) {
+                            executeEffect(ef, writableSprite(s1), null);
                         }
                     }
-
-                    //If no sprites were added here, mark it in the array.
-                    if (bucketList[intId].size() == 0)
-                        noSprites[intId] = true;
                 }
-
-                //For all sprites that can collide.
-                for (VGDLSprite s1 : bucketList[intId].getAllSprites()) {
-                    //Check that they are not dead (could happen in this same cycle).
-                    if (!kill_list.contains(s1)) {
-                        executeEffect(ef, s1, null);
-                    }
-                }
-
-                //Clear the array of sprites for this effect.
-                bucketList[intId].clear();
-                noSprites[intId] = false;
             }
 
             //If the time effect is repetitive, need to reinsert in the list of effects
@@ -1132,162 +1330,151 @@ public abstract class Game
         }
 
 
-        //Secondly, we handle single sprite events (EOS). Take each sprite itype that has
-        //a EOS effect defined.
-        for(Integer intId : definedEOSEffects)
+        //Secondly, we handle single sprite events (EOS), for each sprite type that has
+        //EOS effects defined and each one of its effects.
+        for(int e = 0; e < table.eosEffect.length; ++e)
         {
-            //For each effect that this sprite has assigned.
-            for(Effect ef : eosEffects[intId])
-            {
-                if(!noSprites[intId] && bucketList[intId].size() == 0)
-                {
-                    //Take all the subtypes in the hierarchy of this sprite.
-                    ArrayList<Integer> allTypes = iSubTypes[intId];
-                    for(Integer itype : allTypes)
-                    {
-                        //Add all sprites of this subtype to the list of sprites.
-                        //This are sprites that could potentially collide with EOS
-                        Collection<VGDLSprite> sprites = this.getSprites(itype).values();
-                        for(VGDLSprite sp : sprites)
-                        {
-                            //bucketList[intId].insert(sp);
-                            bucketList[intId].add(sp);
-                        }
-                    }
+            Effect ef = table.eosEffect[e];
 
-                    //If no sprites were added here, mark it in the array.
-                    if(bucketList[intId].size() == 0)
-                        noSprites[intId] = true;
-                }
-
-                //For all sprites that can collide.
-                for(VGDLSprite s1 : bucketList[intId].getAllSprites())
+            //For all sprites of this type and its subtypes (that exist now).
+            int[] allTypes = table.subTypes[table.eosType[e]];
+            countSprites(allTypes);
+            for(int t = 0; t < allTypes.length; ++t)
+            {
+                int itype = allTypes[t];
+                for(int j = 0; j < typeCount[itype]; ++j)
                 {
+                    VGDLSprite s1 = spriteGroups[itype].getSpriteAt(j);
                     //Check if they are at the edge to trigger the effect. Also check that they
                     //are not dead (could happen in this same cycle).
-                    if(isAtEdge(s1.rect) && !kill_list.contains(s1)) {
-                        executeEffect(ef, s1, null);
+                    if(isAtEdge(s1.rect) && !s1.is_killed) {
+                        executeEffect(ef, writableSprite(s1), null);
                     }
                 }
-
-                //Clear the array of sprites for this effect.
-                bucketList[intId].clear();
-                noSprites[intId] = false;
             }
-
         }
 
 
 
         // Now, we handle events between pairs of sprites, for each pair of sprites that
-        // has a paired effect defined:
-        for(Pair<Integer,Integer> p : definedEffects)
+        // has a paired effect defined, and each one of the (potential) multiple effects
+        // these two sprites could have defined between them.
+        int e = 0;
+        while(e < table.effect.length)
         {
-            // We iterate over the (potential) multiple effects that these
-            // two sprites could have defined between them.
-            for(Effect ef : collisionEffects[p.first][p.second])
-            {
-
-                if(shieldedEffects[p.first].size() > 0) {
-                    if (shieldedEffects[p.first].contains(new Pair(p.second, ef.hashCode)))
-                        continue;
-                }
-
+            Effect ef = table.effect[e];
+            int first = table.first[e];
+            int second = table.second[e];
 
-                for (int i = 0; i < bucketList.length; i++) {
-                    bucketList[i].clear();
-                    noSprites[i] = false;
-                }
-
-                // Consider the two types to populate the array bucketList, that encloses the sprites
-                // of both types that could take part in any interaction.
-                for(int intId : new int[]{p.first, p.second})
-                {
-                    if(!noSprites[intId] && bucketList[intId].size() == 0)
-                    {
-                        //Take all the subtypes in the hierarchy of this sprite.
-                        ArrayList<Integer> allTypes = iSubTypes[intId];
-                        for(Integer itype : allTypes)
-                        {
-                            //Add all sprites of this subtype to the list of sprites
-                            Collection<VGDLSprite> sprites = this.getSprites(itype).values();
-                            for(VGDLSprite sp : sprites)
-                            {
-                                bucketList[intId].add(sp);
-                            }
-                        }
+            if(shielded && (shields[table.shield[e] >> 6] & (1L << table.shield[e])) != 0)
+            {
+                e++;
+                continue;
+            }
 
-                        //If no sprites were added here, mark it in the array.
-                        if(bucketList[intId].size() == 0)
-                            noSprites[intId] = true;
-                    }
-                }
+            //Sprites created by previous effects can take part in this one.
+            collisionGrid.addPending(spriteGroups);
 
-                //Take the collections of sprites, one for each type, of the two sprite types of this effect.
-                TreeMap<Integer, ArrayList<VGDLSprite>> first = bucketList[p.first].getSpriteList();
-                TreeMap<Integer, ArrayList<VGDLSprite>> second = bucketList[p.second].getSpriteList();
+            // Take the sprites of both types (and their subtypes) that could take part in any interaction.
+            // If there are none, no other effect of this pair can happen either.
+            int[] allTypes = table.subTypes[first];
+            if(countSprites(allTypes) == 0 || countSprites(table.subTypes[second]) == 0)
+            {
+                e = table.nextPair[e];
+                continue;
+            }
+            countSprites(allTypes);
 
-                if(first.size() == 0 || second.size() == 0)
-                    break;
+            for(int t = 0; t < allTypes.length; ++t)
+            {
+                int itype = allTypes[t];
 
-                for(Integer bucket1 : first.keySet())
+                //For every sprite of the first type:
+                for(int j = 0; j < typeCount[itype]; ++j)
                 {
-                    //For each bucket with sprites of this collision pair, get the sprites of p.first.
-                    ArrayList<VGDLSprite> sprites1nBucket1 = first.get(bucket1);
+                    VGDLSprite s1 = spriteGroups[itype].getSpriteAt(j);
+                    if(s1.is_killed)
+                        continue;
 
-                    //For every sprite:
-                    if(sprites1nBucket1!=null)
-                        for(VGDLSprite s1 : sprites1nBucket1)
+                    //Take the sprites of the second type that could collide with it.
+                    collisionGrid.getCandidates(s1.rect, second, collisionCandidates);
+                    int numSprites2 = collisionCandidates.size();
+                    for(int idx2 = 0; idx2 < numSprites2; idx2++)
+                    {
+                        //Take each sprite of the second type and check for collision. The candidate
+                        //may have been replaced by a clone since it was taken (even by s1 itself).
+                        VGDLSprite s2 = currentSprite(collisionCandidates.get(idx2));
+                        if(s1 != s2 && s1.rect.intersects(s2.rect))
                         {
-                            //Decide in what buckets to look.
-                            int[] buckets;
-                            if(s1.bucketSharp)  buckets = new int[]{s1.bucket-1, s1.bucket};
-                            else                buckets = new int[]{s1.bucket, s1.bucket+1};
-
+                            s1 = writableSprite(s1);
+                            if(ef.writes_sprite2)
+                                s2 = writableSprite(s2);
+                            executeEffect(ef, s1, s2);
 
-                            for(int bucketId : buckets)
-                            {
-                                //On each bucket, take the sprites if the p.second sprite type.
-                                ArrayList<VGDLSprite> spritesInBucket2 = second.get(bucketId);
-                                if(spritesInBucket2 != null && !kill_list.contains(s1))
-                                {
-                                    int numSprites2 = spritesInBucket2.size();
-                                    s2loop: for(int idx2 = 0; idx2 < numSprites2; idx2++)
-                                    {
-                                        //Take each sprite of p.second and check for collision
-                                        VGDLSprite s2 = spritesInBucket2.get(idx2);
-                                        if(s1 != s2 && s1.rect.intersects(s2.rect))
-                                        {
-                                            executeEffect(ef, s1, s2);
+                            if(s1.is_killed)
+                                break; //Stop checking sprite 1 if it was killed.
 
-                                            if(kill_list.contains(s1))
-                                                break s2loop; //Stop checking sprite 1 if it was killed.
-
-                                        }
+                        }
 
-                                    } //end FOR sprites s2.
+                    } //end FOR sprites s2.
 
-                                }
+                }//end FOR sprites s1
 
-                            } //end FOR buckets p.second.
+            }//end FOR types of the first sprite
 
-                        }//end FOR sprites s1
+            e++;
 
-                }//end FOR buckets p.first
+        }//end FOR all effects in game.
 
-            }//end FOR each effect registered between p.first and p.second
+        flushHistoricEvents();
+    }
 
-        }//end FOR all effects in game.
+    /**
+     * Gets the table of effects of the game, building it the first time.
+     * @return the table of effects.
+     */
+    protected EffectTable effectTable()
+    {
+        if(effectTable == null)
+            effectTable = EffectTable.compile(this);
+        return effectTable;
+    }
 
+    /**
+     * Counts the sprites of the given types, leaving the number of sprites of
+     * each type in typeCount.
+     * @param itypes types to count.
+     * @return the total number of sprites.
+     */
+    private int countSprites(int[] itypes)
+    {
+        int total = 0;
+        for(int t = 0; t < itypes.length; ++t)
+        {
+            int itype = itypes[t];
+            typeCount[itype] = spriteGroups[itype].numSprites();
+            total += typeCount[itype];
+        }
+        return total;
     }
 
     private void executeEffect(Effect ef, VGDLSprite s1, VGDLSprite s2)
     {
         //There is a collision. Apply the effect.
+        applyScore = true;
         ef.execute(s1,s2,this);
 
+        //Keep the hash and the collision grid up to date with the changes made by the effect.
+        if(ef.moves_other_sprites)
+            allSpritesChanged();
+        else
+        {
+            if(s1 != null) spriteChanged(s1);
+            if(s2 != null) spriteChanged(s2);
+        }
+
         //Affect score:
-        if(ef.applyScore)
+        if(ef.applyScore && applyScore)
             this.score += ef.scoreChange;
 
         //Add to events history.
@@ -1295,25 +1482,119 @@ public abstract class Game
             addEvent(s1, s2);
     }
 
+    /**
+     * Sets if the score change of the effect being executed applies. It does by default; effects
+     * that change the score only under some condition (i.e. KillIfHasMore) call this from execute().
+     * @param applyScore true if the score change of the effect applies this time.
+     */
+    public void setApplyScore(boolean applyScore)
+    {
+        this.applyScore = applyScore;
+    }
+
+    /**
+     * Records that an effect is applied to a sprite in the current step, for the effects that are
+     * applied only once per step to each sprite (i.e. PullWithIt).
+     * @param effect the effect being executed.
+     * @param sprite the sprite it is applied to.
+     * @return true if the effect had not been applied to the sprite yet in this step.
+     */
+    public boolean firstInStep(Effect effect, VGDLSprite sprite)
+    {
+        if(effectSprites == null)
+            effectSprites = new HashMap<Effect, ArrayList<VGDLSprite>>();
+
+        ArrayList<VGDLSprite> sprites = effectSprites.get(effect);
+        if(sprites == null)
+        {
+            sprites = new ArrayList<VGDLSprite>();
+            effectSprites.put(effect, sprites);
+        }
+        else if(sprites.contains(sprite))
+            return false;
+
+        sprites.add(sprite);
+        return true;
+    }
+
     private void addEvent(VGDLSprite s1, VGDLSprite s2)
     {
         if(s1.is_avatar)
-            historicEvents.add(new Event(gameTick, false, s1.getType(), s2.getType(),
+            addHistoricEvent(new Event(gameTick, false, s1.getType(), s2.getType(),
                                          s1.spriteID, s2.spriteID, s1.getPosition()));
 
         else if(s1.is_from_avatar)
-            historicEvents.add(new Event(gameTick, true, s1.getType(), s2.getType(),
+            addHistoricEvent(new Event(gameTick, true, s1.getType(), s2.getType(),
                                          s1.spriteID, s2.spriteID, s1.getPosition()));
 
         else if(s2.is_avatar)
-            historicEvents.add(new Event(gameTick, false, s2.getType(), s1.getType(),
+            addHistoricEvent(new Event(gameTick, false, s2.getType(), s1.getType(),
                                          s2.spriteID, s1.spriteID, s2.getPosition()));
 
         else if(s2.is_from_avatar)
-            historicEvents.add(new Event(gameTick, true, s2.getType(), s1.getType(),
+            addHistoricEvent(new Event(gameTick, true, s2.getType(), s1.getType(),
                                          s2.spriteID, s1.spriteID, s2.getPosition()));
     }
 
+    /**
+     * Adds an event to the events of the current game step. They are added to the
+     * history of events of the game by flushHistoricEvents().
+     * @param event the event to add.
+     */
+    protected void addHistoricEvent(Event event)
+    {
+        if(stepEvents == null)
+            stepEvents = new Event[16];
+        else if(numStepEvents == stepEvents.length)
+            stepEvents = Arrays.copyOf(stepEvents, numStepEvents * 2);
+        stepEvents[numStepEvents++] = event;
+    }
+
+    /**
+     * Adds the events of the current game step to the history of events of the game.
+     */
+    protected void flushHistoricEvents()
+    {
+        if(numStepEvents == 0)
+            return;
+
+        historicEvents = historicEvents.appendAll(stepEvents, numStepEvents);
+        Arrays.fill(stepEvents, 0, numStepEvents, null);
+        numStepEvents = 0;
+    }
+
+    /**
+     * Gets a version of the sprite received that can be modified in place. The Game
+     * always owns its sprites, so the sprite is returned as it is.
+     * @param sprite sprite about to be modified.
+     * @return the sprite to modify.
+     */
+    protected VGDLSprite writableSprite(VGDLSprite sprite)
+    {
+        return sprite;
+    }
+
+    /**
+     * Gets the version of a sprite that is in its sprite group now. The Game never
+     * replaces its sprites, so the sprite is returned as it is.
+     * @param sprite sprite taken from the group (or the collision grid) earlier in this step.
+     * @return the current version of the sprite.
+     */
+    protected VGDLSprite currentSprite(VGDLSprite sprite)
+    {
+        return sprite;
+    }
+
+    /**
+     * Gets the group of sprites of the given type, ready to add or remove sprites.
+     * @param itype type of the sprites of the group.
+     * @return the sprite group to modify.
+     */
+    protected SpriteGroup writableGroup(int itype)
+    {
+        return spriteGroups[itype];
+    }
+
     /**
      * Checks if a given rectangle is at the edge of the screen.
      * @param rect the rectangle to check
@@ -1353,10 +1634,16 @@ public abstract class Game
      */
     protected void clearAll(ForwardModel fm)
     {
-        for(VGDLSprite sprite : kill_list)
+        int numKilled = kill_list.size();
+        for(int i = 0; i < numKilled; ++i)
         {
+            VGDLSprite sprite = kill_list.get(i);
             int spriteType = sprite.getType();
-            this.spriteGroups[spriteType].removeSprite(sprite.spriteID);
+            spriteHash ^= sprite.hashKey;
+            writableGroup(spriteType).removeSprite(sprite.spriteID);
+            updateSpriteCounts(spriteType, -1);
+            if(collisionGrid != null)
+                collisionGrid.remove(sprite);
             if(fm != null) {
                 fm.removeSpriteObservation(sprite);
             }
@@ -1368,23 +1655,89 @@ public abstract class Game
             num_sprites--;
 
         }
-        kill_list.clear();
 
-        for(int j = 0; j < spriteGroups.length; ++j)
+        //Sprites created in this step that are still alive.
+        for(VGDLSprite sprite : newSprites)
         {
-            bucketList[j].clear();
+            VGDLSprite current = spriteGroups[sprite.getType()].getSprite(sprite.spriteID);
+            if(current != null)
+                updateHash(current);
         }
+        newSprites.clear();
+
+        //Only now killed sprites are not referenced anymore.
+        for(int i = 0; i < numKilled; ++i)
+        {
+            VGDLSprite sprite = kill_list.get(i);
+            recycleSprite(sprite, sprite.getType());
+        }
+        kill_list.clear();
 
         resetShieldEffects();
     }
 
+    /**
+     * Updates the hash of the game with the current state of a sprite of the game.
+     * @param sprite sprite that may have changed.
+     */
+    protected void updateHash(VGDLSprite sprite)
+    {
+        long key = sprite.hashKey();
+        if(key != sprite.hashKey)
+        {
+            spriteHash ^= sprite.hashKey ^ key;
+            sprite.hashKey = key;
+        }
+    }
+
+    /**
+     * Updates the hash of the game and the collision grid with the current state of a sprite.
+     * @param sprite sprite that may have changed.
+     */
+    protected void spriteChanged(VGDLSprite sprite)
+    {
+        updateHash(sprite);
+        if(collisionGrid != null)
+            collisionGrid.update(sprite);
+    }
+
+    /**
+     * Updates the hash of the game and the collision grid with the current state of all sprites.
+     */
+    protected void allSpritesChanged()
+    {
+        for(int i = 0; i < spriteGroups.length; ++i)
+        {
+            Iterator<VGDLSprite> spriteIt = spriteGroups[i].getSpriteIterator();
+            if(spriteIt != null) while(spriteIt.hasNext())
+                updateHash(spriteIt.next());
+        }
+        if(collisionGrid != null)
+            collisionGrid.updateAll(spriteGroups);
+    }
+
+    /**
+     * Gets a 64-bit hash of the state of the game. Equivalent states (same sprites with
+     * the same positions, orientations and resources, and the same winner) have the same
+     * hash. The hash is updated incrementally as the game advances, so this is O(1).
+     * @return the hash of the game state.
+     */
+    public long getHash()
+    {
+        long gameKey = ((long)winner.ordinal() << 1) | (isEnded ? 1 : 0);
+        return spriteHash ^ Utils.mix64(gameKey);
+    }
+
     /**
      * Cleans the array of shielded effects.
      */
     private void resetShieldEffects()
     {
-        for(int i =0; i < shieldedEffects.length; ++i)
-            shieldedEffects[i].clear();
+        if(shielded)
+        {
+            Arrays.fill(shields, 0);
+            shielded = false;
+        }
     }
 
     /**
@@ -1395,8 +1748,15 @@ public abstract class Game
      */
     public void addShield(int type1, int type2, long functHash)
     {
-        Pair newShield = new Pair(type2, functHash);
-        shieldedEffects[type1].add(newShield);
+        //Only the collision effects defined between these types can be shielded.
+        int shield = effectTable().findShield(type1, type2, functHash);
+        if(shield == -1)
+            return;
+
+        if(shields == null)
+            shields = new long[(effectTable.numShields + 63) >> 6];
+        shields[shield >> 6] |= 1L << shield;
+        shielded = true;
     }
 
     /**
@@ -1452,11 +1812,19 @@ public abstract class Game
         //Only create the sprite if there is not any other sprite that blocks it.
         if(!anyother)
         {
-            VGDLSprite newSprite = VGDLFactory.GetInstance().createSprite(
-                    content , position, new Dimension(block_size, block_size));
+            VGDLSprite newSprite;
+            if(content == classConst[itype])
+            {
+                newSprite = createSprite(itype, position);
+            }else{
+                newSprite = context.factory.createSprite(
+                        content , position, new Dimension(block_size, block_size));
+
+                //Assign its types.
+                newSprite.itypes = (ArrayList<Integer>) content.itypes.clone();
+            }
 
-            //Assign its types and add it to the collection of sprites.
-            newSprite.itypes = (ArrayList<Integer>) content.itypes.clone();
+            //Add it to the collection of sprites.
             this.addSprite(newSprite, itype);
             return newSprite;
         }
@@ -1464,6 +1832,81 @@ public abstract class Game
         return null;
     }
 
+    /**
+     * Creates a sprite of a given type, copying the prototype of the type. The sprite is not
+     * added to the game.
+     * @param itype integer identifier of the type of the sprite.
+     * @param position where the sprite has to be placed.
+     * @return the new sprite.
+     */
+    public VGDLSprite createSprite(int itype, Vector2d position)
+    {
+        VGDLSprite prototype = getPrototype(itype);
+        VGDLSprite newSprite = recycledSprite(itype, prototype.getClass());
+        if(newSprite == null)
+            newSprite = prototype.copy();
+        else
+            prototype.copyTo(newSprite);
+
+        //Sprites created by the factory take their orientation from Types, and some
+        //sprites (i.e. SpawnPoint) compare it by reference, so it is not a copy here.
+        newSprite.orientation = prototype.orientation;
+        newSprite.rect.setLocation((int) position.x, (int) position.y);
+        newSprite.lastrect.setBounds(newSprite.rect);
+        return newSprite;
+    }
+
+    /**
+     * Gets a sprite killed before, to be reused for a new sprite. Games don't keep
+     * killed sprites, but forward models can (see ForwardModel.setSpritePooling()).
+     * @param itype type of the sprite needed.
+     * @param spriteClass class of the sprite needed.
+     * @return the sprite, to be reset with copyTo(), or null if there is none.
+     */
+    protected VGDLSprite recycledSprite(int itype, Class<? extends VGDLSprite> spriteClass)
+    {
+        return null;
+    }
+
+    /**
+     * Called for each sprite killed once it has been removed from the game, so it can be
+     * kept to be reused. Games don't keep killed sprites.
+     * @param sprite the sprite removed.
+     * @param itype type of the sprite.
+     */
+    protected void recycleSprite(VGDLSprite sprite, int itype)
+    {
+    }
+
+    /**
+     * Gets the prototype of a sprite type, creating it from its content the first time. It is
+     * created again if the size of the blocks has changed, or if it has no image and images are
+     * loaded now. The prototypes can be shared by forward models in other threads, so they are
+     * accessed under a lock.
+     * @param itype integer identifier of the type of the sprite.
+     * @return the prototype of the type. It must not be modified.
+     */
+    private VGDLSprite getPrototype(int itype)
+    {
+        if(prototypes == null)
+            prototypes = new VGDLSprite[classConst.length];
+
+        synchronized (prototypes)
+        {
+            VGDLSprite prototype = prototypes[itype];
+            if(prototype == null || prototype.rect.width != block_size
+                    || (prototype.image == null && prototype.img != null && VGDLSprite.loadsImages()))
+            {
+                SpriteContent content = (SpriteContent) classConst[itype];
+                prototype = context.factory.createSprite(
+                        content, new Vector2d(0, 0), new Dimension(block_size, block_size));
+                prototype.itypes = new ArrayList<Integer>(content.itypes);
+                prototypes[itype] = prototype;
+            }
+            return prototype;
+        }
+    }
+
 
     public void _updateCollisionDict(VGDLSprite sprite) {}
 
@@ -1482,7 +1925,11 @@ public abstract class Game
      */
     public void killSprite(VGDLSprite sprite)
     {
-        kill_list.add(sprite);
+        if(!sprite.is_killed)
+        {
+            sprite.is_killed = true;
+            kill_list.add(sprite);
+        }
     }
 
     /**
@@ -1508,10 +1955,10 @@ public abstract class Game
         ArrayList<Integer> allTypes = iSubTypes[spriteItype];
 
         //Add sprites of this type, and all subtypes.
-        allSprites.addAllSprites(this.getSprites(spriteItype).values());
+        allSprites.addAllSprites(this.getSprites(spriteItype));
         for(Integer itype : allTypes)
         {
-            allSprites.addAllSprites(this.getSprites(itype).values());
+            allSprites.addAllSprites(this.getSprites(itype));
         }
 
         //Return the iterator.
@@ -1523,7 +1970,7 @@ public abstract class Game
      * @param spriteItype type of the sprite to retrieve.
      * @return sprite collection of the specified type.
      */
-    public ConcurrentHashMap<Integer, VGDLSprite> getSprites(int spriteItype)
+    public List<VGDLSprite> getSprites(int spriteItype)
     {
         return spriteGroups[spriteItype].getSprites();
     }
@@ -1694,6 +2141,12 @@ public abstract class Game
      */
     public Types.WINNER getWinner() {return winner;}
 
+    /**
+     * Gets the context of this game, with its registry of sprite types and its factory.
+     * @return the context of the game.
+     */
+    public GameContext getContext() {return context;}
+
 
     /**
      * Gets the order in which the sprites are drawn.
@@ -1702,6 +2155,14 @@ public abstract class Game
     public int[] getSpriteOrder() {return spriteOrder;}
 
 
+    /**
+     * Gets the definition of a type of sprite, as read from the game description.
+     * @param itype integer identifier of the type of the sprite.
+     * @return the content of the type. It must not be modified.
+     */
+    public Content getSpriteContent(int itype) {return classConst[itype];}
+
+
     /**
      * Indicates how many pixels form a block in the game.
      * @return how many pixels form a block in the game.
@@ -1730,67 +2191,5 @@ public abstract class Game
 
         return pathf.getPath(pathStart, pathEnd);
     }
-    
-    /**
-     * Class for helping collision detection.
-     */
-    protected class Bucket
-    {
-        ArrayList<VGDLSprite> allSprites;
-        TreeMap<Integer, ArrayList<VGDLSprite>> spriteLists;
-        int totalNumSprites;
-
-        public Bucket()
-        {
-            allSprites = new ArrayList<VGDLSprite>();
-            spriteLists = new TreeMap<Integer, ArrayList<VGDLSprite>>();
-            totalNumSprites = 0;
-        }
-
-        public void clear()
-        {
-            allSprites.clear();
-            spriteLists.clear();
-            totalNumSprites = 0;
-        }
-
-        public void add(VGDLSprite sp)
-        {
-            int bucket = sp.bucket;
-            ArrayList<VGDLSprite> sprites = spriteLists.get(bucket);
-            if(sprites == null)
-            {
-                sprites = new ArrayList<VGDLSprite>();
-                spriteLists.put(bucket, sprites);
-            }
-            sprites.add(sp);
-            allSprites.add(sp);
-            totalNumSprites++;
-        }
-
-        public int size()
-        {
-            return totalNumSprites;
-        }
-
-        public int size(int bucket)
-        {
-            ArrayList<VGDLSprite> sprites = spriteLists.get(bucket);
-            if(sprites == null)
-                return 0;
-            return sprites.size();
-        }
-
-        public ArrayList<VGDLSprite> getAllSprites()
-        {
-            return allSprites;
-        }
-
-        public TreeMap<Integer, ArrayList<VGDLSprite>> getSpriteList()
-        {
-            return spriteLists;
-        }
-
-    }
 
 }
@@ -5,7 +5,6 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
-import core.VGDLRegistry;
 import core.termination.Termination;
 import ontology.Types;
 import ontology.avatar.MovingAvatar;
@@ -266,8 +265,8 @@ public class GameDescription {
 	 * @return			an array of all possible effects. If there is no effects, an empty array is returned
 	 */
 	public ArrayList<GameDescription.InteractionData> getInteraction(String stype1, String stype2){
-		int itype1 = VGDLRegistry.GetInstance().getRegisteredSpriteValue(stype1);
-		int itype2 = VGDLRegistry.GetInstance().getRegisteredSpriteValue(stype2);
+		int itype1 = currentGame.getContext().registry.getRegisteredSpriteValue(stype1);
+		int itype2 = currentGame.getContext().registry.getRegisteredSpriteValue(stype2);
 		
 		return currentGame.getInteractionData(itype1, itype2);
 	}
@@ -0,0 +1,92 @@
+package core.game;
+
+import java.util.HashMap;
+
+import core.VGDLParser;
+
+/**
+ * Compiled game description. The description file is parsed only once, the first time a template
+ * is requested for it. New games take the parsed definition (sprite contents, effects, terminations...)
+ * from the template instead of parsing the file again.
+ * <p/>
+ * Levels are cached too: a level file is read and built once, and the games that play it get a copy
+ * of its sprites. Templates are shared by all threads, so games of the same description can be
+ * created and played at the same time. The games share the effects and terminations of the
+ * template, which keep no state of their own (see Game.newInstance()).
+ */
+public final class GameTemplate
+{
+    /**
+     * Templates already compiled, by game description file.
+     */
+    private static final HashMap<String, GameTemplate> templates = new HashMap<String, GameTemplate>();
+
+    /**
+     * Game parsed from the description. It never gets a level, nor it is played.
+     */
+    private final Game definition;
+
+    /**
+     * Levels already built, by level file. These games are never played.
+     */
+    private final HashMap<String, Game> levels;
+
+    private GameTemplate(Game definition)
+    {
+        this.definition = definition;
+        this.levels = new HashMap<String, Game>();
+    }
+
+    /**
+     * Gets the template of a game, parsing its description the first time.
+     * @param gameFile game description file.
+     * @return the template of the game.
+     */
+    public static GameTemplate load(String gameFile)
+    {
+        synchronized(templates)
+        {
+            GameTemplate template = templates.get(gameFile);
+            if(template == null)
+            {
+                template = new GameTemplate(new VGDLParser().parseGame(gameFile));
+                templates.put(gameFile, template);
+            }
+            return template;
+        }
+    }
+
+    /**
+     * Creates a new game, without a level. It can be built with buildLevel() or buildStringLevel().
+     * @return the new game.
+     */
+    public Game newGame()
+    {
+        return definition.newInstance();
+    }
+
+    /**
+     * Creates a new game, with a level built. The level file is read and built only the first time.
+     * Sprites have images only if that was done in a thread that loads them (see VGDLSprite.loadImages).
+     * @param levelFile file with the level.
+     * @return the new game, ready to be played.
+     */
+    public Game newGame(String levelFile)
+    {
+        Game level;
+        synchronized(levels)
+        {
+            level = levels.get(levelFile);
+            if(level == null)
+            {
+                level = definition.newInstance();
+                level.buildLevel(levelFile);
+                levels.put(levelFile, level);
+            }
+        }
+
+        Game game = definition.newInstance();
+        game.copyLevel(level);
+        return game;
+    }
+}
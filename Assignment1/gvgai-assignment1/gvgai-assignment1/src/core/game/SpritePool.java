@@ -0,0 +1,104 @@
+package core.game;
+
+import java.util.Arrays;
+
+import core.VGDLSprite;
+
+/**
+ * Sprites killed in forward models, kept to be reused for new sprites and for the copies of
+ * shared sprites, instead of leaving them to the garbage collector. There is a pool per thread,
+ * used by all the forward models simulated in it, with a list of sprites per sprite type.
+ * <p/>
+ * A sprite is taken from the list of its type only if it is of the same class that is needed,
+ * so games with different definitions can be simulated in the same thread.
+ */
+final class SpritePool
+{
+    /**
+     * Maximum number of sprites kept for each sprite type.
+     */
+    private static final int MAX_SPRITES_PER_TYPE = 256;
+
+    /**
+     * Pool of each thread.
+     */
+    private static final ThreadLocal<SpritePool> pools = new ThreadLocal<SpritePool>()
+    {
+        @Override
+        protected SpritePool initialValue()
+        {
+            return new SpritePool();
+        }
+    };
+
+    /**
+     * Sprites kept, by sprite type. Only the first sizes[itype] are valid.
+     */
+    private VGDLSprite[][] sprites = new VGDLSprite[0][];
+
+    /**
+     * Number of sprites kept for each sprite type.
+     */
+    private int[] sizes = new int[0];
+
+    private SpritePool() {}
+
+    /**
+     * Returns the pool of the current thread.
+     * @return the pool.
+     */
+    static SpritePool get()
+    {
+        return pools.get();
+    }
+
+    /**
+     * Takes a sprite of the given type and class from the pool.
+     * @param itype type of the sprite.
+     * @param spriteClass class of the sprite.
+     * @return a sprite, that must be reset (i.e. with copyTo()) before using it, or null if there
+     *         is none available.
+     */
+    VGDLSprite take(int itype, Class<? extends VGDLSprite> spriteClass)
+    {
+        if(itype >= sizes.length || sizes[itype] == 0)
+            return null;
+
+        int last = sizes[itype] - 1;
+        VGDLSprite sprite = sprites[itype][last];
+        if(sprite.getClass() != spriteClass)
+            return null;
+
+        sprites[itype][last] = null;
+        sizes[itype] = last;
+        sprite.is_killed = false;
+        return sprite;
+    }
+
+    /**
+     * Gives a sprite back to the pool. Nothing else may keep a reference to it.
+     * @param itype type of the sprite.
+     * @param sprite the sprite.
+     */
+    void give(int itype, VGDLSprite sprite)
+    {
+        if(itype >= sizes.length)
+        {
+            int length = Math.max(itype + 1, sizes.length * 2);
+            sizes = Arrays.copyOf(sizes, length);
+            sprites = Arrays.copyOf(sprites, length);
+        }
+
+        int size = sizes[itype];
+        if(size == MAX_SPRITES_PER_TYPE)
+            return;
+
+        if(sprites[itype] == null)
+            sprites[itype] = new VGDLSprite[8];
+        else if(size == sprites[itype].length)
+            sprites[itype] = Arrays.copyOf(sprites[itype], size * 2);
+
+        sprites[itype][size] = sprite;
+        sizes[itype] = size + 1;
+    }
+}
@@ -3,11 +3,11 @@ package core.game;
 import java.awt.Dimension;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Set;
 import java.util.TreeSet;
 
 import ontology.Types;
+import tools.KeyHandler;
 import tools.Vector2d;
 
 /**
@@ -57,6 +57,59 @@ public class StateObservation {
         model.advance(action);
     }
 
+    /**
+     * Enables or disables the undo mode. While it is enabled, each call to advance()
+     * records what is needed to roll it back with undo(), so a search can walk the game tree
+     * on a single state instead of copying it for every node. Disabling the undo
+     * mode discards all the steps recorded.
+     *
+     * @param undoMode true to enable the undo mode.
+     */
+    public void setUndoMode(boolean undoMode)
+    {
+        model.setUndoMode(undoMode);
+    }
+
+    /**
+     * Rolls back the last call to advance() made in undo mode. The state (including
+     * the state of its random generator) is the same as it was before that call.
+     *
+     * @return false if there is no step to undo.
+     */
+    public boolean undo()
+    {
+        return model.undo();
+    }
+
+    /**
+     * Gets a 64-bit hash of this state, kept up to date as the state advances, so it
+     * can be obtained in constant time. States with the same sprites (by type, rectangle,
+     * orientation, speed and resources) and the same winner have the same hash, and
+     * different states have different hashes with a very high probability. Sprite IDs
+     * are not taken into account. This allows to keep visited states in hash sets or maps,
+     * instead of comparing them one by one with equalPosition().
+     *
+     * @return the hash of this state.
+     */
+    public long hash()
+    {
+        return model.getHash();
+    }
+
+    /**
+     * Creates a compact copy of this state, for fast headless rollouts. The compact state
+     * can be copied and advanced much faster than a StateObservation, and advances in the same
+     * way, but it only gives access to the score, the end of the game and a few features of
+     * the avatar. It is available only for deterministic grid physics games that use a subset
+     * of VGDL (see CompactState).
+     *
+     * @return the compact state, or null if this game is not supported.
+     */
+    public CompactState compact()
+    {
+        return model.compact();
+    }
+
     /**
      * Sets a new seed for the forward model's random generator (creates a new object)
      *
@@ -146,6 +199,17 @@ public class StateObservation {
         return model.getBlockSize();
     }
 
+    /**
+     * Gets the integer identifier (itype) of a type of sprite, given its name in the game
+     * description (i.e. "wall", "box"). This is the itype of the observations of that type.
+     * @param name name of the type of sprite.
+     * @return the itype, or -1 if the game does not define a type with that name.
+     */
+    public int getSpriteType(String name)
+    {
+        return model.getContext().registry.getRegisteredSpriteValue(name);
+    }
+
     //Methods to retrieve the state of the avatar, in the game...
 
 
@@ -205,6 +269,17 @@ public class StateObservation {
         return model.getAvatarLastAction();
     }
 
+    /**
+     * Returns the key input of the game this observation comes from. Controllers that are driven
+     * by a person (i.e. the human controller) read the keys pressed from here. If this state has been
+     * advanced, it has the keys of the last action applied instead.
+     * @return the key handler.
+     */
+    public KeyHandler getKeyHandler()
+    {
+        return model.ki;
+    }
+
     /**
      * Returns the avatar's type. In case it has multiple types, it returns the most specific one.
      * @return the itype of the avatar.
@@ -261,6 +336,56 @@ public class StateObservation {
          return model.getEventsHistory();
     }
 
+    /**
+     * Returns the events that happened so far in the game, as getEventsHistory() does, but
+     * without copying them: the history is persistent and shared by this state and its copies.
+     * Its descendingIterator() gives the most recent events first, in constant time. The
+     * events must not be modified.
+     *
+     * @return history of events triggered by the avatar or sprites it created.
+     */
+    public EventHistory getEvents()
+    {
+        return model.getEvents();
+    }
+
+    /**
+     * Sets how many game steps of events are kept in the history of this state and of
+     * the copies made from it. Agents that only look at recent events can use it to keep
+     * the history short. Events of earlier steps are not returned by getEvents() or
+     * getEventsHistory().
+     *
+     * @param steps number of game steps, 0 to keep all the events of the game (default).
+     */
+    public void setEventWindow(int steps)
+    {
+        model.setEventWindow(steps);
+    }
+
+    /**
+     * Turns sprite pooling on or off for this state and the copies made from it (off by
+     * default). With pooling, sprites killed while advancing the state are kept in a pool
+     * of the current thread, and reused for the sprites created later by any state in the
+     * same thread. It reduces the garbage created by long searches, like MCTS rollouts.
+     *
+     * @param pooling true to turn pooling on.
+     */
+    public void setSpritePooling(boolean pooling)
+    {
+        model.setSpritePooling(pooling);
+    }
+
+    /**
+     * Gives the sprites of this state to the sprite pool of the current thread, when sprite
+     * pooling is on, so the copies made later reuse them. Sprites shared with other states are
+     * kept. It is meant for copies that are discarded, like the ones used in a rollout: this
+     * state must NOT be used (nor copied) after calling this method.
+     */
+    public void release()
+    {
+        model.release();
+    }
+
     /**
      * Returns a list of observations of NPC in the game. As there can be
      * NPCs of different type, each entry in the array corresponds to a sprite type.
@@ -433,6 +558,39 @@ public class StateObservation {
         return model.getFromAvatarSpPositions(reference);
     }
 
+    /**
+     * Returns a list of observations of the sprites of a category, like the get*Positions()
+     * methods, but without allocating new lists: the array returned by a previous call can be
+     * passed back to be filled again (it is reused, with its lists, if the number of sprite
+     * types of the category did not change). Optionally, only the k observations of each type
+     * closest to the reference are kept, which is faster than sorting all of them.
+     * Note the lists are overwritten by the next call that receives them.
+     *
+     * @param category    Category of the sprites: Types.TYPE_NPC, Types.TYPE_STATIC,
+     *                    Types.TYPE_MOVABLE, Types.TYPE_RESOURCE, Types.TYPE_PORTAL or
+     *                    Types.TYPE_FROMAVATAR.
+     * @param reference   Reference position to sort by ascending distance to it (null: unsorted).
+     * @param k           Maximum number of observations of each type, the closest to the
+     *                    reference (0 or less: all of them).
+     * @param buffer      Array returned by a previous call of this method, or null.
+     * @return Observations of the sprites of the category, or null if there are none.
+     */
+    public ArrayList<Observation>[] getPositions(int category, Vector2d reference, int k,
+                                                 ArrayList<Observation>[] buffer) {
+        return model.getPositions(category, reference, k, buffer);
+    }
+
+    /**
+     * Returns the number of (not hidden) sprites of a category in the game, which is the total
+     * size of the lists returned by the get*Positions() methods of that category.
+     *
+     * @param category    Category of the sprites (see getPositions()).
+     * @return the number of sprites of the category.
+     */
+    public int getCategoryCount(int category) {
+        return model.getCategoryCount(category);
+    }
+
     /**
      * Compares if this and the received StateObservation state are equivalent.
      * DEBUG ONLY METHOD.
@@ -472,26 +630,8 @@ public class StateObservation {
             return false;
         }
 
-        //Check events.
-        TreeSet<Event> thisEvents = this.getEventsHistory();
-        TreeSet<Event> otherEvents = other.getEventsHistory();
-        if(thisEvents.size() != otherEvents.size()) return false;
-        try
-        {
-            Iterator<Event> otherIt = otherEvents.descendingIterator();
-            Iterator<Event> thisIt = thisEvents.descendingIterator();
-
-            while(otherIt.hasNext())
-            {
-                if(!otherIt.next().equals(thisIt.next()))
-                    return false;
-            }
-
-        }catch(Exception e)
-        {
-            System.out.println(e.toString());
-            return false;
-        }
+        //Check events. Steps of the history shared by both states are not compared.
+        if(!this.getEvents().sameEvents(other.getEvents())) return false;
 
         //Check observations:
         return this.model.equalObservations(other.model);
@@ -0,0 +1,213 @@
+package core.game;
+
+import java.util.Arrays;
+
+import ontology.effects.TimeEffect;
+
+/**
+ * Time effects of a game waiting to be triggered, in a hashed timing wheel: a circular array of
+ * slots, one per game tick, where each effect is kept in the slot of the tick in which it must
+ * be executed (modulo the size of the wheel). Adding an effect and taking the next one due are
+ * constant time (amortized over the ticks of the game), instead of logarithmic as in a sorted set.
+ * <p/>
+ * Effects are taken in the same order as the TreeSet<TimeEffect> used before: the earliest
+ * nextExecution first and, for the same nextExecution, the one added last first.
+ * <p/>
+ * Copies of the wheel share the arrays of the slots, and copy the array of a slot the first time
+ * they modify it, so copying the wheel only copies the array of slots. They share the TimeEffect
+ * objects too: the ones taken from the wheel are copied before returning them if they were in the
+ * slot when it was copied, as executing them changes their nextExecution.
+ */
+final class TimingWheel
+{
+    /**
+     * Number of slots of the wheel. Must be a power of 2.
+     */
+    private static final int WHEEL_SIZE = 32;
+
+    private static final int MASK = WHEEL_SIZE - 1;
+
+    private static final TimeEffect[] NO_EFFECTS = new TimeEffect[0];
+
+    /**
+     * Effects of each slot, in the order they were added. Only the first counts[slot] are valid.
+     */
+    private final TimeEffect[][] slots;
+
+    /**
+     * Number of effects in each slot.
+     */
+    private final int[] counts;
+
+    /**
+     * Slots whose array belongs to this wheel (one bit per slot), so it can be modified.
+     */
+    private int ownedSlots;
+
+    /**
+     * For each slot that belongs to this wheel, number of effects at its beginning that may be
+     * shared with other wheels (those that were in the slot when its array was copied).
+     */
+    private int[] sharedCounts;
+
+    /**
+     * Number of effects in the wheel.
+     */
+    private int size;
+
+    /**
+     * Earliest nextExecution of the effects in the wheel (if there is any).
+     */
+    private int next;
+
+    /**
+     * Creates an empty wheel.
+     */
+    TimingWheel()
+    {
+        slots = new TimeEffect[WHEEL_SIZE][];
+        counts = new int[WHEEL_SIZE];
+        sharedCounts = new int[WHEEL_SIZE];
+    }
+
+    /**
+     * Creates a copy of a wheel, sharing its effects.
+     * @param other wheel to copy.
+     */
+    private TimingWheel(TimingWheel other)
+    {
+        slots = other.slots.clone();
+        counts = other.counts.clone();
+        size = other.size;
+        next = other.next;
+    }
+
+    /**
+     * Returns a copy of this wheel. Both share the arrays of the slots and the effects from now on.
+     * @return the copy.
+     */
+    TimingWheel copy()
+    {
+        if(ownedSlots != 0)
+            ownedSlots = 0;
+        return new TimingWheel(this);
+    }
+
+    /**
+     * Returns the number of effects in the wheel.
+     * @return the number of effects.
+     */
+    int size()
+    {
+        return size;
+    }
+
+    /**
+     * Indicates if there is any effect to execute at a given game tick (or before).
+     * @param tick the game tick.
+     * @return true if the next effect is due.
+     */
+    boolean hasDue(int tick)
+    {
+        return size > 0 && next <= tick;
+    }
+
+    /**
+     * Adds an effect to the wheel, in the slot of its nextExecution.
+     * @param ef the effect to add.
+     */
+    void add(TimeEffect ef)
+    {
+        int slot = ef.nextExecution & MASK;
+        int count = counts[slot];
+        if((ownedSlots & (1 << slot)) == 0)
+            ownSlot(slot, Math.max(4, count * 2));
+        else if(count == slots[slot].length)
+            slots[slot] = Arrays.copyOf(slots[slot], count * 2);
+
+        slots[slot][count] = ef;
+        counts[slot] = count + 1;
+
+        if(size == 0 || ef.nextExecution < next)
+            next = ef.nextExecution;
+        size++;
+    }
+
+    /**
+     * Takes the next effect from the wheel.
+     * @return the effect, that belongs to the caller, or null if the wheel is empty.
+     */
+    TimeEffect poll()
+    {
+        if(size == 0)
+            return null;
+
+        //The last one added of the slot with the earliest nextExecution.
+        int slot = next & MASK;
+        int count = counts[slot];
+        if((ownedSlots & (1 << slot)) == 0)
+            ownSlot(slot, count);
+
+        TimeEffect[] effects = slots[slot];
+        int i = count - 1;
+        while(effects[i].nextExecution != next)
+            i--;
+
+        TimeEffect ef = effects[i];
+        boolean shared = i < sharedCounts[slot];
+        if(shared)
+            sharedCounts[slot]--;
+        System.arraycopy(effects, i + 1, effects, i, count - 1 - i);
+        effects[count - 1] = null;
+        counts[slot] = count - 1;
+
+        size--;
+        if(size > 0)
+            next = findNext(next);
+
+        return shared ? ef.copy() : ef;
+    }
+
+    /**
+     * Copies the array of a slot shared with other wheels, so it can be modified.
+     * @param slot the slot.
+     * @param length length of the new array.
+     */
+    private void ownSlot(int slot, int length)
+    {
+        int count = counts[slot];
+        slots[slot] = Arrays.copyOf(count == 0 ? NO_EFFECTS : slots[slot], length);
+        if(sharedCounts == null)
+            sharedCounts = new int[WHEEL_SIZE];
+        sharedCounts[slot] = count;
+        ownedSlots |= 1 << slot;
+    }
+
+    /**
+     * Finds the earliest nextExecution of the effects in the wheel, all of them not earlier
+     * than a given tick. It first goes through the ticks of a turn of the wheel, and only
+     * if no effect is due in those, through all the effects.
+     * @param from the tick to start from.
+     * @return the earliest nextExecution.
+     */
+    private int findNext(int from)
+    {
+        for(int tick = from; tick < from + WHEEL_SIZE; ++tick)
+        {
+            int slot = tick & MASK;
+            for(int i = 0; i < counts[slot]; ++i)
+            {
+                if(slots[slot][i].nextExecution == tick)
+                    return tick;
+            }
+        }
+
+        int earliest = Integer.MAX_VALUE;
+        for(int slot = 0; slot < WHEEL_SIZE; ++slot)
+        {
+            for(int i = 0; i < counts[slot]; ++i)
+                earliest = Math.min(earliest, slots[slot][i].nextExecution);
+        }
+        return earliest;
+    }
+}
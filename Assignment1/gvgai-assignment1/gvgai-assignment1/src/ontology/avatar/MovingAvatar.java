@@ -131,9 +131,9 @@ public class MovingAvatar extends VGDLSprite {
         ElapsedCpuTimer ect = new ElapsedCpuTimer(CompetitionParameters.TIMER_TYPE);
         ect.setMaxTimeMillis(CompetitionParameters.ACTION_TIME);
 
-        VGDLSprite.loadImages = false;	// don't need to load images whilst the agent is thinking
+        boolean loadImages = VGDLSprite.setLoadImagesInThread(false);	// don't need to load images whilst the agent is thinking
         Types.ACTIONS action = this.player.act(game.getObservation(), ect.copy());
-        VGDLSprite.loadImages = true;	// need to load images again for the real game
+        VGDLSprite.setLoadImagesInThread(loadImages);	// need to load images again for the real game
 
         if(ect.exceededMaxTime())
         {
@@ -168,6 +168,10 @@ public class MovingAvatar extends VGDLSprite {
     }
 
 
+    public boolean isInert() {
+        return false;
+    }
+
     public VGDLSprite copy() {
         MovingAvatar newSprite = new MovingAvatar();
         this.copyTo(newSprite);
@@ -177,10 +181,11 @@ public class MovingAvatar extends VGDLSprite {
     public void copyTo(VGDLSprite target) {
         MovingAvatar targetSprite = (MovingAvatar) target;
         targetSprite.alternate_keys = this.alternate_keys;
-        targetSprite.actions = new ArrayList<Types.ACTIONS>();
-        targetSprite.actionsNIL = new ArrayList<Types.ACTIONS>();
+        //The actions were set up by postProcess() when this avatar was created. Running it again would
+        //look the types up in the registry of whatever context the copy is made in, so copy them instead.
+        targetSprite.actions = new ArrayList<Types.ACTIONS>(this.actions);
+        targetSprite.actionsNIL = new ArrayList<Types.ACTIONS>(this.actionsNIL);
         targetSprite.lastAction = this.lastAction;
-        targetSprite.postProcess();
         super.copyTo(targetSprite);
     }
 
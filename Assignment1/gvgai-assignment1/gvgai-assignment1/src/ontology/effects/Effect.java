@@ -22,6 +22,12 @@ public abstract class Effect{
     //Indicates if this effect has some random element.
     public boolean is_stochastic = false;
 
+    //Indicates if this effect modifies the second sprite of the collision (apart from killing it).
+    public boolean writes_sprite2 = false;
+
+    //Indicates if this effect may move sprites other than the two of the collision.
+    public boolean moves_other_sprites = false;
+
     //Change of the score this effect makes.
     public int scoreChange = 0;
 
@@ -23,6 +23,7 @@ public class CollectResource extends Effect
         killResource = true;
         this.parseParameters(cnt);
         is_kill_effect = killResource;
+        writes_sprite2 = true;
     }
 
     @Override
@@ -27,6 +27,7 @@ public class CollectResourceIfHeld extends Effect
         killResource = true;
         this.parseParameters(cnt);
         is_kill_effect = killResource;
+        writes_sprite2 = true;
         heldResourceId = VGDLRegistry.GetInstance().getRegisteredSpriteValue(heldResource);
 
     }
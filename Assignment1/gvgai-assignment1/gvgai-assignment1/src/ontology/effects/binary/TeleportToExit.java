@@ -2,7 +2,6 @@ package ontology.effects.binary;
 
 import java.util.Collection;
 
-import core.VGDLFactory;
 import core.VGDLSprite;
 import core.content.InteractionContent;
 import core.game.Game;
@@ -27,9 +26,9 @@ public class TeleportToExit extends Effect
     @Override
     public void execute(VGDLSprite sprite1, VGDLSprite sprite2, Game game)
     {
-        int destinationId = VGDLFactory.GetInstance().requestFieldValueInt(sprite2, "itype");
+        int destinationId = game.getContext().factory.requestFieldValueInt(sprite2, "itype");
 
-        Collection<VGDLSprite> sprites = game.getSprites(destinationId).values();
+        Collection<VGDLSprite> sprites = game.getSprites(destinationId);
 
         if(sprites.size() > 0)
         {
@@ -1,7 +1,5 @@
 package ontology.effects.binary;
 
-import java.util.ArrayList;
-
 import core.VGDLSprite;
 import core.content.InteractionContent;
 import core.game.Game;
@@ -18,13 +16,9 @@ import tools.Vector2d;
 public class WallStop extends Effect
 {
     private double friction;
-    private int lastGameTime;
-    private ArrayList<VGDLSprite> spritesThisCycle;
 
     public WallStop(InteractionContent cnt)
     {
-        lastGameTime = -1;
-        spritesThisCycle = new ArrayList<VGDLSprite>();
         this.parseParameters(cnt);
     }
 
@@ -33,18 +27,6 @@ public class WallStop extends Effect
     {
         // Stop just in front of the wall, removing that velocity component, but possibly sliding along it.
 
-        //Keep in the list, for the current cycle, the sprites that have triggered this event.
-        int currentGameTime = game.getGameTick();
-        if(currentGameTime > lastGameTime)
-        {
-            spritesThisCycle.clear();
-            lastGameTime = currentGameTime;
-        }
-
-        //the event gets triggered only once per time-step on each sprite.
-        if(spritesThisCycle.contains(sprite1))
-            return;
-
         sprite1.setRect(sprite1.lastrect);
         double centerXDiff = Math.abs(sprite1.rect.getCenterX() - sprite2.rect.getCenterX());
         double centerYDiff = Math.abs(sprite1.rect.getCenterY() - sprite2.rect.getCenterY());
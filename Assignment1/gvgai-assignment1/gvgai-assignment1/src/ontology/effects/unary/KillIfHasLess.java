@@ -30,11 +30,11 @@ public class KillIfHasLess extends Effect
     @Override
     public void execute(VGDLSprite sprite1, VGDLSprite sprite2, Game game)
     {
-        applyScore = false;
+        game.setApplyScore(false);
         if(sprite1.getAmountResource(resourceId) <= limit)
         {
             game.killSprite(sprite1);
-            applyScore = true;
+            game.setApplyScore(true);
         }
     }
 }
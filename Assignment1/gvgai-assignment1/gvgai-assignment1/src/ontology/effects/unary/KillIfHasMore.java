@@ -30,10 +30,10 @@ public class KillIfHasMore extends Effect
     @Override
     public void execute(VGDLSprite sprite1, VGDLSprite sprite2, Game game)
     {
-        applyScore = false;
+        game.setApplyScore(false);
         if(sprite1.getAmountResource(resourceId) >= limit)
         {
-            applyScore = true;
+            game.setApplyScore(true);
             game.killSprite(sprite1);
         }
     }
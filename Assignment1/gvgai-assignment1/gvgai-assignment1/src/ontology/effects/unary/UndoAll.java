@@ -29,6 +29,7 @@ public class UndoAll extends Effect
 
     public UndoAll(InteractionContent cnt)
     {
+        moves_other_sprites = true;
         this.parseParameters(cnt);
         int notItypesArray[] = VGDLRegistry.GetInstance().explode(notStype);
         notItypes = new ArrayList<>();
@@ -52,7 +53,9 @@ public class UndoAll extends Effect
             if(spriteIt != null) while(spriteIt.hasNext())
             {
                 VGDLSprite sp = spriteIt.next();
-                sp.setRect(sp.lastrect);
+                //Sprites that did not move are left untouched (they may be shared with other states).
+                if(!sp.rect.equals(sp.lastrect))
+                    sp.setRect(sp.lastrect);
             }
         }
     }
@@ -90,8 +90,21 @@ public class ContinuousPhysics extends GridPhysics
      */
     public double distance(Rectangle r1, Rectangle r2)
     {
-        double topDiff = r1.getMinY() - r2.getMinY();
-        double leftDiff = r1.getMinX() - r2.getMinX();
+        return distance(r1.x, r1.y, r2.x, r2.y);
+    }
+
+    /**
+     * Euclidean distance between two points.
+     * @param x1 x coordinate of point 1
+     * @param y1 y coordinate of point 1
+     * @param x2 x coordinate of point 2
+     * @param y2 y coordinate of point 2
+     * @return Euclidean distance between the points.
+     */
+    public double distance(int x1, int y1, int x2, int y2)
+    {
+        double topDiff = y1 - y2;
+        double leftDiff = x1 - x2;
         return Math.sqrt(topDiff*topDiff + leftDiff*leftDiff);
     }
 }
@@ -95,7 +95,19 @@ public class GridPhysics implements Physics {
      */
     public double distance(Rectangle r1, Rectangle r2)
     {
-        return Math.abs(r1.getMinY() - r2.getMinY()) +
-                Math.abs(r1.getMinX() - r2.getMinX());
+        return distance(r1.x, r1.y, r2.x, r2.y);
+    }
+
+    /**
+     * Hamming distance between two points.
+     * @param x1 x coordinate of point 1
+     * @param y1 y coordinate of point 1
+     * @param x2 x coordinate of point 2
+     * @param y2 y coordinate of point 2
+     * @return Hamming distance between the points.
+     */
+    public double distance(int x1, int y1, int x2, int y2)
+    {
+        return Math.abs(y1 - y2) + Math.abs(x1 - x2);
     }
 }
@@ -18,4 +18,5 @@ public interface Physics
     public Types.MOVEMENT passiveMovement(VGDLSprite sprite);
     public Types.MOVEMENT activeMovement(VGDLSprite sprite, Vector2d action, double speed);
     public double distance(Rectangle r1, Rectangle r2);
+    public double distance(int x1, int y1, int x2, int y2);
 }
@@ -53,6 +53,11 @@ public class Flicker extends VGDLSprite
 
     }
 
+    public boolean isInert()
+    {
+        return false;
+    }
+
     public VGDLSprite copy()
     {
         Flicker newSprite = new Flicker();
@@ -48,6 +48,11 @@ public class RandomMissile extends Missile
         this.updatePassive();
     }
 
+    public boolean isInert()
+    {
+        return false;
+    }
+
     public VGDLSprite copy()
     {
         RandomMissile newSprite = new RandomMissile();
@@ -74,6 +74,11 @@ public class RandomNPC extends VGDLSprite
 
 
 
+    public boolean isInert()
+    {
+        return false;
+    }
+
     public VGDLSprite copy()
     {
         RandomNPC newSprite = new RandomNPC();
@@ -85,6 +85,11 @@ public class SpawnPoint extends SpriteProducer
         }
     }
 
+    public boolean isInert()
+    {
+        return false;
+    }
+
     public VGDLSprite copy()
     {
         SpawnPoint newSprite = new SpawnPoint();
@@ -100,7 +105,8 @@ public class SpawnPoint extends SpriteProducer
         targetSprite.counter = this.counter;
         targetSprite.stype = this.stype;
         targetSprite.itype = this.itype;
-        targetSprite.spawnorientation = this.spawnorientation.copy();
+        //Not a copy: update() checks it against Types.NONE by reference.
+        targetSprite.spawnorientation = this.spawnorientation;
         super.copyTo(targetSprite);
     }
 
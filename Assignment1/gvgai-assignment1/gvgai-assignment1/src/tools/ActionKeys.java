@@ -0,0 +1,57 @@
+package tools;
+
+import ontology.Types;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * Key handler that always has pressed the keys of one action. The forward model uses these
+ * to apply actions instead of a key handler of its own, so copies of a state do not need to
+ * allocate a key mask and copies advanced in different threads do not share one.
+ * <p/>
+ * There is a single, shared instance per action, so the mask can't be modified.
+ */
+public final class ActionKeys extends KeyHandler
+{
+    /**
+     * Instances, indexed by action ordinal.
+     */
+    private static final ActionKeys[] INSTANCES;
+
+    static
+    {
+        Types.ACTIONS[] all = Types.ACTIONS.values();
+        INSTANCES = new ActionKeys[all.length];
+        for(Types.ACTIONS action : all)
+            INSTANCES[action.ordinal()] = new ActionKeys(action);
+    }
+
+    private ActionKeys(Types.ACTIONS action)
+    {
+        super.setAction(action);
+    }
+
+    /**
+     * Gets the key handler of an action.
+     * @param action the action.
+     * @return the key handler with the keys of this action pressed.
+     */
+    public static ActionKeys of(Types.ACTIONS action)
+    {
+        return INSTANCES[action.ordinal()];
+    }
+
+    public void reset()
+    {
+        throw new UnsupportedOperationException("ActionKeys can't be modified.");
+    }
+
+    public void setAction(Types.ACTIONS action)
+    {
+        throw new UnsupportedOperationException("ActionKeys can't be modified.");
+    }
+
+    public void keyPressed(KeyEvent e) { }
+
+    public void keyReleased(KeyEvent e) { }
+}
@@ -0,0 +1,72 @@
+package tools;
+
+import java.util.Random;
+
+/**
+ * Random number generator that produces the same sequence of numbers as java.util.Random,
+ * but whose internal state can be read and restored (java.util.Random keeps it private).
+ * This allows to roll back a forward model, including its random generator.
+ * Note: the state saved does not include the pending value of nextGaussian().
+ */
+public class RestorableRandom extends Random
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+
+    /**
+     * Internal state of the generator (same as the 48-bit seed of java.util.Random).
+     */
+    private long state;
+
+    /**
+     * Creates a new random generator with a seed different to any other generator.
+     */
+    public RestorableRandom()
+    {
+        super();
+    }
+
+    /**
+     * Creates a new random generator with the seed given.
+     * @param seed the initial seed.
+     */
+    public RestorableRandom(long seed)
+    {
+        super(seed);
+    }
+
+    @Override
+    public synchronized void setSeed(long seed)
+    {
+        state = (seed ^ MULTIPLIER) & MASK;
+        super.setSeed(seed);
+    }
+
+    @Override
+    protected int next(int bits)
+    {
+        state = (state * MULTIPLIER + ADDEND) & MASK;
+        return (int)(state >>> (48 - bits));
+    }
+
+    /**
+     * Gets the current state of this generator.
+     * @return the state of the generator.
+     */
+    public long getState()
+    {
+        return state;
+    }
+
+    /**
+     * Sets the state of this generator to one previously returned by getState().
+     * @param state the state to restore.
+     */
+    public void setState(long state)
+    {
+        this.state = state;
+    }
+}
@@ -0,0 +1,100 @@
+package tools;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+
+import core.VGDLSprite;
+
+/**
+ * Pool of threads shared by the controllers that can split their search across threads
+ * (controllers.depthfirst, controllers.limitdepthfirst and controllers.Astar). They search
+ * in parallel only if THREADS is greater than 1; the pool is created the first time it is needed.
+ * <p/>
+ * The threads of the pool do not load images for the sprites they create, as the states they
+ * simulate are never drawn.
+ */
+public class SearchPool
+{
+    /**
+     * Number of threads of the pool. With 1 (the default), controllers search in the calling thread.
+     */
+    public static int THREADS = 1;
+
+    private static ForkJoinPool pool;
+
+    /**
+     * Indicates if controllers should search in parallel.
+     * @return true if THREADS is greater than 1.
+     */
+    public static boolean enabled()
+    {
+        return THREADS > 1;
+    }
+
+    /**
+     * Returns the pool, creating it with THREADS threads if it does not exist yet (or if THREADS
+     * has changed since).
+     * @return the pool.
+     */
+    public static synchronized ForkJoinPool get()
+    {
+        if(pool == null || pool.getParallelism() != THREADS)
+        {
+            if(pool != null)
+                pool.shutdown();
+            pool = new ForkJoinPool(THREADS, new ForkJoinPool.ForkJoinWorkerThreadFactory()
+            {
+                public ForkJoinWorkerThread newThread(ForkJoinPool pool)
+                {
+                    ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool)
+                    {
+                        protected void onStart()
+                        {
+                            super.onStart();
+                            VGDLSprite.setLoadImagesInThread(false);
+                        }
+                    };
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, null, false);
+        }
+        return pool;
+    }
+
+    /**
+     * Runs some tasks in the pool and waits for all of them to finish.
+     * @param tasks the tasks to run.
+     */
+    public static void invokeAll(List<Callable<Void>> tasks)
+    {
+        try{
+            for(Future<Void> task : get().invokeAll(tasks))
+                task.get();
+
+        }catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Search interrupted.", e);
+        }catch (ExecutionException e)
+        {
+            throw new RuntimeException("Error in a parallel search.", e.getCause());
+        }
+    }
+
+    /**
+     * Converts the time left in a timer into a deadline for the threads of the pool, that cannot
+     * read a CPU time timer of another thread.
+     * @param elapsedTimer timer of the call that searches.
+     * @param remainingLimit milliseconds to keep before the timer runs out.
+     * @return the deadline, in System.nanoTime() units.
+     */
+    public static long deadline(ElapsedCpuTimer elapsedTimer, long remainingLimit)
+    {
+        return System.nanoTime() + (elapsedTimer.remainingTimeMillis() - remainingLimit) * 1000000L;
+    }
+}
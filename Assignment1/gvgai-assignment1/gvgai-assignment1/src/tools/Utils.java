@@ -146,4 +146,18 @@ public class Utils
         }
         return maxIndex;
     }
+
+    /**
+     * Mixes the bits of a 64-bit value (finalizer of the SplitMix64 generator), so that
+     * similar inputs give very different outputs.
+     * @param value value to mix.
+     * @return the mixed value.
+     */
+    public static long mix64(long value)
+    {
+        long z = value * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
 }
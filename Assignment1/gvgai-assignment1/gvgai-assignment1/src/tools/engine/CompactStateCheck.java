@@ -0,0 +1,147 @@
+package tools.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Random;
+
+import core.VGDLSprite;
+import core.game.CompactState;
+import core.game.Game;
+import core.game.GameTemplate;
+import core.game.Observation;
+import core.game.StateObservation;
+import ontology.Types;
+import tools.Vector2d;
+
+/**
+ * Checks that CompactState advances exactly as the forward model does. For each level, it plays
+ * random action sequences (from fixed seeds) on a StateObservation and on its compact state,
+ * and after every step compares the tick, score, winner and the positions of the sprites of
+ * each type. It stops at the first difference and exits with status 1.
+ * <p/>
+ * Usage: java tools.engine.CompactStateCheck [game_file level_file_prefix num_levels [sequences [steps]]]
+ * <br> By default it checks the five levels of examples/gridphysics/bait.txt.
+ */
+public class CompactStateCheck
+{
+    public static void main(String[] args)
+    {
+        String gameFile = args.length > 0 ? args[0] : "examples/gridphysics/bait.txt";
+        String levelPrefix = args.length > 1 ? args[1] : "examples/gridphysics/bait_lvl";
+        int numLevels = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        int sequences = args.length > 3 ? Integer.parseInt(args[3]) : 50;
+        int steps = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+
+        //Headless, as in the forward models of the controllers.
+        VGDLSprite.setLoadImagesInThread(false);
+
+        boolean ok = true;
+        for(int level = 0; level < numLevels && ok; ++level)
+        {
+            String levelFile = levelPrefix + level + ".txt";
+            Game game = GameTemplate.load(gameFile).newGame(levelFile);
+            StateObservation initial = game.getObservation();
+            if(initial.compact() == null)
+            {
+                System.out.println(levelFile + ": game not supported by CompactState.");
+                continue;
+            }
+
+            int checked = 0;
+            for(int seed = 0; seed < sequences && ok; ++seed)
+            {
+                String error = checkSequence(game, initial, seed, steps);
+                if(error != null)
+                {
+                    System.out.println(levelFile + ", seed " + seed + ": " + error);
+                    ok = false;
+                }
+                checked++;
+            }
+            if(ok)
+                System.out.println(levelFile + ": " + checked + " sequences of up to " + steps + " steps, identical.");
+        }
+
+        if(!ok)
+            System.exit(1);
+    }
+
+    /**
+     * Plays a random sequence of actions on a copy of the initial state and on its compact state.
+     * @param game game of the state, to know its sprite types.
+     * @param initial initial state.
+     * @param seed seed of the random actions.
+     * @param steps maximum number of steps.
+     * @return a description of the first difference, or null if there is none.
+     */
+    private static String checkSequence(Game game, StateObservation initial, int seed, int steps)
+    {
+        StateObservation state = initial.copy();
+        CompactState compact = initial.compact();
+        Random random = new Random(seed);
+        ArrayList<Types.ACTIONS> actions = initial.getAvailableActions(true);
+
+        String error = compare(game, state, compact);
+        for(int step = 0; error == null && step < steps && !state.isGameOver(); ++step)
+        {
+            Types.ACTIONS action = actions.get(random.nextInt(actions.size()));
+            state.advance(action);
+            compact.advance(action);
+            error = compare(game, state, compact);
+            if(error != null)
+                error = "step " + step + " (" + action + "): " + error;
+        }
+        return error;
+    }
+
+    /**
+     * Compares a state with a compact state.
+     * @return a description of the difference, or null if they are the same.
+     */
+    private static String compare(Game game, StateObservation state, CompactState compact)
+    {
+        if(state.getGameTick() != compact.getGameTick())
+            return "tick " + state.getGameTick() + " != " + compact.getGameTick();
+        if(state.getGameScore() != compact.getGameScore())
+            return "score " + state.getGameScore() + " != " + compact.getGameScore();
+        if(state.getGameWinner() != compact.getGameWinner())
+            return "winner " + state.getGameWinner() + " != " + compact.getGameWinner();
+
+        //Positions of each type, from the observation grid (which has all sprites on screen).
+        int[] itypes = game.getSpriteOrder();
+        ArrayList<ArrayList<Vector2d>> positions = new ArrayList<ArrayList<Vector2d>>();
+        int maxType = 0;
+        for(int itype : itypes)
+            maxType = Math.max(maxType, itype);
+        for(int i = 0; i <= maxType; ++i)
+            positions.add(new ArrayList<Vector2d>());
+        ArrayList<Observation>[][] grid = state.getObservationGrid();
+        for(int x = 0; x < grid.length; ++x)
+            for(int y = 0; y < grid[x].length; ++y)
+                for(Observation obs : grid[x][y])
+                    positions.get(obs.itype).add(obs.position);
+
+        for(int itype : itypes)
+        {
+            ArrayList<Vector2d> expected = sorted(positions.get(itype));
+            ArrayList<Vector2d> actual = sorted(compact.getPositions(itype));
+            if(!expected.equals(actual))
+                return "positions of type " + itype + " " + expected + " != " + actual;
+        }
+        return null;
+    }
+
+    private static ArrayList<Vector2d> sorted(ArrayList<Vector2d> positions)
+    {
+        ArrayList<Vector2d> copy = new ArrayList<Vector2d>(positions);
+        Collections.sort(copy, new Comparator<Vector2d>()
+        {
+            public int compare(Vector2d a, Vector2d b)
+            {
+                return a.y != b.y ? Double.compare(a.y, b.y) : Double.compare(a.x, b.x);
+            }
+        });
+        return copy;
+    }
+}
@@ -0,0 +1,90 @@
+package tools.engine;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.VGDLSprite;
+import core.content.SpriteContent;
+import core.game.Game;
+import core.game.GameTemplate;
+import ontology.avatar.FlakAvatar;
+import ontology.avatar.oriented.ShootAvatar;
+import ontology.sprites.producer.SpawnPoint;
+import tools.Vector2d;
+
+/**
+ * Measures the cost of creating the sprites that are spawned during a game: the ones produced by
+ * spawn points and bombers, and the projectiles of shooting avatars. Each type is created by the
+ * factory from its content, as addSprite() did before, and by copying its prototype, as it does now.
+ * <p/>
+ * Usage: java tools.engine.SpawnBenchmark game_file level_file [repetitions]
+ * <br> e.g. examples/gridphysics/aliens.txt examples/gridphysics/aliens_lvl0.txt
+ */
+public class SpawnBenchmark
+{
+    public static void main(String[] args)
+    {
+        if(args.length < 2)
+        {
+            System.out.println("Usage: java tools.engine.SpawnBenchmark game_file level_file [repetitions]");
+            return;
+        }
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        //Headless, as in the forward models of the controllers.
+        VGDLSprite.setLoadImagesInThread(false);
+        Game game = GameTemplate.load(args[0]).newGame(args[1]);
+
+        //Types spawned by the sprites of the game, and who spawns them.
+        Map<Integer, String> spawned = new LinkedHashMap<Integer, String>();
+        for(int i : game.getSpriteOrder())
+        {
+            VGDLSprite sp = game.createSprite(i, new Vector2d(0, 0));
+            if(sp instanceof SpawnPoint)
+                spawned.put(((SpawnPoint) sp).itype, sp.getClass().getSimpleName());
+            else if(sp instanceof ShootAvatar)
+                spawned.put(((ShootAvatar) sp).itype, sp.getClass().getSimpleName());
+            else if(sp instanceof FlakAvatar)
+                spawned.put(((FlakAvatar) sp).itype, sp.getClass().getSimpleName());
+        }
+
+        if(spawned.isEmpty())
+        {
+            System.out.println("No sprite in this game spawns other sprites.");
+            return;
+        }
+
+        Vector2d position = new Vector2d(game.getBlockSize(), game.getBlockSize());
+        Dimension size = new Dimension(game.getBlockSize(), game.getBlockSize());
+        for(Map.Entry<Integer, String> entry : spawned.entrySet())
+        {
+            int itype = entry.getKey();
+            SpriteContent content = (SpriteContent) game.getSpriteContent(itype);
+
+            //Several rounds, keeping the best, so the JIT has compiled both ways.
+            long factoryTime = Long.MAX_VALUE, prototypeTime = Long.MAX_VALUE;
+            for(int round = 0; round < 5; ++round)
+            {
+                long start = System.nanoTime();
+                for(int i = 0; i < repetitions; ++i)
+                {
+                    VGDLSprite sp = game.getContext().factory.createSprite(content, position, size);
+                    sp.itypes = new ArrayList<Integer>(content.itypes);
+                }
+                factoryTime = Math.min(factoryTime, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for(int i = 0; i < repetitions; ++i)
+                    game.createSprite(itype, position);
+                prototypeTime = Math.min(prototypeTime, System.nanoTime() - start);
+            }
+
+            System.out.format("%-12s -> %-8s factory: %8.1f ns/sprite, prototype: %8.1f ns/sprite (x%.1f)%n",
+                    entry.getValue(), content.identifier,
+                    (double) factoryTime / repetitions, (double) prototypeTime / repetitions,
+                    (double) factoryTime / prototypeTime);
+        }
+    }
+}
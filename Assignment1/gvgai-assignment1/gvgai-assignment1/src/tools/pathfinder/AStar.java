@@ -9,7 +9,7 @@ import java.util.PriorityQueue;
  */
 public class AStar
 {
-    public static PriorityQueue<Node> closedList, openList;
+    public PriorityQueue<Node> closedList, openList;
     public HashMap<Integer, ArrayList<Node>> pathCache;
     public PathFinder pathfinder;
     public boolean visited[][];
@@ -1,6 +1,5 @@
 package tools.pathfinder;
 
-import core.game.Game;
 import core.game.StateObservation;
 import core.player.AbstractPlayer;
 import ontology.Types;
@@ -39,8 +38,8 @@ public class Agent extends AbstractPlayer
      */
     public Types.ACTIONS act(StateObservation stateObs, ElapsedCpuTimer elapsedTimer)
     {
-        Vector2d move = Utils.processMovementActionKeys(Game.ki.getMask());
-        boolean useOn = Utils.processUseKey(Game.ki.getMask());
+        Vector2d move = Utils.processMovementActionKeys(stateObs.getKeyHandler().getMask());
+        boolean useOn = Utils.processUseKey(stateObs.getKeyHandler().getMask());
 
         //In the keycontroller, move has preference.
         Types.ACTIONS action = Types.ACTIONS.fromVector(move);
@@ -23,8 +23,8 @@ public class PathFinder {
     public ArrayList<Observation> grid[][];
 
 
-    private static int[] x_arrNeig = null;
-    private static int[] y_arrNeig = null;
+    private int[] x_arrNeig = null;
+    private int[] y_arrNeig = null;
 
     public PathFinder(ArrayList<Integer> obstacleItypes)
     {